@@ -4,14 +4,25 @@ import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 
 import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.fds.FDSService;
 
 public class Activator implements BundleActivator {
 
     public void start(BundleContext bc) throws Exception {
-        AlitheiaCore.getInstance().registerService(CacheService.class, CacheServiceImpl.class);
+        AlitheiaCore core = AlitheiaCore.getInstance();
+        core.registerService(CacheService.class, CacheServiceImpl.class);
+        
+        CacheService cache = core.getService(CacheService.class);
+        FDSService fds = core.getFDSService();
+        if (cache != null && fds != null)
+            fds.setContentCache(new FDSContentCache(cache));
     }
   
     public void stop(BundleContext bc) throws Exception {
-        AlitheiaCore.getInstance().unregisterService(CacheService.class);
+        AlitheiaCore core = AlitheiaCore.getInstance();
+        FDSService fds = core.getFDSService();
+        if (fds != null)
+            fds.setContentCache(null);
+        core.unregisterService(CacheService.class);
     }
 }
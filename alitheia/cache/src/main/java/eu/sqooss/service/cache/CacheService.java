@@ -36,10 +36,15 @@ public interface CacheService extends AlitheiaCoreService {
     void set(String key, byte[] data);
 
     /**
-     * Set the contents of key from the provided input stream. This method is
-     * for convenience only, and it is slow as it performs lots of unecessary
-     * copying. Use the much faster {@link #set(String, byte[])} instead when
-     * you know the size of the data you want to put on the cache.
+     * Set the contents of key from the provided input stream. Disk based
+     * implementations copy the stream to disk in chunks, so this is the
+     * preferred way to cache large values. In-memory implementations
+     * read the whole stream before storing it. The stream is not closed.
      */
     void setStream(String key, InputStream oos);
+
+    /**
+     * Get the hit, miss and eviction counters of the cache.
+     */
+    CacheStats getStats();
 }
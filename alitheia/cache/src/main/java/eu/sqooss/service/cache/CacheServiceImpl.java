@@ -13,7 +13,7 @@ import eu.sqooss.service.logging.Logger;
 
 public class CacheServiceImpl implements CacheService {
 
-    public static final String CACHE_IMPL = "eu.sqooss.service.cache.OnDiskCache";
+    public static final String CACHE_IMPL = "eu.sqooss.service.cache.impl";
     
     private static List<Class<? extends CacheService>> impls;
     
@@ -21,6 +21,8 @@ public class CacheServiceImpl implements CacheService {
         impls = new ArrayList<Class<? extends CacheService>>();
         impls.add(OnDiskCache.class);
         impls.add(InMemoryCache.class);
+        impls.add(TieredCache.class);
+        impls.add(LogStructuredCache.class);
     }
   
     private CacheService c;
@@ -36,7 +38,10 @@ public class CacheServiceImpl implements CacheService {
     
     @Override
     public InputStream getStream(String key) {
-        byte[] buff = c.get(key);
+        if (c != null)
+            return c.getStream(key);
+        
+        byte[] buff = get(key);
         
         if (buff == null)
             return null;
@@ -52,6 +57,11 @@ public class CacheServiceImpl implements CacheService {
 
     @Override
     public void setStream(String key, InputStream in) {
+        if (c != null) {
+            c.setStream(key, in);
+            return;
+        }
+        
         try {
             int nRead;
             ByteArrayOutputStream buffer = new ByteArrayOutputStream();
@@ -69,6 +79,11 @@ public class CacheServiceImpl implements CacheService {
         }
     }
 
+    @Override
+    public CacheStats getStats() {
+        return c.getStats();
+    }
+
     @Override
     public boolean startUp() {
         String impl = System.getProperty(CACHE_IMPL);
@@ -91,6 +106,8 @@ public class CacheServiceImpl implements CacheService {
 
     @Override
     public void shutDown() {
+        if (c != null)
+            c.shutDown();
         c = null;
     }
 
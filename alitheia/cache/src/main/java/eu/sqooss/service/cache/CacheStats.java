@@ -0,0 +1,53 @@
+package eu.sqooss.service.cache;
+
+/**
+ * Snapshot of the usage counters of a cache implementation.
+ */
+public class CacheStats {
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long size;
+
+    public CacheStats(long hits, long misses, long evictions, long size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    /** Number of lookups that found a value */
+    public long getHits() {
+        return hits;
+    }
+
+    /** Number of lookups that did not find a value */
+    public long getMisses() {
+        return misses;
+    }
+
+    /** Number of entries dropped to stay within the configured size limits */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /** Bytes currently held by the cache, or -1 if not tracked */
+    public long getSize() {
+        return size;
+    }
+
+    /** Ratio of hits to lookups, 0 if there have been no lookups yet */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        if (lookups == 0)
+            return 0;
+        return (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "hits: " + hits + ", misses: " + misses + ", evictions: "
+                + evictions + ", size: " + size;
+    }
+}
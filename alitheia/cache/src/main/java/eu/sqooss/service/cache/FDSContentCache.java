@@ -0,0 +1,26 @@
+package eu.sqooss.service.cache;
+
+import eu.sqooss.service.fds.FileContentCache;
+
+/**
+ * Stores the file contents the FDS retrieves in the cache service. Size
+ * limits and eviction are those of the configured cache implementation.
+ */
+public class FDSContentCache implements FileContentCache {
+
+    private CacheService cache;
+
+    public FDSContentCache(CacheService cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public byte[] get(String key) {
+        return cache.get(key);
+    }
+
+    @Override
+    public void set(String key, byte[] data) {
+        cache.set(key, data);
+    }
+}
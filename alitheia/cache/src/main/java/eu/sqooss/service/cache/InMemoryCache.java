@@ -1,20 +1,34 @@
 package eu.sqooss.service.cache;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class InMemoryCache extends CacheServiceImpl {
 
     ConcurrentHashMap<String, byte[]> cache = new ConcurrentHashMap<String, byte[]>(1024);
     
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+    
     public InMemoryCache() {}
     
     @Override
     public byte[] get(String key) {
-        return cache.get(key);
+        byte[] result = cache.get(key);
+        if (result == null)
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+        return result;
     }
 
     @Override
     public void set(String key, byte[] data) {
         cache.put(key, data);
     }
+
+    @Override
+    public CacheStats getStats() {
+        return new CacheStats(hits.get(), misses.get(), 0, -1);
+    }
 }
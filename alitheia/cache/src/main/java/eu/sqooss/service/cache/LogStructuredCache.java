@@ -0,0 +1,638 @@
+package eu.sqooss.service.cache;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Disk based implementation of the cache service that appends all entries
+ * to a small number of large segment files, instead of creating a file per
+ * key. The location of each key's latest value is kept in an in-memory
+ * index, which is rebuilt by scanning the segments when the cache is
+ * opened. Incomplete or corrupted records at the end of a segment (e.g.
+ * after a crash) are discarded during the scan.
+ *
+ * Overwriting a key leaves the old value in its segment. Once more than
+ * half of a full segment is taken by overwritten values, the segment's
+ * live entries are copied to the current segment by a background thread and
+ * the segment is deleted.
+ *
+ * Accepts the following system properties:
+ *
+ *  <dl>
+ *      <dt>
+ *          eu.sqooss.service.cache.dir
+ *      </dt>
+ *      <dd>
+ *          The directory to store segment files to
+ *      </dd>
+ *      <dt>
+ *          eu.sqooss.service.cache.segment.size
+ *      </dt>
+ *      <dd>
+ *          Size in bytes after which a new segment is started. Default is 64MB.
+ *      </dd>
+ * </dl>
+ */
+public class LogStructuredCache extends CacheServiceImpl {
+
+    public static final String CACHE_SEGMENT_SIZE = "eu.sqooss.service.cache.segment.size";
+
+    private static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /* Record layout: magic, key length, data length, crc, key, data */
+    private static final int MAGIC = 0x5C0055A1;
+    private static final int HEADER = 16;
+
+    /* Streamed values larger than this are spilled to a temporary file */
+    private static final int SPILL_THRESHOLD = 1024 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private File dir;
+    private long segmentSize;
+
+    private ConcurrentMap<String, Location> index =
+        new ConcurrentHashMap<String, Location>();
+    private ConcurrentSkipListMap<Integer, Segment> segments =
+        new ConcurrentSkipListMap<Integer, Segment>();
+
+    /** The segment appended to, guarded by writeLock */
+    private Segment active;
+    private Object writeLock = new Object();
+
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+
+    private ExecutorService compactor;
+    private AtomicBoolean compactionPending = new AtomicBoolean(false);
+
+    public LogStructuredCache() throws Exception {
+        String dirpath = System.getProperty(OnDiskCache.CACHE_DIR);
+        if (dirpath == null) {
+            dirpath = System.getProperty("java.io.tmpdir");
+            if (dirpath == null)
+                dirpath = "tmp";
+        }
+
+        long size = DEFAULT_SEGMENT_SIZE;
+        String prop = System.getProperty(CACHE_SEGMENT_SIZE);
+        if (prop != null) {
+            try {
+                size = Long.parseLong(prop);
+            } catch (NumberFormatException nfe) {
+                warn("Invalid segment size " + prop + ", using " + size);
+            }
+        }
+        init(dirpath, size);
+    }
+
+    public LogStructuredCache(String cachedir, long segmentSize) throws Exception {
+        init(cachedir, segmentSize);
+    }
+
+    private void init(String path, long segmentSize) throws IOException {
+        this.segmentSize = segmentSize;
+        this.dir = new File(path);
+        if (!dir.exists())
+            dir.mkdirs();
+
+        compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "LogStructuredCache compactor");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        recover();
+    }
+
+    @Override
+    public byte[] get(String key) {
+        while (true) {
+            Location l = index.get(key);
+            if (l == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            /* The segment was compacted, the index points elsewhere now */
+            if (!l.segment.acquire()) {
+                dropStale(key, l);
+                continue;
+            }
+            try {
+                byte[] result = new byte[l.dataLength];
+                readFully(l.segment.channel, ByteBuffer.wrap(result), l.dataOffset());
+                hits.incrementAndGet();
+                return result;
+            } catch (IOException e) {
+                warn("Cannot read key " + key + " from " + l.segment.file
+                        + ": " + e.getMessage());
+                misses.incrementAndGet();
+                return null;
+            } finally {
+                l.segment.release();
+            }
+        }
+    }
+
+    /**
+     * Returns a stream that reads the value directly from its segment file.
+     * The stream must be closed, as it prevents the segment from being
+     * deleted after compaction.
+     */
+    @Override
+    public InputStream getStream(String key) {
+        while (true) {
+            Location l = index.get(key);
+            if (l == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            if (!l.segment.acquire()) {
+                dropStale(key, l);
+                continue;
+            }
+            hits.incrementAndGet();
+            return new SegmentInputStream(l);
+        }
+    }
+
+    @Override
+    public void set(String key, byte[] data) {
+        byte[] k = key.getBytes(UTF8);
+        CRC32 crc = new CRC32();
+        crc.update(k);
+        crc.update(data);
+
+        Location old;
+        try {
+            synchronized (writeLock) {
+                Location l = append(k, data, (int) crc.getValue());
+                old = index.put(key, l);
+            }
+        } catch (IOException e) {
+            warn("Cannot store key " + key + " An exception occured: "
+                    + e.getMessage());
+            return;
+        }
+
+        if (old != null)
+            discard(old);
+    }
+
+    /**
+     * Reads the stream in chunks, keeping at most 1MB in memory, and copies
+     * it to the current segment once its size is known.
+     */
+    @Override
+    public void setStream(String key, InputStream in) {
+        byte[] k = key.getBytes(UTF8);
+        CRC32 crc = new CRC32();
+        crc.update(k);
+
+        SpillBuffer buf = new SpillBuffer(dir, SPILL_THRESHOLD);
+        Location old;
+        try {
+            byte[] chunk = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                crc.update(chunk, 0, n);
+                buf.write(chunk, 0, n);
+            }
+            if (buf.size() > Integer.MAX_VALUE) {
+                warn("Cannot store key " + key + ": value is too large");
+                return;
+            }
+            synchronized (writeLock) {
+                Location l = append(k, buf, (int) crc.getValue());
+                old = index.put(key, l);
+            }
+        } catch (IOException e) {
+            warn("Cannot store key " + key + " An exception occured: "
+                    + e.getMessage());
+            return;
+        } finally {
+            try {
+                buf.close();
+            } catch (IOException e) {}
+        }
+
+        if (old != null)
+            discard(old);
+    }
+
+    @Override
+    public CacheStats getStats() {
+        long size = 0;
+        for (Segment s : segments.values())
+            size += s.end;
+        return new CacheStats(hits.get(), misses.get(), 0, size);
+    }
+
+    @Override
+    public void shutDown() {
+        compactor.shutdownNow();
+        synchronized (writeLock) {
+            for (Segment s : segments.values())
+                s.release();
+            segments.clear();
+            index.clear();
+        }
+    }
+
+    /**
+     * Copy the live entries of all segments that consist mostly of
+     * overwritten entries to the current segment, and delete them.
+     */
+    public synchronized void compact() {
+        for (Segment s : segments.values()) {
+            if (s == active || s.dead.get() <= s.end / 2)
+                continue;
+            try {
+                compact(s);
+            } catch (IOException e) {
+                warn("Cannot compact " + s.file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /*
+     * Internals
+     */
+
+    /** Rebuild the index from the segments on disk */
+    private void recover() throws IOException {
+        File[] files = dir.listFiles(new FilenameFilter() {
+            public boolean accept(File d, String name) {
+                return name.startsWith(SEGMENT_PREFIX)
+                    && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+
+        List<Integer> ids = new ArrayList<Integer>();
+        for (File f : files) {
+            String name = f.getName();
+            try {
+                ids.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length())));
+            } catch (NumberFormatException nfe) {
+                warn("Ignoring unknown file " + f);
+            }
+        }
+        Collections.sort(ids);
+
+        for (Integer id : ids) {
+            Segment s = open(id);
+            long offset = 0;
+            Record r;
+            while ((r = read(s, offset)) != null) {
+                Location old = index.put(r.key,
+                        new Location(s, offset, r.keyLength, r.data.length));
+                if (old != null)
+                    old.segment.dead.addAndGet(old.length());
+                offset += r.length();
+            }
+            if (offset < s.channel.size()) {
+                warn("Discarding " + (s.channel.size() - offset)
+                        + " bytes of incomplete records in " + s.file);
+                s.channel.truncate(offset);
+            }
+            s.end = offset;
+            active = s;
+        }
+
+        if (active == null)
+            active = open(1);
+        scheduleCompaction();
+    }
+
+    private Segment open(int id) throws IOException {
+        File f = new File(dir, String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        Segment s = new Segment(id, f);
+        segments.put(id, s);
+        return s;
+    }
+
+    /** Write a record at the end of the active segment, under writeLock */
+    private Location append(byte[] key, byte[] data, int crc) throws IOException {
+        long offset = appendHeader(key, data.length, crc);
+        writeFully(active.channel, ByteBuffer.wrap(data), offset + HEADER + key.length);
+        active.end = offset + HEADER + key.length + data.length;
+
+        return new Location(active, offset, key.length, data.length);
+    }
+
+    /** Write a streamed record at the end of the active segment, under writeLock */
+    private Location append(byte[] key, SpillBuffer data, int crc) throws IOException {
+        int length = (int) data.size();
+        long offset = appendHeader(key, length, crc);
+        data.writeTo(active.channel, offset + HEADER + key.length);
+        active.end = offset + HEADER + key.length + length;
+
+        return new Location(active, offset, key.length, length);
+    }
+
+    /** Start a new record, return its offset in the active segment */
+    private long appendHeader(byte[] key, int dataLength, int crc) throws IOException {
+        if (active.end >= segmentSize) {
+            active = open(active.id + 1);
+            scheduleCompaction();
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER + key.length);
+        header.putInt(MAGIC).putInt(key.length).putInt(dataLength).putInt(crc);
+        header.put(key);
+        header.flip();
+
+        long offset = active.end;
+        writeFully(active.channel, header, offset);
+        return offset;
+    }
+
+    /** Read and verify the record at offset, null if there is none */
+    private Record read(Segment s, long offset) throws IOException {
+        long size = s.channel.size();
+        if (offset + HEADER > size)
+            return null;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        readFully(s.channel, header, offset);
+        header.flip();
+        int magic = header.getInt();
+        int keyLength = header.getInt();
+        int dataLength = header.getInt();
+        int crc = header.getInt();
+
+        if (magic != MAGIC || keyLength < 0 || dataLength < 0
+                || offset + HEADER + keyLength + dataLength > size)
+            return null;
+
+        byte[] key = new byte[keyLength];
+        byte[] data = new byte[dataLength];
+        readFully(s.channel, ByteBuffer.wrap(key), offset + HEADER);
+        readFully(s.channel, ByteBuffer.wrap(data), offset + HEADER + keyLength);
+
+        CRC32 check = new CRC32();
+        check.update(key);
+        check.update(data);
+        if ((int) check.getValue() != crc)
+            return null;
+
+        return new Record(new String(key, UTF8), keyLength, data, crc);
+    }
+
+    private void compact(Segment s) throws IOException {
+        long offset = 0;
+        Record r;
+        while (offset < s.end && (r = read(s, offset)) != null) {
+            Location cur = index.get(r.key);
+            if (cur != null && cur.segment == s && cur.offset == offset) {
+                synchronized (writeLock) {
+                    Location l = append(r.key.getBytes(UTF8), r.data, r.crc);
+                    if (!index.replace(r.key, cur, l))
+                        l.segment.dead.addAndGet(l.length());
+                }
+            }
+            offset += r.length();
+        }
+
+        /*
+         * A corrupted record hides the layout of the rest of the segment,
+         * copy the entries still indexed here one by one, and forget the
+         * ones that cannot be read.
+         */
+        if (offset < s.end) {
+            warn("Corrupted record at " + offset + " in " + s.file);
+            for (Map.Entry<String, Location> e : index.entrySet()) {
+                Location cur = e.getValue();
+                if (cur.segment != s)
+                    continue;
+                r = read(s, cur.offset);
+                if (r == null || !r.key.equals(e.getKey())) {
+                    warn("Dropping key " + e.getKey() + " from " + s.file);
+                    index.remove(e.getKey(), cur);
+                    continue;
+                }
+                synchronized (writeLock) {
+                    Location l = append(r.key.getBytes(UTF8), r.data, r.crc);
+                    if (!index.replace(r.key, cur, l))
+                        l.segment.dead.addAndGet(l.length());
+                }
+            }
+        }
+
+        segments.remove(s.id);
+        s.obsolete = true;
+        s.release();
+    }
+
+    /**
+     * Forget a key that still refers to a deleted segment. Compaction
+     * updates the index before deleting a segment, so this only happens
+     * if the key could not be copied.
+     */
+    private void dropStale(String key, Location l) {
+        if (l.segment.obsolete)
+            index.remove(key, l);
+    }
+
+    /** Account for a value that has been overwritten */
+    private void discard(Location l) {
+        Segment s = l.segment;
+        long dead = s.dead.addAndGet(l.length());
+        if (s != active && dead > s.end / 2)
+            scheduleCompaction();
+    }
+
+    private void scheduleCompaction() {
+        if (compactor.isShutdown() || !compactionPending.compareAndSet(false, true))
+            return;
+        compactor.execute(new Runnable() {
+            public void run() {
+                compactionPending.set(false);
+                compact();
+            }
+        });
+    }
+
+    private static void readFully(FileChannel c, ByteBuffer b, long pos)
+            throws IOException {
+        while (b.hasRemaining()) {
+            int n = c.read(b, pos);
+            if (n < 0)
+                throw new IOException("Unexpected end of segment");
+            pos += n;
+        }
+    }
+
+    private static void writeFully(FileChannel c, ByteBuffer b, long pos)
+            throws IOException {
+        while (b.hasRemaining())
+            pos += c.write(b, pos);
+    }
+
+    private void warn(String message) {
+        System.err.println(message);
+    }
+
+    /** A segment file, deleted when it is obsolete and no longer read */
+    private static final class Segment {
+        final int id;
+        final File file;
+        final FileChannel channel;
+
+        /* Append position, only modified under writeLock */
+        volatile long end = 0;
+        /* Bytes taken by overwritten records */
+        final AtomicLong dead = new AtomicLong();
+        /* Readers plus one for the cache itself */
+        final AtomicInteger refs = new AtomicInteger(1);
+        volatile boolean obsolete = false;
+
+        Segment(int id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+
+        boolean acquire() {
+            while (true) {
+                int r = refs.get();
+                if (r == 0)
+                    return false;
+                if (refs.compareAndSet(r, r + 1))
+                    return true;
+            }
+        }
+
+        void release() {
+            if (refs.decrementAndGet() != 0)
+                return;
+            try {
+                channel.close();
+            } catch (IOException e) {}
+            if (obsolete)
+                file.delete();
+        }
+    }
+
+    /** Position of a key's value */
+    private static final class Location {
+        final Segment segment;
+        final long offset;
+        final int keyLength;
+        final int dataLength;
+
+        Location(Segment segment, long offset, int keyLength, int dataLength) {
+            this.segment = segment;
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.dataLength = dataLength;
+        }
+
+        long dataOffset() {
+            return offset + HEADER + keyLength;
+        }
+
+        long length() {
+            return HEADER + keyLength + dataLength;
+        }
+    }
+
+    private static final class Record {
+        final String key;
+        final int keyLength;
+        final byte[] data;
+        final int crc;
+
+        Record(String key, int keyLength, byte[] data, int crc) {
+            this.key = key;
+            this.keyLength = keyLength;
+            this.data = data;
+            this.crc = crc;
+        }
+
+        long length() {
+            return HEADER + keyLength + data.length;
+        }
+    }
+
+    /** Reads a value from its segment, directly into the caller's buffer */
+    private static final class SegmentInputStream extends InputStream {
+        private Location location;
+        private long pos;
+        private long end;
+        private boolean closed = false;
+
+        SegmentInputStream(Location l) {
+            this.location = l;
+            this.pos = l.dataOffset();
+            this.end = l.dataOffset() + l.dataLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n == -1 ? -1 : (b[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed)
+                throw new IOException("Stream closed");
+            if (pos >= end)
+                return -1;
+            int toRead = (int) Math.min(len, end - pos);
+            int n = location.segment.channel.read(ByteBuffer.wrap(b, off, toRead), pos);
+            if (n < 0)
+                throw new IOException("Unexpected end of segment");
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, end - pos));
+            pos += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - pos);
+        }
+
+        @Override
+        public void close() {
+            if (closed)
+                return;
+            closed = true;
+            location.segment.release();
+        }
+    }
+}
@@ -3,9 +3,12 @@ package eu.sqooss.service.cache;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
@@ -16,6 +19,15 @@ import java.nio.channels.NonWritableChannelException;
 import java.nio.channels.OverlappingFileLockException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 import eu.sqooss.service.logging.Logger;
 
@@ -33,19 +45,50 @@ import eu.sqooss.service.logging.Logger;
  *      <dd>
  *          The directory to store cache files to 
  *      </dd>
+ *      <dt>
+ *          eu.sqooss.service.cache.disk.size
+ *      </dt>
+ *      <dd>
+ *          Maximum number of bytes to keep in the cache directory. When the
+ *          limit is exceeded, a background thread deletes the least recently
+ *          used cache files. If not set, the cache grows without bounds.
+ *      </dd>
  * </dl>
  * 
  */
 public class OnDiskCache extends CacheServiceImpl {
 
     public static final String CACHE_DIR = "eu.sqooss.service.cache.dir";
+    public static final String CACHE_DISK_SIZE = "eu.sqooss.service.cache.disk.size";
+    
+    /** Names of the files this cache creates, used to avoid evicting others */
+    private static final Pattern CACHE_FILE = Pattern.compile("[0-9a-f]{1,32}");
+    
+    /** Interval between periodic checks of the cache size, in seconds */
+    private static final int EVICTION_INTERVAL = 60;
     
     private File dir;
     
     private Logger log;
     
+    /** Maximum bytes on disk, or -1 for no limit */
+    private long maxSize = -1;
+    private AtomicLong size = new AtomicLong();
+    
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+    private AtomicLong evictions = new AtomicLong();
+    
+    private ScheduledExecutorService evictor;
+    private AtomicBoolean evictionPending = new AtomicBoolean(false);
+    
     public OnDiskCache(String cachedir) throws Exception {
+        this(cachedir, -1);
+    }
+    
+    public OnDiskCache(String cachedir, long maxSize) throws Exception {
         initDir(cachedir);
+        initEviction(maxSize);
     }
     
     public OnDiskCache() throws Exception {
@@ -58,7 +101,17 @@ public class OnDiskCache extends CacheServiceImpl {
                 dirpath = "tmp";
         }
         initDir(dirpath);
-       
+        
+        long max = -1;
+        String maxSize = System.getProperty(CACHE_DISK_SIZE);
+        if (maxSize != null) {
+            try {
+                max = Long.parseLong(maxSize);
+            } catch (NumberFormatException nfe) {
+                warn("Invalid cache size " + maxSize + ", cache will not be bounded");
+            }
+        }
+        initEviction(max);
     }
     
     private void initDir(String path) throws Exception {
@@ -68,6 +121,25 @@ public class OnDiskCache extends CacheServiceImpl {
             dir.mkdirs();
     }
     
+    private void initEviction(long max) {
+        if (max <= 0)
+            return;
+        this.maxSize = max;
+        evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "OnDiskCache evictor");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        /* The first run also calculates the size of files already on disk */
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                evict();
+            }
+        }, 0, EVICTION_INTERVAL, TimeUnit.SECONDS);
+    }
+    
     @Override
     public byte[] get(String key) {
         FileChannel file = null;
@@ -100,9 +172,15 @@ public class OnDiskCache extends CacheServiceImpl {
             buff = file.map(MapMode.READ_ONLY, 0, file.size());
             result = new byte[(int)file.size()]; // 4GB should be enough for everybody :-)
             buff.get(result);
+            if (maxSize > 0)
+                new File(fname).setLastModified(System.currentTimeMillis());
         } catch (Exception e) {
-            return null;
+            result = null;
         } finally {
+            if (result == null)
+                misses.incrementAndGet();
+            else
+                hits.incrementAndGet();
             try {
                 if (lock != null)
                     lock.release();
@@ -147,8 +225,13 @@ public class OnDiskCache extends CacheServiceImpl {
                 file.close();
                 return;
             }
+            long oldSize = file.size();
+            if (oldSize > data.length)
+                file.truncate(data.length);
             buff = file.map(MapMode.READ_WRITE, 0, data.length);
             buff.put(data);
+            if (maxSize > 0 && size.addAndGet(data.length - oldSize) > maxSize)
+                scheduleEviction();
         } catch (FileNotFoundException e) {
             warn("Cannot store key " + key + 
                     " An exception occured: "+ e.getMessage());
@@ -167,6 +250,146 @@ public class OnDiskCache extends CacheServiceImpl {
         }
     }
 
+    @Override
+    public CacheStats getStats() {
+        return new CacheStats(hits.get(), misses.get(), evictions.get(), 
+                maxSize > 0 ? size.get() : -1);
+    }
+    
+    @Override
+    public void shutDown() {
+        if (evictor != null)
+            evictor.shutdownNow();
+    }
+    
+    private void scheduleEviction() {
+        if (!evictionPending.compareAndSet(false, true))
+            return;
+        evictor.execute(new Runnable() {
+            public void run() {
+                evictionPending.set(false);
+                evict();
+            }
+        });
+    }
+    
+    /**
+     * Delete the least recently used cache files until the cache is 10%
+     * below its maximum size. Last access times are approximated by file
+     * modification times, which are updated on every read.
+     */
+    void evict() {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        
+        final long[] lastUsed = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        long total = 0;
+        int n = 0;
+        for (File f : files) {
+            if (!f.isFile() || !CACHE_FILE.matcher(f.getName()).matches())
+                continue;
+            files[n] = f;
+            lastUsed[n] = f.lastModified();
+            order[n] = n;
+            total += f.length();
+            n++;
+        }
+        
+        if (total > maxSize) {
+            Arrays.sort(order, 0, n, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    if (lastUsed[a] == lastUsed[b])
+                        return 0;
+                    return lastUsed[a] < lastUsed[b] ? -1 : 1;
+                }
+            });
+            long target = maxSize - maxSize / 10;
+            for (int i = 0; i < n && total > target; i++) {
+                File f = files[order[i]];
+                long len = f.length();
+                if (f.delete()) {
+                    total -= len;
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+        size.set(total);
+    }
+    
+    /**
+     * Returns a stream reading directly from the key's cache file.
+     */
+    @Override
+    public InputStream getStream(String key) {
+        try {
+            File f = new File(dir, md5(key));
+            InputStream in = new FileInputStream(f);
+            hits.incrementAndGet();
+            if (maxSize > 0)
+                f.setLastModified(System.currentTimeMillis());
+            return in;
+        } catch (FileNotFoundException e) {
+            misses.incrementAndGet();
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Copies the stream in chunks to a temporary file in the cache 
+     * directory, which then replaces the key's cache file.
+     */
+    @Override
+    public void setStream(String key, InputStream in) {
+        File tmp = null;
+        FileOutputStream out = null;
+        try {
+            File target = new File(dir, md5(key));
+            tmp = File.createTempFile("cache", ".tmp", dir);
+            out = new FileOutputStream(tmp);
+            FileChannel channel = out.getChannel();
+            ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+            byte[] b = chunk.array();
+            int n;
+            long length = 0;
+            while ((n = in.read(b)) != -1) {
+                chunk.clear();
+                chunk.limit(n);
+                while (chunk.hasRemaining())
+                    channel.write(chunk);
+                length += n;
+            }
+            out.close();
+            out = null;
+
+            long oldSize = target.length();
+            if (!tmp.renameTo(target)) {
+                target.delete();
+                if (!tmp.renameTo(target)) {
+                    warn("Cannot store key " + key + " Cannot rename " + tmp
+                            + " to " + target);
+                    return;
+                }
+            }
+            tmp = null;
+            if (maxSize > 0 && size.addAndGet(length - oldSize) > maxSize)
+                scheduleEviction();
+        } catch (Exception e) {
+            warn("Cannot store key " + key + 
+                    " An exception occured: "+ e.getMessage());
+        } finally {
+            try {
+                if (out != null)
+                    out.close();
+            } catch (IOException e) {}
+            if (tmp != null)
+                tmp.delete();
+        }
+    }
+
     private String md5(String...args) throws NoSuchAlgorithmException {
         MessageDigest m = MessageDigest.getInstance("MD5");
         
@@ -0,0 +1,99 @@
+package eu.sqooss.service.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Output stream that keeps written data in memory up to a threshold, and
+ * continues in a temporary file after that. Used to find out the size of
+ * streamed data before it is copied to its final location, without holding
+ * all of it in memory. Closing the buffer deletes the temporary file.
+ */
+class SpillBuffer extends OutputStream {
+
+    private File dir;
+    private int threshold;
+
+    private byte[] buf = new byte[4096];
+    private int count = 0;
+
+    private File file;
+    private FileChannel channel;
+    private long size = 0;
+
+    SpillBuffer(File dir, int threshold) {
+        this.dir = dir;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (channel == null && count + len > threshold)
+            spill();
+
+        if (channel == null) {
+            if (count + len > buf.length) {
+                byte[] grown = new byte[Math.max(buf.length * 2, count + len)];
+                System.arraycopy(buf, 0, grown, 0, count);
+                buf = grown;
+            }
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        } else {
+            ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+            while (bb.hasRemaining())
+                channel.write(bb);
+        }
+        size += len;
+    }
+
+    /** Number of bytes written so far */
+    long size() {
+        return size;
+    }
+
+    /** Copy the buffered data to a channel, starting at the provided position */
+    void writeTo(FileChannel target, long position) throws IOException {
+        if (channel == null) {
+            ByteBuffer bb = ByteBuffer.wrap(buf, 0, count);
+            while (bb.hasRemaining())
+                position += target.write(bb, position);
+            return;
+        }
+
+        long done = 0;
+        while (done < size) {
+            target.position(position + done);
+            done += channel.transferTo(done, size - done, target);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        buf = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+            file.delete();
+        }
+    }
+
+    private void spill() throws IOException {
+        file = File.createTempFile("spill", ".tmp", dir);
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        ByteBuffer bb = ByteBuffer.wrap(buf, 0, count);
+        while (bb.hasRemaining())
+            channel.write(bb);
+        buf = null;
+        count = 0;
+    }
+}
@@ -0,0 +1,169 @@
+package eu.sqooss.service.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two level cache: a size bounded, least recently used, in-memory cache in
+ * front of an {@link OnDiskCache}. All entries are written through to disk,
+ * so entries evicted from memory remain available from the disk tier.
+ * Entries found only on disk are promoted to memory on access.
+ *
+ * Accepts the following system properties, in addition to the ones
+ * {@link OnDiskCache} accepts:
+ *
+ *  <dl>
+ *      <dt>
+ *          eu.sqooss.service.cache.mem.size
+ *      </dt>
+ *      <dd>
+ *          Maximum number of bytes to keep in memory. Entries larger than
+ *          1/8 of this size are only stored on disk. Default is 64MB.
+ *      </dd>
+ * </dl>
+ */
+public class TieredCache extends CacheServiceImpl {
+
+    public static final String CACHE_MEM_SIZE = "eu.sqooss.service.cache.mem.size";
+
+    private static final long DEFAULT_MEM_SIZE = 64 * 1024 * 1024;
+
+    private OnDiskCache disk;
+
+    /** Access ordered, guarded by its own monitor */
+    private LinkedHashMap<String, byte[]> mem =
+        new LinkedHashMap<String, byte[]>(1024, 0.75f, true);
+    private long memSize = 0;
+    private long maxMemSize;
+
+    private AtomicLong memHits = new AtomicLong();
+    private AtomicLong memEvictions = new AtomicLong();
+
+    public TieredCache() throws Exception {
+        this.disk = new OnDiskCache();
+        this.maxMemSize = DEFAULT_MEM_SIZE;
+        String max = System.getProperty(CACHE_MEM_SIZE);
+        if (max != null) {
+            try {
+                this.maxMemSize = Long.parseLong(max);
+            } catch (NumberFormatException nfe) {
+                System.err.println("Invalid memory cache size " + max
+                        + ", using " + DEFAULT_MEM_SIZE);
+            }
+        }
+    }
+
+    public TieredCache(OnDiskCache disk, long maxMemSize) {
+        this.disk = disk;
+        this.maxMemSize = maxMemSize;
+    }
+
+    @Override
+    public byte[] get(String key) {
+        byte[] result;
+        synchronized (mem) {
+            result = mem.get(key);
+        }
+        if (result != null) {
+            memHits.incrementAndGet();
+            return result.clone();
+        }
+
+        result = disk.get(key);
+        if (result == null)
+            return null;
+        /* A concurrent set() may have stored a newer value meanwhile */
+        put(key, result, false);
+        return result.clone();
+    }
+
+    @Override
+    public void set(String key, byte[] data) {
+        byte[] copy = data.clone();
+        disk.set(key, copy);
+        put(key, copy, true);
+    }
+
+    @Override
+    public InputStream getStream(String key) {
+        byte[] result;
+        synchronized (mem) {
+            result = mem.get(key);
+        }
+        if (result != null) {
+            memHits.incrementAndGet();
+            return new ByteArrayInputStream(result);
+        }
+        return disk.getStream(key);
+    }
+
+    /**
+     * Streamed values are only stored on disk, any previous value is
+     * removed from memory.
+     */
+    @Override
+    public void setStream(String key, InputStream in) {
+        synchronized (mem) {
+            byte[] old = mem.remove(key);
+            if (old != null)
+                memSize -= old.length;
+        }
+        disk.setStream(key, in);
+    }
+
+    @Override
+    public CacheStats getStats() {
+        CacheStats d = disk.getStats();
+        long size;
+        synchronized (mem) {
+            size = memSize;
+        }
+        return new CacheStats(memHits.get() + d.getHits(), d.getMisses(),
+                memEvictions.get() + d.getEvictions(), size);
+    }
+
+    /**
+     * Get the counters of the disk tier only.
+     */
+    public CacheStats getDiskStats() {
+        return disk.getStats();
+    }
+
+    @Override
+    public void shutDown() {
+        disk.shutDown();
+    }
+
+    /**
+     * Store a value in memory, evicting the least recently used entries
+     * to stay within the memory limit.
+     *
+     * @param replace if false, an existing value for the key is kept
+     */
+    private void put(String key, byte[] data, boolean replace) {
+        synchronized (mem) {
+            if (!replace && mem.containsKey(key))
+                return;
+            byte[] old = mem.remove(key);
+            if (old != null)
+                memSize -= old.length;
+
+            if (data.length > maxMemSize / 8)
+                return;
+
+            mem.put(key, data);
+            memSize += data.length;
+
+            Iterator<Map.Entry<String, byte[]>> i = mem.entrySet().iterator();
+            while (memSize > maxMemSize && i.hasNext()) {
+                memSize -= i.next().getValue().length;
+                i.remove();
+                memEvictions.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package eu.sqooss.service.cache.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.sqooss.service.cache.LogStructuredCache;
+
+public class LogStructuredCacheTest {
+
+    static String path = "tmp/segments";
+    LogStructuredCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        File dir = new File(path);
+        if (dir.exists())
+            for (File f : dir.listFiles())
+                f.delete();
+        cache = new LogStructuredCache(path, 1024);
+    }
+
+    @After
+    public void tearDown() {
+        cache.shutDown();
+    }
+
+    @Test
+    public void testGetSet() {
+        cache.set("foo", "this is val1".getBytes());
+        assertEquals("this is val1", new String(cache.get("foo")));
+        cache.set("foo", "val2".getBytes());
+        assertEquals("val2", new String(cache.get("foo")));
+        assertNull(cache.get("bar"));
+    }
+
+    @Test
+    public void testGetStream() throws Exception {
+        cache.set("foo", "streamed value".getBytes());
+        InputStream in = cache.getStream("foo");
+        byte[] buf = new byte[64];
+        int n = 0, r;
+        while ((r = in.read(buf, n, buf.length - n)) != -1)
+            n += r;
+        in.close();
+        assertEquals("streamed value", new String(buf, 0, n));
+    }
+
+    @Test
+    public void testSetStream() throws Exception {
+        /* Larger than the in-memory part of the spill buffer */
+        byte[] data = new byte[3 * 1024 * 1024];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) (i % 251);
+        cache.setStream("big", new ByteArrayInputStream(data));
+        cache.setStream("small", new ByteArrayInputStream("small".getBytes()));
+
+        assertArrayEquals(data, cache.get("big"));
+        assertEquals("small", new String(cache.get("small")));
+        assertEquals(0, new File(path).listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".tmp");
+            }
+        }).length);
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        for (int i = 0; i < 100; i++)
+            cache.set("key" + i, ("value" + i).getBytes());
+        cache.set("key0", "new value".getBytes());
+        cache.shutDown();
+
+        /* Simulate a crash in the middle of writing a record */
+        File[] segments = new File(path).listFiles();
+        File last = segments[0];
+        for (File f : segments)
+            if (f.getName().compareTo(last.getName()) > 0)
+                last = f;
+        RandomAccessFile raf = new RandomAccessFile(last, "rw");
+        raf.seek(raf.length());
+        raf.write(new byte[] {0x5C, 0x00, 0x55});
+        raf.close();
+
+        cache = new LogStructuredCache(path, 1024);
+        assertEquals("new value", new String(cache.get("key0")));
+        for (int i = 1; i < 100; i++)
+            assertEquals("value" + i, new String(cache.get("key" + i)));
+
+        cache.set("key100", "value100".getBytes());
+        assertEquals("value100", new String(cache.get("key100")));
+    }
+
+    @Test
+    public void testCompaction() {
+        for (int round = 0; round < 20; round++)
+            for (int i = 0; i < 10; i++)
+                cache.set("key" + i, ("value" + round).getBytes());
+        int before = new File(path).listFiles().length;
+
+        cache.compact();
+
+        int after = new File(path).listFiles().length;
+        assertTrue(after < before);
+        for (int i = 0; i < 10; i++)
+            assertEquals("value19", new String(cache.get("key" + i)));
+    }
+
+    @Test(timeout = 10000)
+    public void testCompactionOfCorruptedSegment() throws Exception {
+        /* 18 records of 59 bytes fill the first segment */
+        for (int i = 0; i < 18; i++)
+            cache.set(String.format("k%02d", i), String.format("%040d", i).getBytes());
+
+        /* Corrupt an overwritten and a live record in the middle */
+        RandomAccessFile raf = new RandomAccessFile(
+                new File(path, "segment-00000001.log"), "rw");
+        for (int i : new int[] {8, 12}) {
+            raf.seek(i * 59 + 19);
+            raf.write('x');
+        }
+        raf.close();
+
+        for (int i = 0; i < 18; i++)
+            if (i != 3 && i != 12 && i != 15)
+                cache.set(String.format("k%02d", i), "new".getBytes());
+
+        cache.compact();
+
+        assertEquals(String.format("%040d", 3), new String(cache.get("k03")));
+        assertEquals(String.format("%040d", 15), new String(cache.get("k15")));
+        assertEquals("new", new String(cache.get("k08")));
+        assertNull(cache.get("k12"));
+        assertNull(cache.getStream("k12"));
+        assertTrue(!new File(path, "segment-00000001.log").exists());
+    }
+}
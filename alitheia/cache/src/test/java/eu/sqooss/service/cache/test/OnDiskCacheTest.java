@@ -1,7 +1,11 @@
 package eu.sqooss.service.cache.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -51,6 +55,66 @@ public class OnDiskCacheTest {
         }
     }
 
+    @Test
+    public void testDiskSizeBound() throws Exception {
+        File dir = Files.createTempDirectory("ondisk").toFile();
+        OnDiskCache bounded = new OnDiskCache(dir.getPath(), 5000);
+        try {
+            for (int i = 0; i < 20; i++)
+                bounded.set("bounded" + i, new byte[1000]);
+
+            /* Eviction runs in the background */
+            assertTrue(waitForSize(dir, 5000));
+            assertTrue(bounded.getStats().getEvictions() >= 10);
+        } finally {
+            bounded.shutDown();
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testEvictOnStartup() throws Exception {
+        File dir = Files.createTempDirectory("ondisk").toFile();
+        OnDiskCache unbounded = new OnDiskCache(dir.getPath());
+        for (int i = 0; i < 10; i++)
+            unbounded.set("old" + i, new byte[1000]);
+        long past = System.currentTimeMillis() - 3600 * 1000;
+        for (File f : dir.listFiles())
+            f.setLastModified(past);
+        unbounded.set("recent", new byte[1000]);
+
+        /* The first eviction run finds the files already on disk, and
+         * removes the least recently used ones */
+        OnDiskCache bounded = new OnDiskCache(dir.getPath(), 5000);
+        try {
+            assertTrue(waitForSize(dir, 5000));
+            assertNotNull(bounded.get("recent"));
+            assertEquals(7, bounded.getStats().getEvictions());
+        } finally {
+            bounded.shutDown();
+            delete(dir);
+        }
+    }
+
+    private static boolean waitForSize(File dir, long max) 
+        throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            long total = 0;
+            for (File f : dir.listFiles())
+                total += f.length();
+            if (total <= max)
+                return true;
+            Thread.sleep(50);
+        }
+        return false;
+    }
+
+    private static void delete(File dir) {
+        for (File f : dir.listFiles())
+            f.delete();
+        dir.delete();
+    }
+
     class StresserThread extends Thread {
         OnDiskCache cache;
         
@@ -0,0 +1,99 @@
+package eu.sqooss.service.cache.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.sqooss.service.cache.CacheStats;
+import eu.sqooss.service.cache.OnDiskCache;
+import eu.sqooss.service.cache.TieredCache;
+
+public class TieredCacheTest {
+
+    TieredCache cache;
+    static String path = "tmp";
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new TieredCache(new OnDiskCache(path), 8 * 1024);
+    }
+
+    @Test
+    public void testGetSet() {
+        cache.set("tiered-foo", "this is val1".getBytes());
+        assertEquals("this is val1", new String(cache.get("tiered-foo")));
+
+        CacheStats s = cache.getStats();
+        assertEquals(1, s.getHits());
+        assertEquals(0, cache.getDiskStats().getHits());
+    }
+
+    @Test
+    public void testGetReturnsCopy() throws Exception {
+        cache.set("tiered-copy", "this is val1".getBytes());
+        byte[] b = cache.get("tiered-copy");
+        b[0] = 'X';
+        assertEquals("this is val1", new String(cache.get("tiered-copy")));
+
+        /* Also when the value was just loaded from disk */
+        TieredCache other = new TieredCache(new OnDiskCache(path), 8 * 1024);
+        b = other.get("tiered-copy");
+        b[0] = 'X';
+        assertEquals("this is val1", new String(other.get("tiered-copy")));
+    }
+
+    @Test
+    public void testMiss() {
+        assertNull(cache.get("tiered-not-there"));
+        assertEquals(1, cache.getStats().getMisses());
+    }
+
+    @Test
+    public void testEviction() {
+        byte[] data = new byte[1024];
+        for (int i = 0; i < 16; i++) {
+            data[0] = (byte) i;
+            cache.set("tiered-evict" + i, data);
+        }
+
+        CacheStats s = cache.getStats();
+        assertTrue(s.getSize() <= 8 * 1024);
+        assertEquals(8, s.getEvictions());
+
+        /* Evicted entries are still on disk */
+        assertEquals(0, cache.get("tiered-evict0")[0]);
+        assertEquals(1, cache.getDiskStats().getHits());
+    }
+
+    @Test
+    public void testStreams() throws Exception {
+        cache.set("tiered-stream", "in memory".getBytes());
+        cache.setStream("tiered-stream",
+                new ByteArrayInputStream("streamed".getBytes()));
+
+        InputStream in = cache.getStream("tiered-stream");
+        byte[] buf = new byte[64];
+        int n = 0, r;
+        while ((r = in.read(buf, n, buf.length - n)) != -1)
+            n += r;
+        in.close();
+        assertEquals("streamed", new String(buf, 0, n));
+        assertEquals("streamed", new String(cache.get("tiered-stream")));
+    }
+
+    @Test
+    public void testOverwrite() throws Exception {
+        cache.set("tiered-shrink", "a longer value".getBytes());
+        cache.set("tiered-shrink", "short".getBytes());
+        assertEquals("short", new String(cache.get("tiered-shrink")));
+
+        OnDiskCache disk = new OnDiskCache(path);
+        assertEquals("short", new String(disk.get("tiered-shrink")));
+    }
+}
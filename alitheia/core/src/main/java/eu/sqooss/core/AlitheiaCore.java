@@ -91,10 +91,12 @@ public class AlitheiaCore {
     /* Service Configuration */
     private static Vector<Class<? extends AlitheiaCoreService>> services;
     private static Map<Class<? extends AlitheiaCoreService>, Class<?>> implementations;
+    private static Map<Class<? extends AlitheiaCoreService>, String> implementationProperties;
 
     static {
         services = new Vector<Class<? extends AlitheiaCoreService>>();
         implementations = new HashMap<Class<? extends AlitheiaCoreService>, Class<?>>();
+        implementationProperties = new HashMap<Class<? extends AlitheiaCoreService>, String>();
 
     	/* 
     	 * Order matters here as services are initialised 
@@ -127,6 +129,9 @@ public class AlitheiaCore {
     	implementations.put(WebadminService.class, WebadminServiceImpl.class);
         implementations.put(RestService.class, ResteasyServiceImpl.class);
     	implementations.put(AdminService.class, AdminServiceImpl.class);
+
+    	/* System properties that can override the default implementations */
+    	implementationProperties.put(Scheduler.class, "eu.sqooss.scheduler.impl");
     }
    
     /**
@@ -222,7 +227,7 @@ public class AlitheiaCore {
     }
 
     private synchronized void initService(Class<? extends AlitheiaCoreService> s) {
-        Class<?> impl = implementations.get(s);
+        Class<?> impl = getImplementation(s);
 
         if (impl == null) {
             err("No implementation found for service " + s);
@@ -258,6 +263,33 @@ public class AlitheiaCore {
         }
     }
 
+    /**
+     * Get the implementation class for a service. The default implementation
+     * can be overriden by setting the system property registered for the 
+     * service to the fully qualified name of the implementing class.
+     */
+    private Class<?> getImplementation(Class<? extends AlitheiaCoreService> s) {
+        String prop = implementationProperties.get(s);
+        if (prop == null)
+            return implementations.get(s);
+
+        String clazz = System.getProperty(prop);
+        if (clazz == null || clazz.trim().length() == 0)
+            return implementations.get(s);
+
+        try {
+            Class<?> impl = getClass().getClassLoader().loadClass(clazz.trim());
+            if (s.isAssignableFrom(impl))
+                return impl;
+            err("Class " + clazz + " does not implement " + s 
+                    + ", using default implementation");
+        } catch (ClassNotFoundException e) {
+            err("Cannot load implementation " + clazz + " for service " + s 
+                    + ", using default implementation");
+        }
+        return implementations.get(s);
+    }
+
     public void shutDown() {
     	List<Class<? extends AlitheiaCoreService>> revServices = 
     		new ArrayList<Class<? extends AlitheiaCoreService>>(services);
@@ -414,6 +446,16 @@ public class AlitheiaCore {
     public AdminService getAdminService() {
     	return (AdminService)instances.get(AdminService.class);
     }
+    
+    /**
+     * Returns the instance of a service, including services registered
+     * by external bundles through {@link #registerService(Class, Class)}.
+     * 
+     * @return The service instance or null if the service is not running.
+     */
+    public <T extends AlitheiaCoreService> T getService(Class<T> service) {
+        return service.cast(instances.get(service));
+    }
 	
 	private void err(String msg) {
 		System.err.println("AlitheiaCore: " + msg);
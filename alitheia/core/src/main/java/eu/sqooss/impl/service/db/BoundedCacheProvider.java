@@ -0,0 +1,189 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.impl.service.db;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.hibernate.cache.Cache;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.CacheProvider;
+import org.hibernate.cache.Timestamper;
+import org.hibernate.cache.UpdateTimestampsCache;
+
+/**
+ * Hibernate second level cache provider that keeps each region in memory,
+ * bounded to a maximum number of entries. When a region is full, the least
+ * recently used entry is dropped. Hibernate treats a missing entry as a
+ * cache miss and reloads it from the database.
+ *
+ * The update timestamps region is not bounded. Hibernate keeps one entry per
+ * table there, and treats a missing timestamp as "not modified", so it must
+ * never be evicted.
+ *
+ * Accepts the following Hibernate property:
+ *
+ *  <dl>
+ *      <dt>hibernate.cache.max_entries</dt>
+ *      <dd>Maximum number of entries per cache region. Default is 10000.</dd>
+ * </dl>
+ */
+public class BoundedCacheProvider implements CacheProvider {
+
+    public static final String MAX_ENTRIES = "hibernate.cache.max_entries";
+
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    public void start(Properties props) throws CacheException {
+        String max = props.getProperty(MAX_ENTRIES);
+        if (max == null)
+            return;
+        try {
+            maxEntries = Integer.parseInt(max.trim());
+        } catch (NumberFormatException e) {
+            throw new CacheException("Invalid value for " + MAX_ENTRIES 
+                    + ": " + max);
+        }
+        if (maxEntries < 1)
+            throw new CacheException(MAX_ENTRIES + " must be positive");
+    }
+
+    public Cache buildCache(String regionName, Properties props) 
+        throws CacheException {
+        if (regionName.endsWith(UpdateTimestampsCache.REGION_NAME))
+            return new BoundedCache(regionName, Integer.MAX_VALUE);
+        return new BoundedCache(regionName, maxEntries);
+    }
+
+    public long nextTimestamp() {
+        return Timestamper.next();
+    }
+
+    public void stop() {}
+
+    public boolean isMinimalPutsEnabledByDefault() {
+        return false;
+    }
+
+    /** A single cache region */
+    static class BoundedCache implements Cache {
+
+        private final String regionName;
+        private final int maxEntries;
+        private final LinkedHashMap<Object, Object> entries;
+
+        BoundedCache(String regionName, int maxEntries) {
+            this.regionName = regionName;
+            this.maxEntries = maxEntries;
+            this.entries = new LinkedHashMap<Object, Object>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, Object> e) {
+                    return size() > BoundedCache.this.maxEntries;
+                }
+            };
+        }
+
+        public String getRegionName() {
+            return regionName;
+        }
+
+        public synchronized Object read(Object key) throws CacheException {
+            return entries.get(key);
+        }
+
+        public Object get(Object key) throws CacheException {
+            return read(key);
+        }
+
+        public synchronized void put(Object key, Object value) 
+            throws CacheException {
+            entries.put(key, value);
+        }
+
+        public void update(Object key, Object value) throws CacheException {
+            put(key, value);
+        }
+
+        public synchronized void remove(Object key) throws CacheException {
+            entries.remove(key);
+        }
+
+        public synchronized void clear() throws CacheException {
+            entries.clear();
+        }
+
+        public void destroy() throws CacheException {
+            clear();
+        }
+
+        public void lock(Object key) throws CacheException {}
+
+        public void unlock(Object key) throws CacheException {}
+
+        public long nextTimestamp() {
+            return Timestamper.next();
+        }
+
+        public int getTimeout() {
+            return Timestamper.ONE_MS * 60000;
+        }
+
+        public long getSizeInMemory() {
+            return -1;
+        }
+
+        public synchronized long getElementCountInMemory() {
+            return entries.size();
+        }
+
+        public long getElementCountOnDisk() {
+            return 0;
+        }
+
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        public synchronized Map toMap() {
+            return new HashMap(entries);
+        }
+
+        public String toString() {
+            return "BoundedCache(" + regionName + ")";
+        }
+    }
+}
@@ -36,6 +36,7 @@ package eu.sqooss.impl.service.db;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.net.URL;
 import java.net.URI;
 import java.sql.Connection;
@@ -43,14 +44,18 @@ import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.hibernate.Cache;
 import org.hibernate.HibernateException;
 import org.hibernate.LockMode;
 import org.hibernate.QueryException;
@@ -60,11 +65,31 @@ import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.cfg.AnnotationConfiguration;
 import org.hibernate.cfg.Configuration;	
+import org.hibernate.connection.ConnectionProvider;
+import org.hibernate.engine.EntityKey;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.event.EventListeners;
+import org.hibernate.event.PostDeleteEvent;
+import org.hibernate.event.PostDeleteEventListener;
+import org.hibernate.event.PostUpdateEvent;
+import org.hibernate.event.PostUpdateEventListener;
+import org.hibernate.proxy.HibernateProxy;
 import org.osgi.framework.BundleContext;
 
 import eu.sqooss.core.AlitheiaCoreService;
+import eu.sqooss.service.db.ConnectionPoolStats;
 import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.MeasurementSeries;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.MetricMeasurement;
+import eu.sqooss.service.db.MetricType;
+import eu.sqooss.service.db.ProjectFile;
+import eu.sqooss.service.db.ProjectFileMeasurement;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.db.ProjectVersionMeasurement;
+import eu.sqooss.service.db.SchemaMigration;
+import eu.sqooss.service.db.StoredProject;
 import eu.sqooss.service.logging.Logger;
 import eu.sqooss.service.util.URIUtills;
 
@@ -111,6 +136,7 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
     static {
         conPools.put("default", "org.hibernate.connection.DriverManagerConnectionProvider");
         conPools.put("c3p0", "org.hibernate.connection.C3P0ConnectionProvider");
+        conPools.put("pooled", PooledConnectionProvider.class.getName());
     }
     
     private static final String DB = "eu.sqooss.db";
@@ -119,12 +145,31 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
     private static final String DB_USERNAME = "eu.sqooss.db.user";
     private static final String DB_PASSWORD = "eu.sqooss.db.passwd";
     private static final String DB_CONPOOL = "eu.sqooss.db.conpool";
+    private static final String DB_CONPOOL_SIZE = "eu.sqooss.db.conpool.size";
+    private static final String SCHEDULER_THREADS = "eu.sqooss.scheduler.numthreads";
+    private static final String IMPORT_THREADS = "eu.sqooss.updater.git.threads";
+    
+    /** Connections left for the web administration and REST interfaces */
+    private static final int WEB_CONNECTIONS = 4;
+    /** Smallest connection pool size accepted */
+    private static final int MIN_POOL_SIZE = 8;
+    private static final String MEASUREMENT_STORE = "eu.sqooss.db.measurementstore";
+
+    /* Data migrations */
+    private static final String FILE_INTERVAL_INDEX = "file-interval-index";
+    private static final String TYPED_RESULTS = "typed-measurement-results";
+
+    private static final String qVersionSeries = "select pv.id, m.doubleResult, m.id from ProjectVersionMeasurement m, ProjectVersion pv where m.projectVersion = pv and pv.project = :paramProject and m.metric = :paramMetric and m.doubleResult is not null order by pv.sequence";
+    private static final String qFileSeries = "select pf.id, m.doubleResult, m.id from ProjectFileMeasurement m, ProjectFile pf where m.projectFile = pf and pf.projectId = :paramProject and m.metric = :paramMetric and m.doubleResult is not null order by pf.id";
+    private static final String qVersionSeriesMark = "select count(m), max(m.id) from ProjectVersionMeasurement m, ProjectVersion pv where m.projectVersion = pv and pv.project = :paramProject and m.metric = :paramMetric and m.doubleResult is not null";
+    private static final String qFileSeriesMark = "select count(m), max(m.id) from ProjectFileMeasurement m, ProjectFile pf where m.projectFile = pf and pf.projectId = :paramProject and m.metric = :paramMetric and m.doubleResult is not null";
     
     private Logger logger = null;
     private SessionFactory sessionFactory = null;
     private BundleContext bc = null;
     private AtomicBoolean isInitialised = new AtomicBoolean(false);
     private Properties conProp = new Properties();
+    private MeasurementStore measurements = null;
     
     private void logSQLException(SQLException e) {
 
@@ -144,6 +189,7 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
         logger.warn("Exception caught during database session: " + e.getMessage() 
                 + ". Rolling back current transaction and terminating session...");
         e.printStackTrace();
+        discardMeasurements();
         Session s = null;
         try {
             s = sessionFactory.getCurrentSession();
@@ -271,6 +317,17 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
                     }
                 } 
             }
+            MeasurementListener ml = new MeasurementListener();
+            EventListeners el = c.getEventListeners();
+            PostUpdateEventListener[] pu = el.getPostUpdateEventListeners();
+            pu = Arrays.copyOf(pu, pu.length + 1);
+            pu[pu.length - 1] = ml;
+            el.setPostUpdateEventListeners(pu);
+            PostDeleteEventListener[] pd = el.getPostDeleteEventListeners();
+            pd = Arrays.copyOf(pd, pd.length + 1);
+            pd[pd.length - 1] = ml;
+            el.setPostDeleteEventListeners(pd);
+            
             sessionFactory = c.buildSessionFactory();
             
             if (sessionFactory == null)
@@ -289,6 +346,7 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
         this.conProp = p;
         this.logger = l;
         initHibernate(configFileURL);
+        initMeasurementStore();
         isInitialised.compareAndSet(false, true);
         instance = this;
     }
@@ -322,15 +380,19 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
     }
 
     public <T extends DAObject> List<T> findObjectsByProperties(Class<T> daoClass, Map<String,Object> properties) {
-        return doFindObjectsByProperties(daoClass, properties, false);
+        return doFindObjectsByProperties(daoClass, properties, false, false);
     }
 
     public <T extends DAObject> List<T> findObjectsByPropertiesForUpdate(Class<T> daoClass, Map<String,Object> properties) {
-        return doFindObjectsByProperties(daoClass, properties, true);
+        return doFindObjectsByProperties(daoClass, properties, true, false);
+    }
+
+    public <T extends DAObject> List<T> findObjectsByPropertiesCached(Class<T> daoClass, Map<String,Object> properties) {
+        return doFindObjectsByProperties(daoClass, properties, false, true);
     }
 
     @SuppressWarnings("unchecked")
-    private <T extends DAObject> List<T> doFindObjectsByProperties(Class<T> daoClass, Map<String,Object> properties, boolean useLock) {
+    private <T extends DAObject> List<T> doFindObjectsByProperties(Class<T> daoClass, Map<String,Object> properties, boolean useLock, boolean cacheable) {
         if( !checkSession() )
             return Collections.emptyList();
 
@@ -346,7 +408,7 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
         }
         try {
             // We use "foo" as the name of the object
-            return (List<T>) doHQL( "from " + daoClass.getName() + " as foo " + whereClause, parameterMap, useLock );
+            return (List<T>) doHQL( "from " + daoClass.getName() + " as foo " + whereClause, parameterMap, null, useLock, -1, -1, cacheable );
         } catch (QueryException e) {
             logger.warn("findObjectsByProperties(): invalid properties map. Restarting session...");
             // Automatically restart a session
@@ -482,6 +544,13 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
     public List<?> doHQL(String hql, Map<String, Object> params,
             Map<String, Collection> collectionParams, boolean lockForUpdate, int start, int limit) 
         throws QueryException {
+        return doHQL(hql, params, collectionParams, lockForUpdate, start, limit, false);
+    }
+
+    private List<?> doHQL(String hql, Map<String, Object> params,
+            Map<String, Collection> collectionParams, boolean lockForUpdate,
+            int start, int limit, boolean cacheable)
+        throws QueryException {
         if ( !checkSession() ) {
             return Collections.emptyList();
         }
@@ -505,6 +574,9 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
                 query.setFirstResult(start);
                 query.setMaxResults(limit);
             }
+            if (cacheable) {
+                query.setCacheable(true);
+            }
             return query.list();
         } catch ( QueryException e ) {
             logExceptionAndTerminateSession(e);
@@ -557,6 +629,43 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
             }
             lastRecord = null;
             s.flush();
+            stageMeasurements(records);
+            return true;
+        } catch (HibernateException e) {
+            if (lastRecord != null) {
+                logger.error("Failed to add object "
+                        + "[" + lastRecord.getClass().getName() + ":" + lastRecord.getId() + "]"
+                        + " to the database: " + e.getMessage());
+            }
+            logExceptionAndTerminateSession(e);
+            return false;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see eu.sqooss.service.db.DBService#addRecordsBatched(java.util.List, int)
+     */
+    public <T extends DAObject> boolean addRecordsBatched(List<T> records,
+            int batchSize) {
+        if( !checkSession() )
+            return false;
+
+        if (batchSize < 1)
+            batchSize = 1;
+
+        DAObject lastRecord = null;
+        try {
+            Session s = sessionFactory.getCurrentSession();
+            int count = 0;
+            for (DAObject record : records) {
+                lastRecord = record;
+                s.save(record);
+                if (++count % batchSize == 0)
+                    s.flush();
+            }
+            lastRecord = null;
+            s.flush();
+            stageMeasurements(records);
             return true;
         } catch (HibernateException e) {
             if (lastRecord != null) {
@@ -612,6 +721,7 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
             return true;
         }
         
+        discardMeasurements();
         Session s = null;
         try {
             s = sessionFactory.getCurrentSession();
@@ -640,6 +750,7 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
             //logger.debug("commitDBSession: " + s + "[hashcode=" + s.hashCode() + ",open=" + s.isOpen() + "]");
             s.getTransaction().commit();
         } catch (HibernateException e) {
+            discardMeasurements();
             logger.error("commitDBSession() - error while committing transaction: " + e.getMessage());
             if ( s != null ) {
                 // The docs say to do so
@@ -654,6 +765,8 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
             }
             return false;
         }
+        if (measurements != null)
+            measurements.commit();
         return true;
     }
 
@@ -661,6 +774,7 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
         if ( !checkSession() )
             return false;
         
+        discardMeasurements();
         Session s = null;
         try {
             s = sessionFactory.getCurrentSession();
@@ -740,7 +854,37 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
         }
     }
     
+    public <T extends DAObject> boolean refreshDBSessionObjects(
+            Class<T> daoClass, Collection<Long> ids) {
+        if (!checkSession())
+            return false;
+
+        try {
+            Session s = sessionFactory.getCurrentSession();
+            Set<Long> updated = new HashSet<Long>(ids);
+            List<Object> attached = new ArrayList<Object>();
+            for (Object o : s.getStatistics().getEntityKeys()) {
+                EntityKey key = (EntityKey) o;
+                if (key.getEntityName().equals(daoClass.getName())
+                        && updated.contains(key.getIdentifier()))
+                    attached.add(s.get(daoClass, key.getIdentifier()));
+            }
+            for (Object o : attached)
+                s.refresh(o);
+            return true;
+        } catch (HibernateException e) {
+            logExceptionAndTerminateSession(e);
+            return false;
+        }
+    }
+    
     public int executeUpdate(String hql, Map<String, Object> params) 
+    throws QueryException {
+        return executeUpdate(hql, params, null);
+    }
+    
+    public int executeUpdate(String hql, Map<String, Object> params,
+            Map<String, Collection> collectionParams) 
     throws QueryException {
         if (!checkSession()) {
             return -1;
@@ -754,6 +898,11 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
                     query.setParameter(param, params.get(param));
                 }
             }
+            if (collectionParams != null) {
+                for (String param : collectionParams.keySet()) {
+                    query.setParameterList(param, collectionParams.get(param));
+                }
+            }
             
             return query.executeUpdate();
             
@@ -785,7 +934,17 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
         conProp.setProperty("hibernate.connection.username", bc.getProperty(DB_USERNAME));
         conProp.setProperty("hibernate.connection.password", bc.getProperty(DB_PASSWORD));
         conProp.setProperty("hibernate.connection.dialect",  hbmDialects.get(db));
-        conProp.setProperty("hibernate.connection.provider_class", conPools.get(bc.getProperty(DB_CONPOOL)));
+        String pool = bc.getProperty(DB_CONPOOL);
+        if (pool == null) {
+            pool = "pooled";
+        } else if (!conPools.containsKey(pool)) {
+            logger.error("Unknown connection pool " + pool + " in " 
+                    + DB_CONPOOL + ", expected one of " + conPools.keySet());
+            return false;
+        }
+        conProp.setProperty("hibernate.connection.provider_class", conPools.get(pool));
+        conProp.setProperty("hibernate.connection.pool_size",
+                String.valueOf(poolSize()));
         
         if (!getJDBCConnection()) {
             logger.error("DB service got no JDBC connectors.");
@@ -794,15 +953,243 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
         
         if(!initHibernate(bc.getBundle().getResource("hibernate.cfg.xml")))
             return false;
+        initMeasurementStore();
         
         isInitialised.compareAndSet(false, true);
+
+        migrate();
         return true; 
     }
 
+    /**
+     * Run the data migrations that have not been run on this database yet.
+     */
+    private void migrate() {
+        startDBSession();
+        if (!SchemaMigration.isApplied(this, FILE_INTERVAL_INDEX)) {
+            int indexed = ProjectFile.fillIntervalIndex(this);
+            logger.info("Added " + indexed + " files to the file validity index");
+            SchemaMigration.markApplied(this, FILE_INTERVAL_INDEX);
+        }
+        if (!SchemaMigration.isApplied(this, TYPED_RESULTS)) {
+            int typed = MetricMeasurement.fillTypedResults(this);
+            logger.info("Stored " + typed + " measurement results as numbers");
+            SchemaMigration.markApplied(this, TYPED_RESULTS);
+        }
+        commitDBSession();
+    }
+
+    /**
+     * Unless configured, the pool has a connection for every scheduler 
+     * worker thread, one more per worker for the temporary workers started 
+     * while a job waits for another to finish, one for every updater import
+     * thread and {@link #WEB_CONNECTIONS} for the web and REST interfaces.
+     * Sizes below {@link #MIN_POOL_SIZE} are raised to it.
+     */
+    private int poolSize() {
+        int size = intProperty(bc.getProperty(DB_CONPOOL_SIZE), -1,
+                "connection pool size");
+        if (size == -1) {
+            int cpus = Runtime.getRuntime().availableProcessors();
+            int threads = intProperty(System.getProperty(SCHEDULER_THREADS),
+                    2 * cpus, "number of scheduler threads");
+            int importers = intProperty(System.getProperty(IMPORT_THREADS),
+                    cpus, "number of import threads");
+            size = 2 * threads + importers + WEB_CONNECTIONS;
+        }
+        if (size < MIN_POOL_SIZE) {
+            logger.warn("Connection pool size " + size + " is too small, using "
+                    + MIN_POOL_SIZE);
+            size = MIN_POOL_SIZE;
+        }
+        logger.info("Using up to " + size + " database connections");
+        return size;
+    }
+
+    private int intProperty(String value, int def, String name) {
+        if (value == null || value.equals("-1"))
+            return def;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException nfe) {
+            logger.warn("Invalid " + name + ": " + value);
+            return def;
+        }
+    }
+
+    public void evictCache() {
+        if (sessionFactory == null)
+            return;
+        try {
+            Cache c = sessionFactory.getCache();
+            c.evictEntityRegions();
+            c.evictCollectionRegions();
+            c.evictQueryRegions();
+            c.evictDefaultQueryRegion();
+        } catch (HibernateException e) {
+            logger.warn("Failed to clear the second level cache: " + e.getMessage());
+        }
+    }
+
+    public ConnectionPoolStats getConnectionPoolStats() {
+        if (sessionFactory == null)
+            return null;
+        ConnectionProvider cp = ((SessionFactoryImplementor) sessionFactory)
+            .getConnectionProvider();
+        if (cp instanceof PooledConnectionProvider)
+            return ((PooledConnectionProvider) cp).getStats();
+        return null;
+    }
+
+    public MeasurementSeries getMeasurementSeries(Metric m, StoredProject sp) {
+        String hql, mark;
+        MetricType.Type type = m.getMetricType().getEnumType();
+        if (type == MetricType.Type.PROJECT_VERSION) {
+            hql = qVersionSeries;
+            mark = qVersionSeriesMark;
+        } else if (type == MetricType.Type.SOURCE_FILE) {
+            hql = qFileSeries;
+            mark = qFileSeriesMark;
+        } else {
+            return null;
+        }
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("paramProject", hql == qFileSeries ? (Object) sp.getId() : sp);
+        params.put("paramMetric", m);
+
+        if (measurements != null) {
+            try {
+                Object[] r = (Object[]) doHQL(mark, params).get(0);
+                long count = ((Number) r[0]).longValue();
+                long lastId = (r[1] == null) ? 0 : ((Number) r[1]).longValue();
+                MeasurementSeries s = measurements.read(sp.getId(), m.getId(),
+                        count, lastId);
+                if (s != null)
+                    return s;
+            } catch (IOException e) {
+                logger.warn("Cannot read measurement series of metric " 
+                        + m.getMnemonic() + " for project " + sp.getName() 
+                        + ": " + e.getMessage());
+                measurements.drop(sp.getId(), m.getId());
+            }
+            measurements.beginCreate(sp.getId(), m.getId());
+        }
+
+        List<?> rows = doHQL(hql, params);
+        long[] ids = new long[rows.size()];
+        double[] values = new double[rows.size()];
+        long lastId = 0;
+        int i = 0;
+        for (Object row : rows) {
+            Object[] r = (Object[]) row;
+            ids[i] = (Long) r[0];
+            values[i++] = (Double) r[1];
+            lastId = Math.max(lastId, (Long) r[2]);
+        }
+        MeasurementSeries s = new MeasurementSeries(m.getId(), sp.getId(), ids, values);
+
+        if (measurements != null) {
+            try {
+                measurements.create(s, lastId);
+            } catch (IOException e) {
+                logger.warn("Cannot store measurement series of metric " 
+                        + m.getMnemonic() + " for project " + sp.getName() 
+                        + ": " + e.getMessage());
+                measurements.drop(sp.getId(), m.getId());
+            }
+        }
+        return s;
+    }
+
+    private void initMeasurementStore() {
+        String path = System.getProperty(MEASUREMENT_STORE);
+        if (path == null || path.length() == 0)
+            return;
+        measurements = new MeasurementStore(new File(path), logger);
+        logger.info("Storing measurement series in " + path);
+    }
+
+    /*
+     * Measurements are appended to their series when the session commits.
+     */
+    private <T extends DAObject> void stageMeasurements(List<T> records) {
+        if (measurements == null)
+            return;
+        for (DAObject o : records) {
+            long project, metric, artifact;
+            if (o instanceof ProjectVersionMeasurement) {
+                ProjectVersionMeasurement pvm = (ProjectVersionMeasurement) o;
+                ProjectVersion pv = pvm.getProjectVersion();
+                project = pv.getProject().getId();
+                metric = pvm.getMetric().getId();
+                artifact = pv.getId();
+            } else if (o instanceof ProjectFileMeasurement) {
+                ProjectFileMeasurement pfm = (ProjectFileMeasurement) o;
+                ProjectFile pf = pfm.getProjectFile();
+                project = pf.getProjectVersion().getProject().getId();
+                metric = pfm.getMetric().getId();
+                artifact = pf.getId();
+            } else {
+                continue;
+            }
+
+            Double value = ((MetricMeasurement) o).getDoubleResult();
+            if (value != null)
+                measurements.stageAppend(project, metric, artifact, 
+                        o.getId(), value);
+        }
+    }
+
+    /*
+     * Measurements updated or deleted through the session, including by
+     * dirty checking and cascades, drop the series of their metric when the
+     * session commits. The metric of a measurement is usually a proxy, its
+     * id is read without loading it while the session flushes.
+     */
+    private class MeasurementListener 
+        implements PostUpdateEventListener, PostDeleteEventListener {
+        private static final long serialVersionUID = 1L;
+
+        public void onPostUpdate(PostUpdateEvent e) {
+            stageDrop(e.getEntity());
+        }
+
+        public void onPostDelete(PostDeleteEvent e) {
+            stageDrop(e.getEntity());
+        }
+
+        private void stageDrop(Object o) {
+            if (measurements == null)
+                return;
+            Metric m;
+            if (o instanceof Metric)
+                m = (Metric) o;
+            else if (o instanceof ProjectVersionMeasurement)
+                m = ((ProjectVersionMeasurement) o).getMetric();
+            else if (o instanceof ProjectFileMeasurement)
+                m = ((ProjectFileMeasurement) o).getMetric();
+            else
+                return;
+            if (m instanceof HibernateProxy)
+                measurements.stageDropMetric((Long) ((HibernateProxy) m)
+                        .getHibernateLazyInitializer().getIdentifier());
+            else if (m != null)
+                measurements.stageDropMetric(m.getId());
+        }
+    }
+
+    private void discardMeasurements() {
+        if (measurements != null)
+            measurements.discard();
+    }
+
     @Override
     public void shutDown() {
     	logger.info("Shutting down database service");
     	sessionFactory.close();
+    	if (measurements != null)
+    	    measurements.close();
     }
 
 	@Override
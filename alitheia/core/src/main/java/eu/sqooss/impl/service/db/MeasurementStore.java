@@ -0,0 +1,457 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.impl.service.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+
+import eu.sqooss.service.db.MeasurementSeries;
+import eu.sqooss.service.logging.Logger;
+
+/**
+ * A columnar copy of the numeric measurements of project versions and 
+ * files, kept next to the database for reading long series quickly. Each
+ * series holds the values of one metric for one project, in segment files
+ * of {@link #SEGMENT_SIZE} entries. A segment file has a header with the
+ * number of entries and the highest measurement id stored so far, followed
+ * by a column of artifact ids and a column of values. Segment files are 
+ * memory mapped, both for reading and appending.
+ * <p>
+ * The store is a cache: series are created from the database when they are
+ * first read and are appended to as measurements are committed. Series are
+ * dropped when their measurements are updated or deleted, and created again
+ * on the next read. Changes are staged by the thread that owns the database 
+ * session and are applied when the session commits.
+ * <p>
+ * As changes are applied after the database commits, a series can miss
+ * measurements, for example after a crash or when they are stored without 
+ * going through the store. Readers pass the number of measurements and the
+ * highest measurement id of the series in the database, and a series that
+ * does not match them is dropped. Series that were open when the store was
+ * not closed cleanly are dropped when it is opened again.
+ */
+public class MeasurementStore {
+
+    /** Number of entries in a segment file */
+    public static final int SEGMENT_SIZE = 1 << 16;
+
+    private static final int MAGIC = 0x53514d53;
+    private static final int HEADER = 16;
+    private static final long SEGMENT_BYTES = HEADER + 16L * SEGMENT_SIZE;
+    private static final int OPEN_SEGMENTS = 64;
+    private static final String CLEAN = "clean";
+
+    private File root;
+    private Logger logger;
+
+    /* Mappings of recently read or appended segments */
+    private Map<File, MappedByteBuffer> maps = 
+        new LinkedHashMap<File, MappedByteBuffer>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<File, MappedByteBuffer> e) {
+                return size() > OPEN_SEGMENTS;
+            }
+        };
+
+    /* 
+     * Series being created from the database, with the values committed 
+     * meanwhile. A null list marks a series dropped while being created.
+     */
+    private Map<File, List<Change>> filling = new HashMap<File, List<Change>>();
+
+    private ThreadLocal<List<Change>> staged = new ThreadLocal<List<Change>>() {
+        protected List<Change> initialValue() {
+            return new ArrayList<Change>();
+        }
+    };
+
+    public MeasurementStore(File root, Logger logger) {
+        this.root = root;
+        this.logger = logger;
+        root.mkdirs();
+        if (!new File(root, CLEAN).delete()) {
+            File[] projects = root.listFiles();
+            if (projects != null && projects.length > 0) {
+                logger.warn("Measurement series in " + root 
+                        + " were not closed cleanly, dropping them");
+                for (File p : projects)
+                    drop(p);
+            }
+        }
+    }
+
+    /**
+     * Read a series.
+     * 
+     * @return The series, or null if it has not been created
+     */
+    public synchronized MeasurementSeries read(long project, long metric) 
+        throws IOException {
+        File dir = dir(project, metric);
+        if (!dir.isDirectory())
+            return null;
+
+        File[] segments = segments(dir);
+        MappedByteBuffer[] maps = new MappedByteBuffer[segments.length];
+        int total = 0;
+        for (int i = 0; i < segments.length; i++) {
+            maps[i] = segment(segments[i]);
+            total += maps[i].getInt(4);
+        }
+
+        long[] ids = new long[total];
+        double[] values = new double[total];
+        int off = 0;
+        for (MappedByteBuffer b : maps) {
+            int n = b.getInt(4);
+            b.position(HEADER);
+            b.asLongBuffer().get(ids, off, n);
+            b.position(HEADER + 8 * SEGMENT_SIZE);
+            b.asDoubleBuffer().get(values, off, n);
+            off += n;
+        }
+        return new MeasurementSeries(metric, project, ids, values);
+    }
+
+    /**
+     * Read a series, if it holds the given number of measurements and the
+     * given highest measurement id. A series that does not is dropped.
+     * 
+     * @param count The number of measurements of the series in the database
+     * @param lastId The highest id of these measurements, 0 if none
+     * @return The series, or null if it has not been created or was 
+     *         out of date
+     */
+    public synchronized MeasurementSeries read(long project, long metric,
+            long count, long lastId) throws IOException {
+        File dir = dir(project, metric);
+        if (!dir.isDirectory())
+            return null;
+
+        File[] segments = segments(dir);
+        long total = 0;
+        for (File f : segments)
+            total += segment(f).getInt(4);
+        long stored = segment(segments[segments.length - 1]).getLong(8);
+        if (total == count && stored == lastId)
+            return read(project, metric);
+        
+        logger.info("Measurement series " + dir + " is out of date (" 
+                + total + " of " + count + " measurements, last id " 
+                + stored + " of " + lastId + "), dropping it");
+        drop(dir);
+        return null;
+    }
+
+    /**
+     * Mark a series as being created from the database. Values committed 
+     * until the series is created are added to it, unless the database 
+     * already returned them.
+     */
+    public synchronized void beginCreate(long project, long metric) {
+        filling.put(dir(project, metric), new ArrayList<Change>());
+    }
+
+    /**
+     * Store a series read from the database, replacing any stored one.
+     * 
+     * @param lastId The highest id of the measurements in the series
+     */
+    public synchronized void create(MeasurementSeries s, long lastId) 
+        throws IOException {
+        File dir = dir(s.getProjectId(), s.getMetricId());
+        boolean marked = filling.containsKey(dir);
+        List<Change> late = filling.remove(dir);
+        if (marked && late == null)
+            return; //Dropped meanwhile, the series is out of date
+
+        delete(dir);
+        File tmp = new File(dir.getParentFile(), dir.getName() + ".tmp");
+        delete(tmp);
+        tmp.mkdirs();
+        long[] ids = s.getArtifactIds();
+        double[] values = s.getValues();
+        int segment = 0;
+        do {
+            int off = segment * SEGMENT_SIZE;
+            int n = Math.min(SEGMENT_SIZE, ids.length - off);
+            MappedByteBuffer b = newSegment(tmp, segment);
+            b.position(HEADER);
+            b.asLongBuffer().put(ids, off, n);
+            b.position(HEADER + 8 * SEGMENT_SIZE);
+            b.asDoubleBuffer().put(values, off, n);
+            b.putInt(4, n);
+            b.putLong(8, lastId);
+            b.force();
+            segment++;
+        } while (segment * SEGMENT_SIZE < ids.length);
+        
+        if (!tmp.renameTo(dir))
+            throw new IOException("Cannot rename " + tmp + " to " + dir);
+
+        if (late == null || late.isEmpty())
+            return;
+        Set<Long> stored = new HashSet<Long>();
+        for (Change c : late)
+            stored.add(c.artifact);
+        for (long id : ids)
+            stored.remove(id);
+        for (Change c : late)
+            if (stored.contains(c.artifact))
+                append(c.project, c.metric, c.artifact, c.id, c.value);
+    }
+
+    /**
+     * Append a value to a series. Series that have not been created are 
+     * not changed, they contain the value when they are created.
+     * 
+     * @param id The id of the measurement
+     */
+    public synchronized void append(long project, long metric, long artifact,
+            long id, double value) throws IOException {
+        File dir = dir(project, metric);
+        List<Change> f = filling.get(dir);
+        if (f != null) {
+            f.add(new Change(project, metric, artifact, id, value));
+            return;
+        }
+        if (!dir.isDirectory())
+            return;
+
+        File[] segments = segments(dir);
+        MappedByteBuffer b = segment(segments[segments.length - 1]);
+        long lastId = Math.max(id, b.getLong(8));
+        int n = b.getInt(4);
+        if (n == SEGMENT_SIZE) {
+            b = newSegment(dir, segments.length);
+            maps.put(segments(dir)[segments.length], b);
+            n = 0;
+        }
+        b.putLong(HEADER + 8 * n, artifact);
+        b.putDouble(HEADER + 8 * SEGMENT_SIZE + 8 * n, value);
+        b.putLong(8, lastId);
+        b.putInt(4, n + 1);
+    }
+
+    /**
+     * Drop a series, to be created again from the database when read.
+     */
+    public synchronized void drop(long project, long metric) {
+        drop(dir(project, metric));
+    }
+
+    /**
+     * Drop the series of a metric for all projects.
+     */
+    public synchronized void dropMetric(long metric) {
+        File[] projects = root.listFiles();
+        if (projects == null)
+            return;
+        for (File p : projects)
+            drop(new File(p, "m" + metric));
+    }
+
+    /**
+     * Write the segments to disk and mark the store as closed cleanly. 
+     * The store must not be used afterwards.
+     */
+    public synchronized void close() {
+        for (MappedByteBuffer b : maps.values())
+            b.force();
+        maps.clear();
+        try {
+            new File(root, CLEAN).createNewFile();
+        } catch (IOException e) {
+            logger.warn("Cannot mark measurement series in " + root 
+                    + " as closed: " + e.getMessage());
+        }
+    }
+
+    /** Stage a value to append when the current session commits. */
+    public void stageAppend(long project, long metric, long artifact, 
+            long id, double value) {
+        staged.get().add(new Change(project, metric, artifact, id, value));
+    }
+
+    /** Stage dropping a series when the current session commits. */
+    public void stageDrop(long project, long metric) {
+        staged.get().add(new Change(project, metric));
+    }
+
+    /** Stage dropping the series of a metric when the current session commits. */
+    public void stageDropMetric(long metric) {
+        staged.get().add(new Change(-1, metric));
+    }
+
+    /**
+     * Apply the changes staged by the current thread. Series that cannot
+     * be changed are dropped.
+     */
+    public void commit() {
+        List<Change> changes = staged.get();
+        for (Change c : changes) {
+            if (c.drop && c.project < 0) {
+                dropMetric(c.metric);
+            } else if (c.drop) {
+                drop(c.project, c.metric);
+            } else {
+                try {
+                    append(c.project, c.metric, c.artifact, c.id, c.value);
+                } catch (IOException e) {
+                    logger.warn("Cannot append to measurement series " 
+                            + dir(c.project, c.metric) + ": " + e.getMessage());
+                    drop(c.project, c.metric);
+                }
+            }
+        }
+        changes.clear();
+    }
+
+    /** Forget the changes staged by the current thread. */
+    public void discard() {
+        staged.get().clear();
+    }
+
+    private File dir(long project, long metric) {
+        return new File(new File(root, "p" + project), "m" + metric);
+    }
+
+    private void drop(File dir) {
+        if (filling.containsKey(dir))
+            filling.put(dir, null);
+        Iterator<File> i = maps.keySet().iterator();
+        while (i.hasNext())
+            if (i.next().getParentFile().equals(dir))
+                i.remove();
+        try {
+            delete(dir);
+        } catch (IOException e) {
+            logger.warn("Cannot drop measurement series " + dir + ": " 
+                    + e.getMessage());
+        }
+    }
+
+    private static void delete(File dir) throws IOException {
+        if (dir.exists())
+            FileUtils.deleteDirectory(dir);
+    }
+
+    private static File[] segments(File dir) {
+        File[] segments = dir.listFiles();
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private MappedByteBuffer segment(File f) throws IOException {
+        MappedByteBuffer b = maps.get(f);
+        if (b == null) {
+            b = map(f);
+            maps.put(f, b);
+        }
+        return b;
+    }
+
+    private static MappedByteBuffer newSegment(File dir, int index) 
+        throws IOException {
+        File f = new File(dir, String.format("%08d.seg", index));
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            raf.setLength(SEGMENT_BYTES);
+            MappedByteBuffer b = raf.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+            b.putInt(0, MAGIC);
+            b.putInt(4, 0);
+            b.putLong(8, 0);
+            return b;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static MappedByteBuffer map(File f) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            if (raf.length() != SEGMENT_BYTES)
+                throw new IOException("Bad segment size: " + f);
+            MappedByteBuffer b = raf.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+            if (b.getInt(0) != MAGIC)
+                throw new IOException("Not a segment file: " + f);
+            return b;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static class Change {
+        long project;
+        long metric;
+        long artifact;
+        long id;
+        double value;
+        boolean drop;
+
+        Change(long project, long metric, long artifact, long id, 
+                double value) {
+            this.project = project;
+            this.metric = metric;
+            this.artifact = artifact;
+            this.id = id;
+            this.value = value;
+        }
+
+        Change(long project, long metric) {
+            this.project = project;
+            this.metric = metric;
+            this.drop = true;
+        }
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
@@ -0,0 +1,494 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.impl.service.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.HibernateException;
+import org.hibernate.cfg.Environment;
+import org.hibernate.connection.ConnectionProvider;
+import org.hibernate.connection.ConnectionProviderFactory;
+
+import eu.sqooss.service.db.ConnectionPoolStats;
+
+/**
+ * Hibernate connection provider that keeps a bounded pool of JDBC
+ * connections, and caches the prepared statements of each connection.
+ * Statements closed by Hibernate are kept open and reused the next time the
+ * same SQL is prepared on the same connection.
+ *
+ * Accepts the following Hibernate properties, in addition to the usual
+ * connection ones:
+ *
+ *  <dl>
+ *      <dt>hibernate.connection.pool_size</dt>
+ *      <dd>Maximum number of open connections. Default is the default
+ *      number of scheduler threads plus two.</dd>
+ *      <dt>hibernate.connection.pool_timeout</dt>
+ *      <dd>Milliseconds to wait for a free connection before failing.
+ *      Default is 30000.</dd>
+ *      <dt>hibernate.connection.statement_cache_size</dt>
+ *      <dd>Number of prepared statements to cache per connection, 0 to
+ *      disable caching. Default is 64.</dd>
+ * </dl>
+ */
+public class PooledConnectionProvider implements ConnectionProvider {
+
+    public static final String POOL_TIMEOUT = "hibernate.connection.pool_timeout";
+    public static final String STATEMENT_CACHE_SIZE = "hibernate.connection.statement_cache_size";
+
+    private static final long DEFAULT_POOL_TIMEOUT = 30000;
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+
+    private String url;
+    private Properties connProps;
+    private Integer isolation;
+    private boolean autocommit;
+
+    private int maxSize;
+    private long timeout;
+    private int statementCacheSize;
+
+    private Semaphore permits;
+    /** Used as a stack, so that the most recently used connections are reused first */
+    private LinkedBlockingDeque<PooledConnection> idle =
+        new LinkedBlockingDeque<PooledConnection>();
+    private volatile boolean closed = false;
+
+    private AtomicInteger active = new AtomicInteger();
+    private AtomicLong requests = new AtomicLong();
+    private AtomicLong totalWait = new AtomicLong();
+    private AtomicLong maxWait = new AtomicLong();
+    private AtomicLong statementHits = new AtomicLong();
+    private AtomicLong statementMisses = new AtomicLong();
+
+    public void configure(Properties props) throws HibernateException {
+        String driver = props.getProperty(Environment.DRIVER);
+        if (driver != null) {
+            try {
+                Class.forName(driver);
+            } catch (ClassNotFoundException e) {
+                throw new HibernateException("JDBC Driver class not found: " + driver, e);
+            }
+        }
+
+        url = props.getProperty(Environment.URL);
+        if (url == null)
+            throw new HibernateException("JDBC URL was not specified by property " + Environment.URL);
+        connProps = ConnectionProviderFactory.getConnectionProperties(props);
+
+        String iso = props.getProperty(Environment.ISOLATION);
+        if (iso != null)
+            isolation = Integer.valueOf(iso);
+        autocommit = Boolean.valueOf(props.getProperty(Environment.AUTOCOMMIT));
+
+        maxSize = intProperty(props, Environment.POOL_SIZE,
+                2 * Runtime.getRuntime().availableProcessors() + 2);
+        timeout = intProperty(props, POOL_TIMEOUT, (int) DEFAULT_POOL_TIMEOUT);
+        statementCacheSize = intProperty(props, STATEMENT_CACHE_SIZE,
+                DEFAULT_STATEMENT_CACHE_SIZE);
+        permits = new Semaphore(maxSize, true);
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (closed)
+            throw new SQLException("Connection pool is closed");
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS))
+                throw new SQLException("Timed out after " + timeout
+                        + "ms waiting for a database connection, "
+                        + maxSize + " connections in use");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection");
+        }
+        long waited = System.nanoTime() - start;
+        requests.incrementAndGet();
+        totalWait.addAndGet(waited);
+        long max = maxWait.get();
+        while (waited > max && !maxWait.compareAndSet(max, waited))
+            max = maxWait.get();
+
+        PooledConnection pc = idle.pollFirst();
+        try {
+            while (pc != null && pc.physical.isClosed()) {
+                pc.destroy();
+                pc = idle.pollFirst();
+            }
+            if (pc == null)
+                pc = new PooledConnection(open());
+        } catch (SQLException e) {
+            permits.release();
+            throw e;
+        }
+        active.incrementAndGet();
+        return pc.lease();
+    }
+
+    public void closeConnection(Connection conn) throws SQLException {
+        if (!Proxy.isProxyClass(conn.getClass())
+                || !(Proxy.getInvocationHandler(conn) instanceof Lease)) {
+            conn.close();
+            return;
+        }
+        ((Lease) Proxy.getInvocationHandler(conn)).release();
+    }
+
+    public void close() throws HibernateException {
+        closed = true;
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null)
+            pc.destroy();
+    }
+
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    /**
+     * Get a snapshot of the pool counters.
+     */
+    public ConnectionPoolStats getStats() {
+        return new ConnectionPoolStats(maxSize, active.get(), idle.size(),
+                requests.get(), totalWait.get() / 1000000.0,
+                maxWait.get() / 1000000.0, statementHits.get(),
+                statementMisses.get());
+    }
+
+    private Connection open() throws SQLException {
+        Connection c = DriverManager.getConnection(url, connProps);
+        if (isolation != null)
+            c.setTransactionIsolation(isolation.intValue());
+        if (c.getAutoCommit() != autocommit)
+            c.setAutoCommit(autocommit);
+        return c;
+    }
+
+    private void checkIn(PooledConnection pc) {
+        active.decrementAndGet();
+        if (!closed && !pc.broken)
+            reset(pc);
+        if (closed || pc.broken) {
+            pc.destroy();
+        } else {
+            idle.offerFirst(pc);
+        }
+        permits.release();
+    }
+
+    /*
+     * Roll back anything the previous user left uncommitted, so that the 
+     * next one does not inherit its transaction and locks, and restore the
+     * configured auto-commit mode.
+     */
+    private void reset(PooledConnection pc) {
+        try {
+            if (!pc.physical.getAutoCommit())
+                pc.physical.rollback();
+            if (pc.physical.getAutoCommit() != autocommit)
+                pc.physical.setAutoCommit(autocommit);
+        } catch (SQLException e) {
+            pc.broken = true;
+        }
+    }
+
+    private static int intProperty(Properties props, String name, int def) {
+        String val = props.getProperty(name);
+        if (val == null)
+            return def;
+        try {
+            return Integer.parseInt(val.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    private static Object invoke(Object target, Method m, Object[] args)
+            throws Throwable {
+        try {
+            return m.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /** SQL states of class 08 signal a broken connection */
+    private static boolean isConnectionError(Throwable t) {
+        if (!(t instanceof SQLException))
+            return false;
+        String state = ((SQLException) t).getSQLState();
+        return state != null && state.startsWith("08");
+    }
+
+    /**
+     * A physical connection and its statement cache. Only used by the
+     * thread holding the lease, so it needs no locking.
+     */
+    private class PooledConnection {
+        Connection physical;
+        boolean broken = false;
+
+        /** Access ordered, least recently used statements are closed first */
+        LinkedHashMap<String, CachedStatement> statements =
+            new LinkedHashMap<String, CachedStatement>(16, 0.75f, true);
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, new Lease(this));
+        }
+
+        PreparedStatement prepare(Connection proxy, Method m, Object[] args)
+                throws Throwable {
+            if (statementCacheSize <= 0)
+                return (PreparedStatement) invoke(physical, m, args);
+
+            String key = Arrays.deepToString(args);
+            CachedStatement cs = statements.get(key);
+            if (cs != null && !cs.inUse) {
+                statementHits.incrementAndGet();
+                return cs.checkout(proxy);
+            }
+
+            statementMisses.incrementAndGet();
+            PreparedStatement ps = (PreparedStatement) invoke(physical, m, args);
+            if (cs != null)
+                return ps; // Same SQL already open on this connection
+            cs = new CachedStatement(this, key, ps);
+            statements.put(key, cs);
+            evict();
+            return cs.checkout(proxy);
+        }
+
+        void evict() {
+            Iterator<CachedStatement> i = statements.values().iterator();
+            while (statements.size() > statementCacheSize && i.hasNext()) {
+                CachedStatement cs = i.next();
+                if (cs.inUse)
+                    continue;
+                i.remove();
+                cs.destroy();
+            }
+        }
+
+        /** Logically close statements the lease holder left open */
+        void reset() {
+            for (CachedStatement cs : new ArrayList<CachedStatement>(statements.values()))
+                if (cs.inUse)
+                    cs.release();
+        }
+
+        void destroy() {
+            for (CachedStatement cs : statements.values())
+                cs.destroy();
+            statements.clear();
+            try {
+                physical.close();
+            } catch (SQLException ignored) {}
+        }
+    }
+
+    /**
+     * Handler of the connection proxies handed out to Hibernate. A lease
+     * becomes unusable once the connection is returned to the pool.
+     */
+    private class Lease implements InvocationHandler {
+        PooledConnection pc;
+        boolean released = false;
+
+        Lease(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        public Object invoke(Object proxy, Method m, Object[] args)
+                throws Throwable {
+            String name = m.getName();
+            if (name.equals("close")) {
+                release();
+                return null;
+            }
+            if (name.equals("isClosed"))
+                return released || pc.physical.isClosed();
+            if (name.equals("equals"))
+                return proxy == args[0];
+            if (name.equals("hashCode"))
+                return System.identityHashCode(proxy);
+            if (name.equals("toString"))
+                return "Pooled " + pc.physical;
+            if (released)
+                throw new SQLException("Connection has been returned to the pool");
+
+            try {
+                if (name.equals("prepareStatement"))
+                    return pc.prepare((Connection) proxy, m, args);
+                return PooledConnectionProvider.invoke(pc.physical, m, args);
+            } catch (Throwable t) {
+                if (isConnectionError(t))
+                    pc.broken = true;
+                throw t;
+            }
+        }
+
+        void release() {
+            if (released)
+                return;
+            released = true;
+            pc.reset();
+            checkIn(pc);
+        }
+    }
+
+    /**
+     * A prepared statement kept open in the cache of a connection. While
+     * checked out, it is accessed through a proxy that returns it to the
+     * cache, instead of closing it, when closed.
+     */
+    private class CachedStatement implements InvocationHandler {
+        PooledConnection owner;
+        String key;
+        PreparedStatement ps;
+        Connection conn;
+        boolean inUse = false;
+        /** Statement settings were changed, cannot be reused as is */
+        boolean dirty = false;
+        boolean batched = false;
+        List<ResultSet> results = new ArrayList<ResultSet>();
+
+        CachedStatement(PooledConnection owner, String key, PreparedStatement ps) {
+            this.owner = owner;
+            this.key = key;
+            this.ps = ps;
+        }
+
+        PreparedStatement checkout(Connection conn) {
+            this.conn = conn;
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] {PreparedStatement.class}, this);
+        }
+
+        public Object invoke(Object proxy, Method m, Object[] args)
+                throws Throwable {
+            String name = m.getName();
+            if (name.equals("close")) {
+                if (inUse)
+                    release();
+                return null;
+            }
+            if (name.equals("isClosed"))
+                return !inUse;
+            if (name.equals("equals"))
+                return proxy == args[0];
+            if (name.equals("hashCode"))
+                return System.identityHashCode(proxy);
+            if (name.equals("toString"))
+                return "Cached " + ps;
+            if (!inUse)
+                throw new SQLException("Statement is closed");
+            if (name.equals("getConnection"))
+                return conn;
+
+            if (name.startsWith("set")
+                    && m.getDeclaringClass() == java.sql.Statement.class)
+                dirty = true;
+            else if (name.equals("addBatch"))
+                batched = true;
+
+            Object result;
+            try {
+                result = PooledConnectionProvider.invoke(ps, m, args);
+            } catch (Throwable t) {
+                if (isConnectionError(t))
+                    owner.broken = true;
+                throw t;
+            }
+            if (result instanceof ResultSet)
+                results.add((ResultSet) result);
+            return result;
+        }
+
+        /** Return the statement to the cache, ready for the next user */
+        void release() {
+            inUse = false;
+            conn = null;
+            try {
+                for (ResultSet rs : results)
+                    rs.close();
+                results.clear();
+                if (dirty)
+                    throw new SQLException("Statement settings changed");
+                ps.clearParameters();
+                if (batched)
+                    ps.clearBatch();
+                batched = false;
+            } catch (SQLException e) {
+                owner.statements.remove(key);
+                destroy();
+            }
+        }
+
+        void destroy() {
+            try {
+                ps.close();
+            } catch (SQLException ignored) {}
+        }
+    }
+}
@@ -42,6 +42,7 @@ import java.io.InputStream;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import eu.sqooss.service.util.FileUtils;
@@ -55,6 +56,7 @@ import eu.sqooss.service.db.ProjectVersion;
 import eu.sqooss.service.db.StoredProject;
 import eu.sqooss.service.fds.CheckoutException;
 import eu.sqooss.service.fds.FDSService;
+import eu.sqooss.service.fds.FileContentCache;
 import eu.sqooss.service.fds.InMemoryCheckout;
 import eu.sqooss.service.fds.OnDiskCheckout;
 import eu.sqooss.service.fds.Timeline;
@@ -102,6 +104,18 @@ public class FDSServiceImpl implements FDSService, Runnable {
 
     private BundleContext bc;
     
+    /** Cache for file contents, installed by the cache service */
+    private volatile FileContentCache contentCache = null;
+    
+    /** Files larger than this are not put in the content cache */
+    private long maxCachedFileSize = 1024 * 1024;
+    
+    private AtomicLong contentHits = new AtomicLong();
+    private AtomicLong contentMisses = new AtomicLong();
+    
+    /** Log the content cache hit rate every that many lookups */
+    private static final int CONTENT_STATS_INTERVAL = 10000;
+    
     /*
      * The following constants influence the formatting of checkout and project
      * directory names.
@@ -472,10 +486,22 @@ public class FDSServiceImpl implements FDSService, Runnable {
             return null;
         }
 
+        FileContentCache cache = contentCache;
+        String key = null;
+        if (cache != null) {
+            key = contentCacheKey(pf, projectRevision);
+            byte[] cached = cache.get(key);
+            countContentLookup(cached != null);
+            if (cached != null)
+                return new ByteArrayInputStream(cached);
+        }
+
         SCMAccessor scm = projectFileAccessor(pf);
         ByteArrayOutputStream buff = new ByteArrayOutputStream();
         try {
             scm.getFile(pf.getFileName(), projectRevision, buff);
+            if (cache != null && buff.size() <= maxCachedFileSize)
+                cache.set(key, buff.toByteArray());
         } catch (InvalidProjectRevisionException e) {
             logger.error("The repository for " + pf.toString()
                     + " is invalid: " + e.getMessage());
@@ -493,6 +519,41 @@ public class FDSServiceImpl implements FDSService, Runnable {
         return contents;
     }
 
+    /** {@inheritDoc} */
+    public void setContentCache(FileContentCache cache) {
+        if (cache == null && contentCache != null)
+            logContentCacheStats();
+        this.contentCache = cache;
+    }
+
+    /**
+     * Cache keys identify a file by project, revision and path. 
+     */
+    private String contentCacheKey(ProjectFile pf, Revision r) {
+        return "fds:" + pf.getProjectVersion().getProject().getId() + ":"
+            + r.getUniqueId() + ":" + pf.getFileName();
+    }
+
+    private void countContentLookup(boolean hit) {
+        long lookups;
+        if (hit) {
+            lookups = contentHits.incrementAndGet() + contentMisses.get();
+        } else {
+            lookups = contentMisses.incrementAndGet() + contentHits.get();
+        }
+        if (lookups % CONTENT_STATS_INTERVAL == 0)
+            logContentCacheStats();
+    }
+
+    private void logContentCacheStats() {
+        long hits = contentHits.get();
+        long misses = contentMisses.get();
+        long lookups = hits + misses;
+        logger.info("File content cache: " + hits + " hits, " + misses 
+                + " misses, hit rate " 
+                + (lookups == 0 ? 0 : (100 * hits / lookups)) + "%");
+    }
+
     /** {@inheritDoc} */
     public InMemoryCheckout getInMemoryCheckout(ProjectVersion pv)
             throws CheckoutException {
@@ -677,6 +738,9 @@ public class FDSServiceImpl implements FDSService, Runnable {
 
     @Override
     public void shutDown() {
+        if (contentCache != null)
+            logContentCacheStats();
+        
         String s = bc.getProperty("eu.sqooss.fds.cleanupOnExit");
 
         if (s != null && s.equals("true")) {
@@ -704,6 +768,16 @@ public class FDSServiceImpl implements FDSService, Runnable {
         fdsCheckoutRoot = new File(s);
         randomCheckout = new Random();
 
+        s = bc.getProperty("eu.sqooss.fds.cache.maxfilesize");
+        if (s != null) {
+            try {
+                maxCachedFileSize = Long.parseLong(s);
+            } catch (NumberFormatException nfe) {
+                logger.warn("Invalid eu.sqooss.fds.cache.maxfilesize " + s 
+                        + ", using " + maxCachedFileSize);
+            }
+        }
+
         return true;
     }
 }
@@ -0,0 +1,143 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2008 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+package eu.sqooss.impl.service.metricactivator;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.abstractmetric.AbstractMetric;
+import eu.sqooss.service.abstractmetric.AlreadyProcessingException;
+import eu.sqooss.service.abstractmetric.MetricMismatchException;
+import eu.sqooss.service.db.DAObject;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.scheduler.SchedulerException;
+
+/**
+ * Metric job that processes a chunk of resources of the same type. All
+ * resources are loaded with a single query and the results are committed
+ * in a single transaction. If processing the chunk fails, the chunk is
+ * rescheduled as one {@link MetricActivatorJob} per resource, so that a
+ * single failing resource does not prevent the rest from being measured.
+ */
+public class MetricActivatorBatchJob extends Job {
+
+    private Logger logger;
+    private DBService dbs;
+    private List<Long> daoIDs;
+    private AbstractMetric metric;
+    private long priority;
+    Class<? extends DAObject> daoType;
+    private boolean fastSync = false;
+
+    MetricActivatorBatchJob(AbstractMetric m, List<Long> daoIDs, Logger l,
+            Class<? extends DAObject> daoType, long priority,
+            boolean fastSync) {
+        this.metric = m;
+        this.logger = l;
+        this.daoIDs = daoIDs;
+        this.daoType = daoType;
+        this.dbs = AlitheiaCore.getInstance().getDBService();
+        this.priority = priority;
+        this.fastSync = fastSync;
+    }
+
+    @Override
+    public long priority() {
+        return priority;
+    }
+
+    @Override
+    protected void run() throws Exception {
+        dbs.startDBSession();
+        metric.setJob(this);
+
+        Map<String, Collection> ids = new HashMap<String, Collection>();
+        ids.put("ids", daoIDs);
+        List<?> objs = dbs.doHQL("from " + daoType.getName()
+                + " where id in (:ids)", null, ids);
+
+        try {
+            for (Object o : objs) {
+                DAObject obj = (DAObject) o;
+                try {
+                    MetricActivatorJob.calculate(metric, obj, fastSync);
+                } catch (MetricMismatchException e) {
+                    logger.warn("Metric " + metric.getName() + " failed");
+                } catch (AlreadyProcessingException ape) {
+                    /* The metric has already rescheduled this resource */
+                    logger.warn("DAO id " + obj.getId() + " is locked, job " +
+                            "has been rescheduled");
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Metric " + metric.getName() + " failed on chunk "
+                    + this + ": " + e.getMessage() + " - retrying per resource");
+            if (dbs.isDBSessionActive())
+                dbs.rollbackDBSession();
+            retryPerResource();
+            return;
+        }
+
+        if (!dbs.commitDBSession()) {
+            logger.warn("commit failed - retrying " + this + " per resource");
+            retryPerResource();
+        }
+    }
+
+    private void retryPerResource() throws SchedulerException {
+        Set<Job> jobs = new HashSet<Job>();
+        for (Long id : daoIDs) {
+            jobs.add(new MetricActivatorJob(metric, id, logger, daoType,
+                    priority, fastSync));
+        }
+        AlitheiaCore.getInstance().getScheduler().enqueueNoDependencies(jobs);
+    }
+
+    @Override
+    public String toString() {
+        return "MetricActivatorBatchJob: Metric:{" + metric.getName() + "} Activator:{"
+                + daoType.getSimpleName() + "} DAO:{" + daoIDs.get(0) + "-"
+                + daoIDs.get(daoIDs.size() - 1) + "}";
+    }
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
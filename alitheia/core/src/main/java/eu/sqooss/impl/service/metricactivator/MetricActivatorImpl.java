@@ -321,6 +321,7 @@ public class MetricActivatorImpl  implements MetricActivator {
             /*Check what is the default activation ordering as suggested by the metric*/
             Class<? extends DAObject>[] activOrder;
             InvocationOrder invOrder;
+            int batchSize;
             SchedulerHints hints = metric.getClass().getAnnotation(SchedulerHints.class);
 
             if (hints == null) {
@@ -328,9 +329,12 @@ public class MetricActivatorImpl  implements MetricActivator {
             		SchedulerHints.class.getMethod("activationOrder").getDefaultValue();
                 invOrder = (InvocationOrder)
                        SchedulerHints.class.getMethod("invocationOrder").getDefaultValue();
+                batchSize = (Integer)
+                       SchedulerHints.class.getMethod("activationBatchSize").getDefaultValue();
             } else {
                 activOrder = hints.activationOrder();
                 invOrder = hints.invocationOrder();
+                batchSize = hints.activationBatchSize();
             }
 
 			/*
@@ -356,6 +360,11 @@ public class MetricActivatorImpl  implements MetricActivator {
                     ids = tmp;
                 }
 
+                if (batchSize > 1) {
+                    jobs.addAll(createBatchJobs(metric, ids, actType, batchSize));
+                    continue;
+                }
+
                 for (Long l : ids) {
             		jobs.add(new MetricActivatorJob(metric, l, logger, 
             			metricTypesToActivators.get(actType),
@@ -367,6 +376,31 @@ public class MetricActivatorImpl  implements MetricActivator {
             dbs.commitDBSession();
         }
         
+        /**
+         * Split the resource ids in contiguous chunks of at most
+         * batchSize ids, preserving the invocation order.
+         */
+        private List<Job> createBatchJobs(AbstractMetric metric, 
+                Collection<Long> ids, MetricType.Type actType, int batchSize) {
+            List<Job> batches = new ArrayList<Job>(ids.size() / batchSize + 1);
+            List<Long> chunk = new ArrayList<Long>(batchSize);
+            for (Long l : ids) {
+                chunk.add(l);
+                if (chunk.size() == batchSize) {
+                    batches.add(new MetricActivatorBatchJob(metric, chunk, 
+                        logger, metricTypesToActivators.get(actType),
+                        priority.incrementAndGet(), fastSync));
+                    chunk = new ArrayList<Long>(batchSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                batches.add(new MetricActivatorBatchJob(metric, chunk, 
+                    logger, metricTypesToActivators.get(actType),
+                    priority.incrementAndGet(), fastSync));
+            }
+            return batches;
+        }
+
         @Override
         public String toString() {
             return "MetricSchedulerJob - Project:{" + sp + "} Metric:{" + m + "}";
@@ -88,21 +88,7 @@ public class MetricActivatorJob extends Job {
         DAObject obj = dbs.findObjectById(daoType, daoID);
 
         try {
-            if (fastSync) {
-                /*
-                * This reduces the number of queries performed when triggering
-                * synchronization of metrics on large databases. We trust that
-                * if there is a value in the database for one of the metric a
-                * plug-in provides, there will be a value for all metrics. For
-                * example, on the size (wc) metric this will save 5-6 queries
-                * per projectfile. If the metric syncs 20M files
-                * this optimisation prevents 100M queries from being executed.
-                */
-                List<Metric> supported = metric.getSupportedMetrics(obj.getClass());
-                metric.getResult(obj, supported.subList(0, 1));
-            } else {
-                metric.getResult(obj, metric.getSupportedMetrics(obj.getClass()));
-            }
+            calculate(metric, obj, fastSync);
         } catch (MetricMismatchException e) {
             logger.warn("Metric " + metric.getName() + " failed");
         } catch (AlreadyProcessingException ape) {
@@ -120,6 +106,28 @@ public class MetricActivatorJob extends Job {
         }
     }
 
+    /**
+     * Calculate all metrics the plug-in supports for the provided object.
+     */
+    static void calculate(AbstractMetric metric, DAObject obj, boolean fastSync)
+            throws Exception {
+        if (fastSync) {
+            /*
+            * This reduces the number of queries performed when triggering
+            * synchronization of metrics on large databases. We trust that
+            * if there is a value in the database for one of the metric a
+            * plug-in provides, there will be a value for all metrics. For
+            * example, on the size (wc) metric this will save 5-6 queries
+            * per projectfile. If the metric syncs 20M files
+            * this optimisation prevents 100M queries from being executed.
+            */
+            List<Metric> supported = metric.getSupportedMetrics(obj.getClass());
+            metric.getResult(obj, supported.subList(0, 1));
+        } else {
+            metric.getResult(obj, metric.getSupportedMetrics(obj.getClass()));
+        }
+    }
+
     @Override
     public String toString() {
         return "MetricActivatorJob: Metric:{" + metric.getName() +"} Activator:{" + daoType.getSimpleName() + "} DAO:{" + daoID + "}";
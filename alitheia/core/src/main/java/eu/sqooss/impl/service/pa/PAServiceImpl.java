@@ -35,9 +35,11 @@ package eu.sqooss.impl.service.pa;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -99,6 +101,21 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
     private ConcurrentHashMap<String, PluginInfo> registeredPlugins =
         new ConcurrentHashMap<String, PluginInfo>();
 
+    /**
+     * The hash codes of installed metric plug-ins, indexed by the mnemonics
+     * of the metrics they implement. More than one plug-in may declare the
+     * same mnemonic. Updates are synchronized on the index.
+     */
+    private ConcurrentHashMap<String, Set<String>> metricIndex =
+        new ConcurrentHashMap<String, Set<String>>();
+
+    /**
+     * The registered metric plug-in's information objects, indexed by the
+     * plug-in's name and version.
+     */
+    private ConcurrentHashMap<String, PluginInfo> nameIndex =
+        new ConcurrentHashMap<String, PluginInfo>();
+
     public PAServiceImpl () { }
 
     /**
@@ -313,6 +330,83 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
         return null;
     }
 
+    /**
+     * Stores the given <code>PluginInfo</code> object, replacing the one
+     * stored under the same hash code, and updates the plug-in indexes.
+     *
+     * @param pluginInfo - the plug-in's information object
+     * @param daoPlugin - the plug-in's database record, or <code>null</code>
+     *   when the plug-in is not installed
+     */
+    private void addPluginInfo (PluginInfo pluginInfo, Plugin daoPlugin) {
+        String hash = pluginInfo.getHashcode();
+        PluginInfo old = registeredPlugins.put(hash, pluginInfo);
+        nameIndex.put(nameKey(pluginInfo.getPluginName(),
+                pluginInfo.getPluginVersion()), pluginInfo);
+        if (old != null && old != pluginInfo)
+            nameIndex.remove(nameKey(old.getPluginName(),
+                    old.getPluginVersion()), old);
+
+        // Add the new metrics first, lookups never miss a metric that
+        // the plug-in still implements
+        Set<String> mnemonics = new HashSet<String>();
+        if (pluginInfo.installed && daoPlugin != null) {
+            for (Metric m : daoPlugin.getSupportedMetrics())
+                mnemonics.add(m.getMnemonic());
+        }
+        synchronized (metricIndex) {
+            for (String mnemonic : mnemonics) {
+                Set<String> hashes = metricIndex.get(mnemonic);
+                if (hashes == null) {
+                    hashes = Collections.newSetFromMap(
+                            new ConcurrentHashMap<String, Boolean>());
+                    metricIndex.put(mnemonic, hashes);
+                }
+                hashes.add(hash);
+            }
+            unindexMetrics(hash, mnemonics);
+        }
+    }
+
+    /**
+     * Removes the <code>PluginInfo</code> object stored under the given
+     * hash code and its entries in the plug-in indexes.
+     *
+     * @param hash - the plug-in's hash code
+     */
+    private void removePluginInfo (String hash) {
+        PluginInfo pluginInfo = registeredPlugins.remove(hash);
+        if (pluginInfo == null)
+            return;
+        nameIndex.remove(nameKey(pluginInfo.getPluginName(),
+                pluginInfo.getPluginVersion()), pluginInfo);
+        synchronized (metricIndex) {
+            unindexMetrics(hash, Collections.<String>emptySet());
+        }
+    }
+
+    /**
+     * Removes the given hash code from the index entries of all metrics,
+     * except the ones in <code>keep</code>. Must be called while holding
+     * the index lock.
+     */
+    private void unindexMetrics (String hash, Set<String> keep) {
+        Iterator<Map.Entry<String, Set<String>>> i =
+            metricIndex.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<String, Set<String>> e = i.next();
+            if (keep.contains(e.getKey()))
+                continue;
+            e.getValue().remove(hash);
+            if (e.getValue().isEmpty())
+                i.remove();
+        }
+    }
+
+    private static String nameKey (String name, String version) {
+        return name + "\n" + version;
+    }
+
     /**
      * Performs various maintenance operations upon registration of a new
      * metric plug-in's service.
@@ -344,7 +438,7 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
         }
         else {
             // Store the info object into the info object's list
-            registeredPlugins.put(pluginInfo.getHashcode(), pluginInfo);
+            addPluginInfo(pluginInfo, daoPlugin);
             logger.info(
                     "Plug-in service (" + pluginInfo.getPluginName() + ")"
                     + " was registered.");
@@ -368,7 +462,7 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
         }
         else {
             // Remove the info object from the info object's list
-            registeredPlugins.remove(pluginInfo.getHashcode());
+            removePluginInfo(pluginInfo.getHashcode());
             logger.info(
                     "Plug-in service (" + pluginInfo.getPluginName() + ")"
                     + " is unregistering.");
@@ -461,6 +555,7 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
                 // Execute the install() method of this metric plug-in,
                 // and update the plug-in's information object upon success.
                 if (sobjPlugin.install()) {
+                    sobjDB.evictCache();
                     // Get the DAO that belongs to this metric plug-in
                     Plugin daoPlugin = pluginRefToPluginDAO(srefPlugin);
                     if (daoPlugin != null) {
@@ -468,12 +563,13 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
                         PluginInfo pluginInfo = createInstalledPI(srefPlugin,
                                 daoPlugin);
                         if (pluginInfo != null) {
-                            // Remove the old "registered" info object
-                            registeredPlugins.remove(
-                                    sobjPlugin.getUniqueKey());
-                            // Store the info object
-                            registeredPlugins.put(
-                                    pluginInfo.getHashcode(), pluginInfo);
+                            // Replace the old "registered" info object,
+                            // adding the new one first so that lookups
+                            // never miss the plug-in
+                            addPluginInfo(pluginInfo, daoPlugin);
+                            if (!sobjPlugin.getUniqueKey().equals(
+                                    pluginInfo.getHashcode()))
+                                removePluginInfo(sobjPlugin.getUniqueKey());
                             return true;
                         }
                     }
@@ -536,19 +632,7 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
     }
 
     public PluginInfo getPluginInfo(AlitheiaPlugin m) {
-        PluginInfo mi = null;
-        Collection<PluginInfo> c = listPlugins();
-        Iterator<PluginInfo> i = c.iterator();
-
-        while (i.hasNext()) {
-            mi = i.next();
-
-            if (mi.getPluginName().equals(m.getName())
-                    && mi.getPluginVersion().equals(m.getVersion())) {
-                return mi;
-            }
-        }
-        return null;
+        return nameIndex.get(nameKey(m.getName(), m.getVersion()));
     }
 
     public PluginInfo getPluginInfo(String hash) {
@@ -581,7 +665,7 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
             Plugin pDao = pluginRefToPluginDAO(srefPlugin);
             pi = createInstalledPI(srefPlugin, pDao);
             if (pi != null) {
-                registeredPlugins.put(pi.getHashcode(), pi);
+                addPluginInfo(pi, pDao);
                 logger.info("Plug-in (" + pi.getPluginName()
                         + ") successfuly updated");
                 // TODO: Not sure, if this is the correct plug-in method
@@ -598,23 +682,15 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
     }
 
     public AlitheiaPlugin getImplementingPlugin(String mnemonic) {
-        Iterator<String> i = registeredPlugins.keySet().iterator();
-
-        while (i.hasNext()) {
-            PluginInfo pi = registeredPlugins.get(i.next());
-            // Skip metric plug-ins that are registered but not installed
-            if (pi.installed) {
-                ServiceReference sr = pi.getServiceRef();
-                Plugin p = pluginRefToPluginDAO(sr);
-                Set<Metric> lm = p.getSupportedMetrics();
-                for (Metric m : lm){
-                    if (m.getMnemonic().equals(mnemonic)) {
-                        return getPlugin(pi);
-                    }
-                }
-            }
+        // Only installed metric plug-ins are indexed
+        Set<String> hashes = metricIndex.get(mnemonic);
+        if (hashes == null)
+            return null;
+        for (String hash : hashes) {
+            AlitheiaPlugin p = getPlugin(registeredPlugins.get(hash));
+            if (p != null)
+                return p;
         }
-        // No plug-ins found
         return null;
     }
     
@@ -666,15 +742,17 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
                     PluginInfo pluginInfo =
                         createRegisteredPI(srefPlugin);
                     if (pluginInfo != null) {
-                        // Remove the old "installed" info object
-                        registeredPlugins.remove(
-                                sobjPlugin.getUniqueKey());
-                        // Store the info object
-                        registeredPlugins.put(
-                                pluginInfo.getHashcode(), pluginInfo);
+                        // Replace the old "installed" info object, adding
+                        // the new one first
+                        addPluginInfo(pluginInfo, null);
+                        if (!sobjPlugin.getUniqueKey().equals(
+                                pluginInfo.getHashcode()))
+                            removePluginInfo(sobjPlugin.getUniqueKey());
                     }
                 }
                 dbs.commitDBSession();
+                // Metrics and configuration removed by the database
+                dbs.evictCache();
             } catch (Exception e) {
                 logger.warn(UNINSTALL_FAILED, e);
             }
@@ -34,9 +34,9 @@
 package eu.sqooss.impl.service.scheduler;
 
 import java.util.Deque;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
@@ -62,9 +62,8 @@ public class SchedulerServiceImpl implements Scheduler {
 
     private SchedulerStats stats = new SchedulerStats();
 
-    // thread safe job queue
-    private PriorityQueue<Job> blockedQueue = new PriorityQueue<Job>(1,
-            new JobPriorityComparator());
+    // jobs waiting for their dependencies, only ever looked up
+    private Set<Job> blockedQueue = new HashSet<Job>();
     private BlockingQueue<Job> workQueue = new PriorityBlockingQueue<Job>(1,
             new JobPriorityComparator());
 
@@ -179,11 +178,10 @@ public class SchedulerServiceImpl implements Scheduler {
 
     public void jobDependenciesChanged(Job job) {
         synchronized (this) {
-            if (workQueue.contains(job) && !job.canExecute()) {
-                workQueue.remove(job);
-                blockedQueue.add(job);
-            } else if (job.canExecute()) {
-                blockedQueue.remove(job);
+            if (!job.canExecute()) {
+                if (workQueue.remove(job))
+                    blockedQueue.add(job);
+            } else if (blockedQueue.remove(job)) {
                 workQueue.add(job);
             }
         }
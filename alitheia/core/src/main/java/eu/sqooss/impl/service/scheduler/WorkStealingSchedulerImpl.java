@@ -0,0 +1,542 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.impl.service.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.framework.BundleContext;
+
+import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.scheduler.ResumePoint;
+import eu.sqooss.service.scheduler.Scheduler;
+import eu.sqooss.service.scheduler.SchedulerException;
+import eu.sqooss.service.scheduler.SchedulerStats;
+import eu.sqooss.service.scheduler.WorkerThread;
+
+/**
+ * Scheduler that keeps a job deque per worker thread and lets idle workers
+ * steal jobs from busy ones, instead of funnelling every job through a single
+ * queue guarded by the scheduler's monitor.
+ *
+ * Jobs enter the scheduler in one of two ways:
+ * <ul>
+ *  <li>Bulk submissions through {@link #enqueueNoDependencies(Set)} are
+ *  sorted by priority once and split in contiguous chunks over the worker
+ *  deques. Workers consume their own deque from the head, thieves take jobs
+ *  from the tail.</li>
+ *  <li>All other jobs are put in a shared, priority ordered, ready set as
+ *  soon as their dependencies are met. Jobs that are released by a finishing
+ *  job are pushed to the head of the releasing worker's deque instead.</li>
+ * </ul>
+ *
+ * Dependencies are resolved by the jobs themselves: a job notifies the
+ * scheduler through {@link #jobDependenciesChanged(Job)} when its last
+ * unfinished prerequisite completes, so the scheduler never scans
+ * dependency lists.
+ *
+ * To use this scheduler instead of the default one, set the
+ * <tt>eu.sqooss.scheduler.impl</tt> system property to the name of this
+ * class.
+ */
+public class WorkStealingSchedulerImpl implements Scheduler {
+
+    private static final String START_THREADS_PROPERTY = "eu.sqooss.scheduler.numthreads";
+    private static final String PERF_LOG_PROPERTY = "eu.sqooss.log.perf";
+
+    private Logger logger = null;
+    private boolean perfLog = false;
+
+    private SchedulerStats stats = new SchedulerStats();
+
+    /** Scheduling state for all jobs that have not finished yet */
+    private ConcurrentMap<Job, JobNode> nodes =
+        new ConcurrentHashMap<Job, JobNode>();
+
+    /** Ready jobs that are not assigned to a specific worker */
+    private ConcurrentSkipListMap<JobNode, JobNode> shared =
+        new ConcurrentSkipListMap<JobNode, JobNode>();
+
+    /** Worker thread to job deque mapping */
+    private ConcurrentMap<Thread, Deque<JobNode>> deques =
+        new ConcurrentHashMap<Thread, Deque<JobNode>>();
+
+    /** The deques that can be stolen from */
+    private List<Deque<JobNode>> victims =
+        new CopyOnWriteArrayList<Deque<JobNode>>();
+
+    /** One permit per job in the ready state */
+    private Semaphore readyJobs = new Semaphore(0);
+
+    /**
+     * Permits that could not be reclaimed when a job was taken out of order
+     * through {@link #takeJob(Job)}
+     */
+    private AtomicInteger permitDebt = new AtomicInteger(0);
+
+    /** Tie breaker for jobs of equal priority */
+    private AtomicLong sequence = new AtomicLong(0);
+
+    private BlockingQueue<Job> failedQueue = new ArrayBlockingQueue<Job>(1000);
+
+    private List<WorkerThread> myWorkerThreads =
+        new CopyOnWriteArrayList<WorkerThread>();
+
+    public WorkStealingSchedulerImpl() { }
+
+    public void enqueue(Job job) throws SchedulerException {
+        if (logger != null)
+            logger.debug("WorkStealingSchedulerImpl: queuing job " + job.toString());
+        JobNode n = register(job);
+        if (job.canExecute())
+            makeReady(n, false);
+    }
+
+    public void enqueueNoDependencies(Set<Job> jobs) throws SchedulerException {
+        List<Job> sorted = new ArrayList<Job>(jobs);
+        Collections.sort(sorted, new JobPriorityComparator());
+
+        List<JobNode> toRun = new ArrayList<JobNode>(sorted.size());
+        for (Job job : sorted) {
+            if (logger != null)
+                logger.debug("WorkStealingSchedulerImpl: queuing job " + job.toString());
+            JobNode n = register(job);
+            n.status.set(JobNode.READY);
+            toRun.add(n);
+        }
+
+        List<Deque<JobNode>> targets = new ArrayList<Deque<JobNode>>(victims);
+        if (targets.isEmpty()) {
+            for (JobNode n : toRun)
+                shared.put(n, n);
+        } else {
+            /* Contiguous chunks keep priority order within each worker */
+            int chunk = (toRun.size() + targets.size() - 1) / targets.size();
+            int i = 0;
+            for (JobNode n : toRun) {
+                targets.get(i / chunk).offerLast(n);
+                i++;
+            }
+        }
+        readyJobs.release(toRun.size());
+    }
+
+    public void enqueueBlock(List<Job> jobs) throws SchedulerException {
+        List<JobNode> block = new ArrayList<JobNode>(jobs.size());
+        for (Job job : jobs) {
+            if (logger != null)
+                logger.debug("WorkStealingSchedulerImpl: queuing job " + job.toString());
+            block.add(register(job));
+        }
+        for (JobNode n : block) {
+            if (n.job.canExecute())
+                makeReady(n, false);
+        }
+    }
+
+    public void dequeue(Job job) {
+        JobNode n = nodes.get(job);
+        boolean blocked = n != null
+            && n.status.compareAndSet(JobNode.BLOCKED, JobNode.TAKEN);
+        boolean ready = !blocked && n != null
+            && n.status.compareAndSet(JobNode.READY, JobNode.TAKEN);
+
+        if (!blocked && !ready) {
+            if (logger != null) {
+                logger.info("WorkStealingSchedulerImpl: job " + job.toString()
+                        + " not found in the queue.");
+            }
+            return;
+        }
+
+        if (ready) {
+            shared.remove(n);
+            reclaimPermit();
+        }
+        job.callAboutToBeDequeued(this);
+        nodes.remove(job, n);
+        stats.removeWaitingJob(job.getClass().toString());
+        stats.decTotalJobs();
+    }
+
+    public Job takeJob() throws java.lang.InterruptedException {
+        Deque<JobNode> own = deques.get(Thread.currentThread());
+        readyJobs.acquire();
+        while (true) {
+            JobNode n = poll(own);
+            if (n != null)
+                return n.job;
+            /*
+             * The job our permit stood for was taken through takeJob(Job),
+             * pay back its permit and wait for the next one.
+             */
+            if (payPermitDebt()) {
+                readyJobs.acquire();
+                continue;
+            }
+            /* A job is in transit to a deque, it will appear shortly */
+            Thread.yield();
+        }
+    }
+
+    public Job takeJob(Job job) throws SchedulerException {
+        JobNode n = nodes.get(job);
+        if (n == null || !n.status.compareAndSet(JobNode.READY, JobNode.TAKEN)) {
+            throw new SchedulerException("Can't take job " + job
+                    + ": It is not in the scheduler's queue right now.");
+        }
+        /* Stale entries in worker deques are skipped when encountered */
+        shared.remove(n);
+        reclaimPermit();
+        return job;
+    }
+
+    public void jobStateChanged(Job job, Job.State state) {
+        if (logger != null) {
+            logger.debug("Job " + job + " changed to state " + state);
+        }
+
+        if (state == Job.State.Finished) {
+            stats.removeRunJob(job);
+            stats.incFinishedJobs();
+            complete(job);
+        } else if (state == Job.State.Running) {
+            stats.removeWaitingJob(job.getClass().toString());
+            stats.addRunJob(job);
+        } else if (state == Job.State.Yielded) {
+            stats.removeRunJob(job);
+            stats.addWaitingJob(job.getClass().toString());
+        } else if (state == Job.State.Error) {
+
+            if (failedQueue.remainingCapacity() == 1)
+                failedQueue.remove();
+            failedQueue.add(job);
+
+            stats.removeRunJob(job);
+            stats.addFailedJob(job.getClass().toString());
+            complete(job);
+        }
+    }
+
+    /**
+     * Called by the job when a dependency is added or removed, or when its
+     * last unfinished dependency completes. In the latter case the call
+     * comes from the worker that ran the dependency, which then picks up the
+     * released job from its own deque.
+     */
+    public void jobDependenciesChanged(Job job) {
+        JobNode n = nodes.get(job);
+        if (n == null || n.building)
+            return;
+        if (n.status.get() == JobNode.BLOCKED && job.canExecute())
+            makeReady(n, true);
+    }
+
+    public void startExecute(int n) {
+        if (logger != null)
+            logger.info("Starting " + n + " worker threads");
+        synchronized (this) {
+            for (int i = 0; i < n; ++i) {
+                WorkerThreadImpl t = new WorkerThreadImpl(this, i);
+                Deque<JobNode> d = new ConcurrentLinkedDeque<JobNode>();
+                deques.put(t, d);
+                victims.add(d);
+                t.start();
+                myWorkerThreads.add(t);
+                stats.incWorkerThreads();
+            }
+        }
+    }
+
+    public void stopExecute() {
+        synchronized (this) {
+            for (WorkerThread t : myWorkerThreads) {
+                t.stopProcessing();
+                stats.decWorkerThreads();
+
+                /* Hand over jobs left in the worker's deque */
+                Deque<JobNode> d = deques.remove(t);
+                if (d == null)
+                    continue;
+                victims.remove(d);
+                JobNode n;
+                while ((n = d.pollFirst()) != null) {
+                    if (n.status.get() == JobNode.READY)
+                        shared.put(n, n);
+                }
+            }
+
+            myWorkerThreads.clear();
+        }
+    }
+
+    public boolean isExecuting() {
+        return !myWorkerThreads.isEmpty();
+    }
+
+    public SchedulerStats getSchedulerStats() {
+        return stats;
+    }
+
+    public Job[] getFailedQueue() {
+        Job[] failedJobs = new Job[failedQueue.size()];
+        return failedQueue.toArray(failedJobs);
+    }
+
+    public WorkerThread[] getWorkerThreads() {
+        WorkerThread[] threads = new WorkerThread[myWorkerThreads.size()];
+        return myWorkerThreads.toArray(threads);
+    }
+
+    public void startOneShotWorkerThread() {
+        WorkerThread t = new WorkerThreadImpl(this, true);
+        t.start();
+    }
+
+    @Override
+    public void setInitParams(BundleContext bc, Logger l) {
+        this.logger = l;
+    }
+
+    @Override
+    public void shutDown() {
+    }
+
+    @Override
+    public boolean startUp() {
+
+        int numThreads = 2 * Runtime.getRuntime().availableProcessors();
+        String threadsProperty = System.getProperty(START_THREADS_PROPERTY);
+
+        if (threadsProperty != null && !threadsProperty.equals("-1")) {
+            try {
+                numThreads = Integer.parseInt(threadsProperty);
+            } catch (NumberFormatException nfe) {
+                logger.warn("Invalid number of threads to start:" + threadsProperty);
+            }
+        }
+        startExecute(numThreads);
+
+        String perfLog = System.getProperty(PERF_LOG_PROPERTY);
+        if (perfLog != null && perfLog.equals("true")) {
+            logger.info("Using performance logging");
+            this.perfLog = true;
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean createAuxQueue(Job j, Deque<Job> jobs, ResumePoint p)
+            throws SchedulerException {
+
+        if (jobs.isEmpty()) {
+            logger.warn("Empty job queue passed to createAuxQueue(). Ignoring request");
+            return false;
+        }
+
+        j.yield(p);
+        JobNode parent = nodeFor(j);
+        parent.building = true;
+        parent.status.set(JobNode.BLOCKED);
+        try {
+            for (Job job : jobs) {
+                j.addDependency(job);
+                enqueue(job);
+            }
+        } finally {
+            parent.building = false;
+        }
+        if (j.canExecute())
+            makeReady(parent, false);
+        return true;
+    }
+
+    @Override
+    public void yield(Job j, ResumePoint p) throws SchedulerException {
+
+        if (j.state() != Job.State.Yielded)
+            j.yield(p);
+
+        /* The job stays blocked until its new dependencies are met */
+        JobNode n = nodeFor(j);
+        n.status.set(JobNode.BLOCKED);
+        if (j.canExecute())
+            makeReady(n, false);
+    }
+
+    /*
+     * Internals
+     */
+
+    /** Get or create the scheduling state of a job */
+    private JobNode nodeFor(Job j) {
+        JobNode n = nodes.get(j);
+        if (n == null) {
+            JobNode created = new JobNode(j, sequence.incrementAndGet());
+            n = nodes.putIfAbsent(j, created);
+            if (n == null)
+                n = created;
+        }
+        return n;
+    }
+
+    /** Mark a job as queued to this scheduler */
+    private JobNode register(Job job) throws SchedulerException {
+        job.callAboutToBeEnqueued(this);
+        stats.addWaitingJob(job.getClass().toString());
+        stats.incTotalJobs();
+        return nodeFor(job);
+    }
+
+    /** Forget about a job that will not run again */
+    private void complete(Job j) {
+        nodes.remove(j);
+    }
+
+    private void makeReady(JobNode n, boolean local) {
+        if (!n.status.compareAndSet(JobNode.BLOCKED, JobNode.READY))
+            return;
+        Deque<JobNode> own = local ? deques.get(Thread.currentThread()) : null;
+        if (own != null) {
+            own.offerFirst(n);
+        } else {
+            shared.put(n, n);
+        }
+        readyJobs.release();
+    }
+
+    /**
+     * Find a job to run: the most urgent of the worker's deque head and the
+     * shared set first, otherwise the tail of another worker's deque.
+     */
+    private JobNode poll(Deque<JobNode> own) {
+        while (true) {
+            JobNode mine = (own == null) ? null : own.peekFirst();
+            Map.Entry<JobNode, JobNode> first = shared.firstEntry();
+
+            if (mine == null && first == null)
+                break;
+
+            JobNode n;
+            if (first != null && (mine == null || first.getKey().compareTo(mine) < 0)) {
+                n = shared.remove(first.getKey());
+            } else {
+                n = own.pollFirst();
+            }
+
+            if (n != null && n.status.compareAndSet(JobNode.READY, JobNode.TAKEN))
+                return n;
+        }
+
+        List<Deque<JobNode>> candidates = new ArrayList<Deque<JobNode>>(victims);
+        if (candidates.isEmpty())
+            return null;
+        int start = ThreadLocalRandom.current().nextInt(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            Deque<JobNode> victim = candidates.get((start + i) % candidates.size());
+            if (victim == own)
+                continue;
+            JobNode n;
+            while ((n = victim.pollLast()) != null) {
+                if (n.status.compareAndSet(JobNode.READY, JobNode.TAKEN))
+                    return n;
+            }
+        }
+        return null;
+    }
+
+    /** Take back the permit of a job that was taken out of order */
+    private void reclaimPermit() {
+        if (!readyJobs.tryAcquire())
+            permitDebt.incrementAndGet();
+    }
+
+    private boolean payPermitDebt() {
+        int debt;
+        while ((debt = permitDebt.get()) > 0) {
+            if (permitDebt.compareAndSet(debt, debt - 1))
+                return true;
+        }
+        return false;
+    }
+
+    /** Scheduling state of a job */
+    private static final class JobNode implements Comparable<JobNode> {
+        static final int BLOCKED = 0;
+        static final int READY = 1;
+        static final int TAKEN = 2;
+
+        final Job job;
+        final long priority;
+        final long seq;
+
+        final AtomicInteger status = new AtomicInteger(BLOCKED);
+
+        /* Set while a job's auxiliary queue is being created */
+        volatile boolean building = false;
+
+        JobNode(Job job, long seq) {
+            this.job = job;
+            this.priority = job.priority();
+            this.seq = seq;
+        }
+
+        public int compareTo(JobNode other) {
+            if (priority != other.priority)
+                return priority < other.priority ? -1 : 1;
+            if (seq != other.seq)
+                return seq < other.seq ? -1 : 1;
+            return 0;
+        }
+    }
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
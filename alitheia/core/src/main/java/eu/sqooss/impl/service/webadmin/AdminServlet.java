@@ -313,6 +313,7 @@ public class AdminServlet extends HttpServlet {
 
         // Object-based substitutions
         vc.put("scheduler", adminView.sobjSched.getSchedulerStats());
+        vc.put("dbpool", adminView.sobjDB.getConnectionPoolStats());
         vc.put("tr",tr); // translations proxy
         vc.put("admin",adminView);
         vc.put("projects",projectsView);
@@ -45,9 +45,11 @@ import eu.sqooss.service.abstractmetric.AlitheiaPlugin;
 import eu.sqooss.service.abstractmetric.Result;
 import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.MeasurementSeries;
 import eu.sqooss.service.db.Metric;
 import eu.sqooss.service.db.MetricType;
 import eu.sqooss.service.db.MetricType.Type;
+import eu.sqooss.service.db.StoredProject;
 
 /**
  *  @author Georgios Gousios <gousiosg@gmail.com>
@@ -170,6 +172,35 @@ public class MetricsResource {
        return getResult(m, resourceIds);
     }
 	
+	@Path("/metrics/by-id/{id}/series/{pid}")
+    @GET
+    @Produces({"application/xml", "application/json"})
+    public MeasurementSeries getMetricSeries(@PathParam("id") Long id,
+            @PathParam("pid") Long projectId) {
+        return getSeries(DAObject.loadDAObyId(id, Metric.class), projectId);
+    }
+	
+	@Path("/metrics/by-mnem/{mnem}/series/{pid}")
+    @GET
+    @Produces({"application/xml", "application/json"})
+    public MeasurementSeries getMetricSeriesByMnem(@PathParam("mnem") String name,
+            @PathParam("pid") Long projectId) {
+        return getSeries(Metric.getMetricByMnemonic(name), projectId);
+    }
+	
+	/**
+	 * All results of a project version or source file metric for a project,
+	 * read from the measurement store instead of per artifact. 
+	 */
+	public MeasurementSeries getSeries(Metric m, Long projectId) {
+	    StoredProject sp = DAObject.loadDAObyId(projectId, StoredProject.class);
+	    
+	    if (m == null || sp == null)
+	        return null;
+	    
+	    return AlitheiaCore.getInstance().getDBService().getMeasurementSeries(m, sp);
+	}
+	
 	@Path("/metrics/by-type/{type}")
 	@GET
     @Produces({"application/xml", "application/json"})
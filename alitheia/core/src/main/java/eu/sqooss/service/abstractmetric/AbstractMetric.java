@@ -32,7 +32,9 @@
  */
 package eu.sqooss.service.abstractmetric;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.math.BigInteger;
 import java.security.MessageDigest;
@@ -50,6 +52,7 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -68,6 +71,7 @@ import eu.sqooss.service.db.MetricType;
 import eu.sqooss.service.db.NameSpaceMeasurement;
 import eu.sqooss.service.db.Plugin;
 import eu.sqooss.service.db.PluginConfiguration;
+import eu.sqooss.service.db.ProjectFile;
 import eu.sqooss.service.db.ProjectFileMeasurement;
 import eu.sqooss.service.db.ProjectVersionMeasurement;
 import eu.sqooss.service.db.StoredProject;
@@ -123,8 +127,26 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
     private Set<Class<? extends DAObject>> activators =
         new HashSet<Class<? extends DAObject>>();
 
+    /**
+     * Mnemonics of the metrics activated by files, if they can be copied 
+     * between files with identical contents, otherwise empty.
+     */
+    private Set<String> contentOnlyFileMetrics = new HashSet<String>();
+    
     private Map<Metric, List<Class<? extends DAObject>>> metricActType =
     	new HashMap<Metric, List<Class<? extends DAObject>>>();
+
+    private static final MethodType RUN_TYPE = 
+        MethodType.methodType(void.class, DAObject.class);
+    private static final MethodType GET_RESULT_TYPE = 
+        MethodType.methodType(List.class, DAObject.class, Metric.class);
+
+    /** 
+     * The run() and getResult() methods to call for each DAO class, 
+     * resolved once per class.
+     */
+    private Map<Class<?>, Dispatch> dispatchTable = 
+        new ConcurrentHashMap<Class<?>, Dispatch>();
     
     protected static final String QRY_SYNC_PV = "select pv.id from ProjectVersion pv " +
     		"where pv.project = :project and not exists(" +
@@ -242,6 +264,8 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
         MetricDeclarations md = this.getClass().getAnnotation(MetricDeclarations.class);
 
 		if (md != null && md.metrics().length > 0) {
+		    Set<String> fileMetrics = new HashSet<String>();
+		    boolean contentOnly = true;
 			for (MetricDecl metric : md.metrics()) {
 				log.debug("Found metric: " + metric.mnemonic() + " with "
 						+ metric.activators().length + " activators");
@@ -268,10 +292,20 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
 				metrics.put(m.getMnemonic(), m);
 				if (metric.dependencies().length > 0)
 					dependencies.addAll(Arrays.asList(metric.dependencies()));
+				
+				if (activs.contains(ProjectFile.class)) {
+				    fileMetrics.add(metric.mnemonic());
+				    contentOnly &= metric.contentOnly();
+				}
 			}
+			if (contentOnly)
+			    contentOnlyFileMetrics.addAll(fileMetrics);
 		} else {
 			log.warn("Plug-in " + getName() + " declares no metrics");
 		}
+		
+		for (Class<? extends DAObject> activator : activators)
+		    dispatch(activator);
      }
 
     /**
@@ -346,20 +380,16 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
                         + Plugin.getPluginByHashcode(getUniqueKey()).getName());
             }
             List<Result> re = null;
-            try {
-                Method method = findGetResultMethod(o.getClass());
-                re = (List<Result>) method.invoke(this, o, m);
-            } catch (SecurityException e) {
-                logErr("getResult", o, e);
-            } catch (NoSuchMethodException e) {
+            MethodHandle getResult = dispatch(o.getClass()).getResult;
+            if (getResult == null) {
                 log.error("No method getResult(" + m.getMetricType().toActivator() + ") for type "
                         + this.getClass().getName());
-            } catch (IllegalArgumentException e) {
-                logErr("getResult", o, e);
-            } catch (IllegalAccessException e) {
-                logErr("getResult", o, e);
-            } catch (InvocationTargetException e) {
-                logErr("getResult", o, e);
+                continue;
+            }
+            try {
+                re = (List<Result>) getResult.invokeExact(o, m);
+            } catch (Throwable t) {
+                logErr("getResult", o, t);
             }
             if (re != null && !re.isEmpty()) {
                 result.addAll(re);
@@ -369,23 +399,6 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
         return result;
     }
 
-     private Method findGetResultMethod(Class<?> clazz) 
-     throws NoSuchMethodException {
-     Method m = null;
-     
-     try {
-         m = this.getClass().getMethod("getResult", clazz, Metric.class);                
-     } catch (NoSuchMethodException nsme) {
-         try {
-             m = this.getClass().getMethod("getResult", clazz.getSuperclass(), Metric.class);
-         } catch (NoSuchMethodException nsme1) {
-             throw nsme;
-         }
-     }
-
-     return m;
-     }
-     
     /**
      * Call the appropriate getResult() method according to
      * the type of the entity that is measured.
@@ -417,68 +430,67 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
              * effect that no two Plugins can be invoked with the same DAO as an
              * argument even if the plug-ins do not depend on each other.
              */
-            synchronized (lockObject(o)) {
-                try {
-                    run(o);
-                    
-                    r = getResultIfAlreadyCalculated(o, l);
-                    if (r == null || r.size() == 0) {
-                        if (job.get().state() != Job.State.Yielded)
-                            log.debug("Metric " + getClass() + " didn't return"
-                                + "a result even after running it. DAO: "
-                                + o.getId());
-                    }
-                } finally {
-                    unlockObject(o);
+            Pair<Class<?>, Long> claim = lockObject(o);
+            try {
+                run(o);
+
+                r = getResultIfAlreadyCalculated(o, l);
+                if (r == null || r.size() == 0) {
+                    if (job.get().state() != Job.State.Yielded)
+                        log.debug("Metric " + getClass() + " didn't return"
+                            + "a result even after running it. DAO: "
+                            + o.getId());
                 }
+            } finally {
+                unlockObject(claim);
             }
         }
 
         return r;
     }
 
-    private Map<Long,Pair<Object,Integer>> locks = new HashMap<Long,Pair<Object,Integer>>();
+    /** The DAOs being measured, by DAO type and id */
+    private ConcurrentMap<Pair<Class<?>, Long>, Thread> claims = 
+        new ConcurrentHashMap<Pair<Class<?>, Long>, Thread>();
     
-    private Object lockObject(DAObject o) throws AlreadyProcessingException {
-    	synchronized (locks) {
-            if (!locks.containsKey(o.getId())) {
-                locks.put(o.getId(), 
-                        new Pair<Object, Integer>(new Object(),0));
-            }
-            Pair<Object, Integer> p = locks.get(o.getId());
-            if (p.second + 1 > 1) {
-                /*
-                 * Break and reschedule the calculation of each call to the
-                 * getResult method if it originates from another thread than
-                 * the thread that has currently locked the DAO object. 
-                 * This is required for the DB transaction in the stopped
-                 * job to see the results of the calculation of the original
-                 * job.
-                 */ 
-                log.debug("DAO Id:" + o.getId() + 
-                        " Already locked - failing job");
-                try {
-                    throw new AlreadyProcessingException();
-                } finally {
-                    MetricActivator ma = AlitheiaCore.getInstance().getMetricActivator();
-                    ma.runMetric(o, this);
-                }
+    private Pair<Class<?>, Long> lockObject(DAObject o) 
+        throws AlreadyProcessingException {
+        Pair<Class<?>, Long> claim = 
+            new Pair<Class<?>, Long>(daoType(o), o.getId());
+        if (claims.putIfAbsent(claim, Thread.currentThread()) != null) {
+            /*
+             * Break and reschedule the calculation of each call to the
+             * getResult method if it originates from another thread than
+             * the thread that has currently locked the DAO object. 
+             * This is required for the DB transaction in the stopped
+             * job to see the results of the calculation of the original
+             * job.
+             */ 
+            log.debug("DAO Id:" + o.getId() + 
+                    " Already locked - failing job");
+            try {
+                throw new AlreadyProcessingException();
+            } finally {
+                MetricActivator ma = AlitheiaCore.getInstance().getMetricActivator();
+                ma.runMetric(o, this);
             }
-            p.second = p.second + 1;
-            return p.first;
         }
+        return claim;
     }
     
-    private void unlockObject(DAObject o) {
-    	synchronized(locks) {
-    		Pair<Object,Integer> p = locks.get(o.getId());
-    		p.second = p.second - 1;
-    		if (p.second == 0) {
-    			locks.remove(o.getId());
-    		} else {
-    		log.debug("Unlocking DAO Id:" + o.getId());
-    		}
-    	}
+    private void unlockObject(Pair<Class<?>, Long> claim) {
+        claims.remove(claim);
+    }
+
+    /**
+     * The activator type of a DAO, so that proxies of a DAO are locked
+     * together with the DAO and DAOs of different types are not.
+     */
+    private Class<?> daoType(DAObject o) {
+        for (Class<?> c = o.getClass(); c != null; c = c.getSuperclass())
+            if (activators.contains(c))
+                return c;
+        return o.getClass();
     }
     
     /**
@@ -500,51 +512,111 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
             return;
         }
 
+        if (o instanceof ProjectFile && copyResults((ProjectFile) o))
+            return;
+
+        MethodHandle run = dispatch(o.getClass()).run;
+        if (run == null) {
+            logErr("run", o, new NoSuchMethodException(
+                    getClass().getName() + ".run(" + o.getClass().getName() + ")"));
+            return;
+        }
         try {
-            Method m = findRunMethod("run", o.getClass());
-            m.invoke(this, o);
-        } catch (SecurityException e) {
-            logErr("run", o, e);
-        } catch (NoSuchMethodException e) {
-            logErr("run", o, e);
-        } catch (IllegalArgumentException e) {
-            logErr("run", o, e);
-        } catch (IllegalAccessException e) {
-            logErr("run", o, e);
-        } catch (InvocationTargetException e) {
+            run.invokeExact(o);
+        } catch (AlreadyProcessingException e) {
             // Forward exception to metric job exception handler
-            if (e.getCause() instanceof AlreadyProcessingException) {
-                throw (AlreadyProcessingException) e.getCause();
-            } else {
-                if (e != null && e.getCause() != null) {
-                    logErr("run", o, e);
-                    if (e.getCause() != null)
-                        throw new Exception(e.getCause());
-                    else
-                        throw new Exception(e);
-                }
-            }
+            throw e;
+        } catch (Throwable t) {
+            logErr("run", o, t);
+            throw new Exception(t);
         }
     }
     
-    private Method findRunMethod(String name, Class<?> clazz) 
-        throws NoSuchMethodException {
-        Method m = null;
+    /**
+     * Copy the results of another file with identical contents, if all file
+     * metrics of this plug-in only depend on file contents.
+     * 
+     * @return true if results were copied and the file need not be measured
+     */
+    private boolean copyResults(ProjectFile pf) {
+        if (contentOnlyFileMetrics.isEmpty() || pf.getContentHash() == null
+                || pf.getIsDirectory() || pf.isDeleted())
+            return false;
         
-        try {
-            m = this.getClass().getMethod(name, clazz);                
-        } catch (NoSuchMethodException nsme) {
+        List<ProjectFileMeasurement> measured = 
+            ProjectFileMeasurement.getMeasurementsByContent(pf, contentOnlyFileMetrics);
+        if (measured.isEmpty())
+            return false;
+        
+        List<ProjectFileMeasurement> copies = 
+            new ArrayList<ProjectFileMeasurement>(measured.size());
+        for (ProjectFileMeasurement m : measured)
+            copies.add(new ProjectFileMeasurement(m.getMetric(), pf, m.getResult()));
+        db.addRecords(copies);
+        log.debug("Copied " + copies.size() + " results to file " + pf.getId()
+                + " from file " + measured.get(0).getProjectFile().getId());
+        return true;
+    }
+    
+    /**
+     * Get the run() and getResult() methods for a DAO class, resolving 
+     * them on first use.
+     */
+    private Dispatch dispatch(Class<?> clazz) {
+        Dispatch d = dispatchTable.get(clazz);
+        if (d == null) {
+            d = new Dispatch(findMethod("run", RUN_TYPE, clazz), 
+                    findMethod("getResult", GET_RESULT_TYPE, clazz));
+            dispatchTable.put(clazz, d);
+        }
+        return d;
+    }
+
+    /**
+     * Find a public method of this plug-in that accepts the given DAO
+     * class, or its superclass (e.g. for Hibernate proxies), as the first
+     * argument, and adapt it to the given type.
+     * 
+     * @return A handle bound to this plug-in, or null if there is none
+     */
+    private MethodHandle findMethod(String name, MethodType type, Class<?> clazz) {
+        Class<?>[] params = type.parameterArray();
+        for (Class<?> c : new Class<?>[] {clazz, clazz.getSuperclass()}) {
+            if (c == null)
+                continue;
+            params[0] = c;
             try {
-                m = this.getClass().getMethod(name, clazz.getSuperclass());
-            } catch (NoSuchMethodException nsme1) {
-                throw nsme;
+                Method m = getClass().getMethod(name, params);
+                // Not the dispatching run(DAObject) itself
+                if (m.getDeclaringClass() == AbstractMetric.class)
+                    continue;
+                m.setAccessible(true);
+                return MethodHandles.lookup().unreflect(m).bindTo(this).asType(type);
+            } catch (NoSuchMethodException e) {
+                // Try the superclass
+            } catch (SecurityException e) {
+                log.warn("Cannot access " + name + "(" + c.getName() + "): " 
+                        + e.getMessage());
+            } catch (IllegalAccessException e) {
+                log.warn("Cannot access " + name + "(" + c.getName() + "): " 
+                        + e.getMessage());
             }
         }
-       
-        return m;
+        return null;
+    }
+
+    /** The methods implementing a metric for a DAO class */
+    private static class Dispatch {
+        final MethodHandle run;
+        final MethodHandle getResult;
+
+        Dispatch(MethodHandle run, MethodHandle getResult) {
+            this.run = run;
+            this.getResult = getResult;
+        }
     }
     
-    private void logErr(String method, DAObject o, Exception e) {
+    private void logErr(String method, DAObject o, Throwable e) {
         log.error("Plugin:" + this.getClass().toString() + 
                 "\nDAO id: " + o.getId() + 
                 "\nDAO class: " + o.getClass() +
@@ -552,7 +624,8 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
                 "\nError when invoking the " + method + " method." +
                 "\nException:" + e.getClass().getName() +
                 "\nError:" + e.getMessage() + 
-                "\nReason:" + e.getCause(), e);
+                "\nReason:" + e.getCause(), 
+                e instanceof Exception ? (Exception) e : new Exception(e));
     }
 
     /** {@inheritDoc} */
@@ -855,7 +928,7 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
             return Collections.EMPTY_LIST;
         
         ArrayList<Result> result = new ArrayList<Result>();
-        result.add(new Result(o, m, ((MetricMeasurement)resultat.get(0)).getResult(), type));
+        result.add(new Result(o, m, (MetricMeasurement)resultat.get(0), type));
         return result;
         
     }
@@ -74,4 +74,12 @@ public @interface MetricDecl {
 	 * A list of metrics that this metric depends upon.
 	 */
 	String[] dependencies() default {};
+	
+	/**
+	 * Set if the metric's results for a {@link eu.sqooss.service.db.ProjectFile}
+	 * only depend on the file's name and contents. The results of such 
+	 * metrics are copied from files with identical contents instead of being
+	 * calculated again, when all file metrics of the plug-in declare this.
+	 */
+	boolean contentOnly() default false;
 }
@@ -7,6 +7,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 
 import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.MetricMeasurement;
 
 @XmlRootElement(name="r")
 @XmlAccessorType(XmlAccessType.NONE)
@@ -25,7 +26,6 @@ public class Result {
     @XmlElement
     private Long metricId;
     
-    @XmlElement(type=String.class)
     private Object result;
     
     @XmlElement
@@ -40,6 +40,15 @@ public class Result {
         this.type = type;
     }
 
+    /**
+     * Create a result from a stored measurement. Integer results are 
+     * returned as Long and floating point results as Double objects, if
+     * the measurement has been stored as a number.
+     */
+    public Result(DAObject o, Metric m, MetricMeasurement mm, ResultType type) {
+        this(o, m, value(mm, type), type);
+    }
+
     public Long getArtifactId() {
         return artifactId;
     }
@@ -64,6 +73,34 @@ public class Result {
         this.result = result;
     }
 
+    /* Results are exchanged as strings, whatever their type */
+    @XmlElement(name="result")
+    private String getResultString() {
+        return result == null ? null : result.toString();
+    }
+
+    @SuppressWarnings("unused")
+    private void setResultString(String result) {
+        this.result = result;
+    }
+
+    private static Object value(MetricMeasurement mm, ResultType type) {
+        switch (type) {
+        case INTEGER:
+            if (mm.getLongResult() != null)
+                return mm.getLongResult();
+            break;
+        case FLOAT:
+        case DOUBLE:
+            if (mm.getDoubleResult() != null)
+                return mm.getDoubleResult();
+            break;
+        default:
+            break;
+        }
+        return mm.getResult();
+    }
+
     public ResultType getType() {
         return type;
     }
@@ -97,5 +97,13 @@ public @interface SchedulerHints {
      * This is a best effort approach
      */
     public InvocationOrder invocationOrder() default OLDFIRST;
+
+    /**
+     * The number of resources a single metric job processes. Resources
+     * in a batch are loaded with one query and their results are committed
+     * in one transaction. If a batch fails, its resources are retried
+     * one by one. The default (1) creates a job per resource.
+     */
+    public int activationBatchSize() default 1;
 }
 
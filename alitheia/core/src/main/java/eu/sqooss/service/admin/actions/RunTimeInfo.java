@@ -32,6 +32,7 @@ package eu.sqooss.service.admin.actions;
 
 import eu.sqooss.core.AlitheiaCore;
 import eu.sqooss.service.admin.AdminActionBase;
+import eu.sqooss.service.db.ConnectionPoolStats;
 import eu.sqooss.service.scheduler.SchedulerStats;
 
 public class RunTimeInfo extends AdminActionBase {
@@ -64,6 +65,17 @@ public class RunTimeInfo extends AdminActionBase {
             result.put("sched.jobs.finished", s.getFinishedJobs());
             result.put("sched.threads.idle", s.getIdleWorkerThreads());
             result.put("sched.threads.total", s.getWorkerThreads());
+
+            ConnectionPoolStats p = AlitheiaCore.getInstance().getDBService()
+                    .getConnectionPoolStats();
+            if (p != null) {
+                result.put("db.pool.active", p.getActiveConnections());
+                result.put("db.pool.idle", p.getIdleConnections());
+                result.put("db.pool.max", p.getMaxConnections());
+                result.put("db.pool.wait.avg", p.getAvgWaitTime());
+                result.put("db.pool.wait.max", p.getMaxWaitTime());
+                result.put("db.pool.stmtcache.hitratio", p.getStatementCacheHitRatio());
+            }
         } catch (Exception e) {
             error(e);
         }
@@ -0,0 +1,122 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.db;
+
+/**
+ * A snapshot of the state of the database connection pool. Wait times
+ * are in milliseconds.
+ */
+public class ConnectionPoolStats {
+
+    // the maximum number of connections in the pool
+    private int maxConnections;
+    // connections currently handed out to sessions
+    private int activeConnections;
+    // open connections waiting in the pool
+    private int idleConnections;
+    // number of times a connection was requested from the pool
+    private long requests;
+    // total and worst time spent waiting for a connection
+    private double totalWaitTime;
+    private double maxWaitTime;
+    // prepared statements served from and added to the statement cache
+    private long statementCacheHits;
+    private long statementCacheMisses;
+
+    public ConnectionPoolStats(int maxConnections, int activeConnections,
+            int idleConnections, long requests, double totalWaitTime,
+            double maxWaitTime, long statementCacheHits,
+            long statementCacheMisses) {
+        this.maxConnections = maxConnections;
+        this.activeConnections = activeConnections;
+        this.idleConnections = idleConnections;
+        this.requests = requests;
+        this.totalWaitTime = totalWaitTime;
+        this.maxWaitTime = maxWaitTime;
+        this.statementCacheHits = statementCacheHits;
+        this.statementCacheMisses = statementCacheMisses;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getActiveConnections() {
+        return activeConnections;
+    }
+
+    public int getIdleConnections() {
+        return idleConnections;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public double getTotalWaitTime() {
+        return totalWaitTime;
+    }
+
+    public double getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    /** Average time a request waited for a connection */
+    public double getAvgWaitTime() {
+        return requests == 0 ? 0 : totalWaitTime / requests;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits;
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses;
+    }
+
+    /** Fraction of prepared statements served from the statement cache */
+    public double getStatementCacheHitRatio() {
+        long total = statementCacheHits + statementCacheMisses;
+        return total == 0 ? 0 : (double) statementCacheHits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "active: " + activeConnections + ", idle: " + idleConnections
+            + ", max: " + maxConnections + ", avg wait: "
+            + String.format("%.2f", getAvgWaitTime()) + "ms, max wait: "
+            + String.format("%.2f", maxWaitTime) + "ms, statement cache hit ratio: "
+            + String.format("%.2f", getStatementCacheHitRatio());
+    }
+}
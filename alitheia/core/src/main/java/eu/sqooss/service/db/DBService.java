@@ -144,6 +144,26 @@ public interface DBService extends AlitheiaCoreService {
      *         false otherwise
      */
     public boolean isDBSessionActive();
+
+    /**
+     * Get the current state of the database connection pool.
+     * @return the pool counters, or null if the configured connection
+     *         provider does not keep any
+     */
+    public ConnectionPoolStats getConnectionPoolStats();
+
+    /**
+     * Get the numeric results of a project version or source file metric
+     * for all project versions or files of a project. Results are read
+     * from the columnar measurement store when it is enabled, otherwise
+     * from the database.
+     * 
+     * @param m The metric
+     * @param sp The project
+     * @return The series, or null if the metric does not measure project
+     *         versions or source files
+     */
+    public MeasurementSeries getMeasurementSeries(Metric m, StoredProject sp);
     
     /**
      * A generic query method to retrieve a single DAObject subclass using its identifier.
@@ -223,6 +243,32 @@ public interface DBService extends AlitheiaCoreService {
     public <T extends DAObject> List<T> findObjectsByPropertiesForUpdate(Class<T> daoClass,
                                                                 Map<String,Object> properties );
 
+    /**
+     * Same as {@link #findObjectsByProperties(Class, Map)}, but the result
+     * is kept in the query cache. Repeated lookups are answered without a
+     * database round trip until a table the query depends on is modified.
+     * Only useful for the few read-mostly entities that are mapped as
+     * cacheable, such as {@link Metric}, {@link MetricType}, {@link Plugin}
+     * and {@link ProjectFileState}.
+     * 
+     * @param daoClass the actual class of the DAObjects
+     * @param properties a map of property name/value pairs corresponding to properties
+     *          of the DAObject subclass
+     * @return a list of DAObjects matching the class and the set of properties,
+     *          possibly empty if no match was found in the database or if the properties map
+     *          contains invalid entries or if a database access error occured
+     */
+    public <T extends DAObject> List<T> findObjectsByPropertiesCached(Class<T> daoClass,
+                                                                Map<String,Object> properties );
+
+    /**
+     * Remove all entities and query results from the second level cache.
+     * Needed after changes to cached tables that Hibernate does not see,
+     * such as rows removed by the database's referential integrity
+     * mechanisms.
+     */
+    public void evictCache();
+
     /**
      * Add a new record to the database, including all the associations the record may contain.
      * 
@@ -239,6 +285,21 @@ public interface DBService extends AlitheiaCoreService {
      */
     public <T extends DAObject> boolean addRecords(List<T> records);
 
+    /**
+     * Add multiple new records to the database, flushing the session every
+     * <code>batchSize</code> records. Combined with the JDBC batch size
+     * configured in Hibernate (<code>hibernate.jdbc.batch_size</code>), this
+     * sends the inserts to the database in batches instead of one statement
+     * per record. Metric plug-ins storing many measurements at once should
+     * prefer this to {@link #addRecords(List)}.
+     * 
+     * @param records the list of records to persist into the database
+     * @param batchSize number of records to save between session flushes
+     * @return true if all the record insertions succeeded, false otherwise
+     */
+    public <T extends DAObject> boolean addRecordsBatched(List<T> records,
+            int batchSize);
+
     /**
      * Delete an existing record from the database.
      *
@@ -269,6 +330,22 @@ public interface DBService extends AlitheiaCoreService {
      */
     public <T extends DAObject> T attachObjectToDBSession(T obj);
 
+    /**
+     * Reload from the database the objects of the given type and identifiers
+     * that are attached to the current session. This has to be done after
+     * updating their rows with {@link #executeUpdate(String, Map)}, which
+     * bypasses the session: otherwise a later flush of such an object
+     * overwrites the update with its stale state. Identifiers of objects
+     * that are not attached to the session are ignored.
+     * 
+     * @param daoClass the actual class of the DAObjects
+     * @param ids the identifiers of the updated objects
+     * @return true if all attached objects were reloaded,
+     *         false if there was no active session or if an error occured
+     */
+    public <T extends DAObject> boolean refreshDBSessionObjects(
+            Class<T> daoClass, Collection<Long> ids);
+
     /**
      * Execute a complete SQL query to the database.
      * This allows low-level manipulation of the database contents outside of the DAO types.
@@ -481,6 +558,20 @@ public interface DBService extends AlitheiaCoreService {
      */
     public int executeUpdate(String hql, Map<String, Object> params);
     
+    /**
+     * Executes a DML-type query with list-based parameters, for instance 
+     * the allowable values in a "IN ( foo, ... )" clause.
+     * 
+     * @param hql The HQL statement to execute 
+     * @param params the map of parameters to be substituted in the HQL query
+     * @param collectionParams the map of collections to be substituted in 
+     *          the HQL query
+     * @return The number of rows updated or deleted or -1 in case of error
+     * @see #executeUpdate(String, Map)
+     */
+    public int executeUpdate(String hql, Map<String, Object> params,
+            Map<String, Collection> collectionParams);
+    
     /**
      * Get the logger used by the DB service, to log something DB specific. 
      * This is the prefered method for DAOs to log things.
@@ -71,6 +71,20 @@ import eu.sqooss.service.db.DAObject;
 @Table(name="DEVELOPER")
 public class Developer extends DAObject {
 	
+    /*
+     * Developer lookups and creations are serialized per project, so that
+     * concurrent updaters do not create the same developer twice. Projects
+     * are mapped to a fixed number of locks.
+     */
+    private static final int LOCK_STRIPES = 64;
+    private static final Object[] projectLocks = new Object[LOCK_STRIPES];
+    
+    static {
+        for (int i = 0; i < LOCK_STRIPES; i++)
+            projectLocks[i] = new Object();
+    }
+    
+
 	@Id
 	@GeneratedValue(strategy=GenerationType.AUTO)
 	@Column(name="DEVELOPER_ID")
@@ -233,7 +247,14 @@ public class Developer extends DAObject {
      *         <li>The passed email is invalid syntactically</li>
      *         <ul>
      */
-    public static synchronized Developer getDeveloperByEmail(String email,
+    public static Developer getDeveloperByEmail(String email,
+            StoredProject sp, boolean create){
+        synchronized (lockFor(sp)) {
+            return findByEmail(email, sp, create);
+        }
+    }
+    
+    private static Developer findByEmail(String email,
             StoredProject sp, boolean create){
         DBService dbs = AlitheiaCore.getInstance().getDBService();
         
@@ -284,7 +305,7 @@ public class Developer extends DAObject {
         OhlohDeveloper od = OhlohDeveloper.getByEmailHash(hash);
         
         if (od != null) {
-            Developer d = getDeveloperByUsername(od.getUname(), sp, false);
+            Developer d = findByUsername(od.getUname(), sp, false);
         
             if (d != null) {
                 d.addAlias(email);
@@ -338,8 +359,15 @@ public class Developer extends DAObject {
      *         to retrieve or create an entry.
      * 
      */    
+    public static Developer getDeveloperByUsername(String username,
+            StoredProject sp, boolean create) {
+        synchronized (lockFor(sp)) {
+            return findByUsername(username, sp, create);
+        }
+    }
+    
     @SuppressWarnings("unchecked")
-    public static synchronized Developer getDeveloperByUsername(String username,
+    private static Developer findByUsername(String username,
             StoredProject sp, boolean create) {
 		
         DBService dbs = AlitheiaCore.getInstance().getDBService();
@@ -405,7 +433,14 @@ public class Developer extends DAObject {
      * @param create
      * @return
      */
-    public static synchronized Developer getDeveloperByName(String name, 
+    public static Developer getDeveloperByName(String name, 
+            StoredProject sp, boolean create) {
+        synchronized (lockFor(sp)) {
+            return findByName(name, sp, create);
+        }
+    }
+    
+    private static Developer findByName(String name, 
             StoredProject sp, boolean create) {
         
         DBService dbs = AlitheiaCore.getInstance().getDBService();
@@ -425,12 +460,21 @@ public class Developer extends DAObject {
         
         Developer d = new Developer();
         d.setName(name);
+        d.setStoredProject(sp);
         if (!dbs.addRecord(d))
             return null;
         
         return d;
     }
     
+    /**
+     * The lock that serializes developer lookups for the provided project.
+     */
+    static Object lockFor(StoredProject sp) {
+        int h = (int) (sp.getId() ^ (sp.getId() >>> 32));
+        return projectLocks[(h & 0x7fffffff) % LOCK_STRIPES];
+    }
+    
     public String toString() {
         StringBuffer dev =  new StringBuffer(); 
         dev.append(name).append(", aka:").append(username).append(" (");
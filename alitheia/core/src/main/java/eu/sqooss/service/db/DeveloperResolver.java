@@ -0,0 +1,170 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.db;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A per project cache of developer identities, for use by updaters that
+ * resolve the author of every imported item. All emails, names and usernames
+ * of the project's developers are loaded when the resolver is created; 
+ * developers that are not found are looked up, and created if requested, 
+ * through the respective {@link Developer} methods and then recorded.
+ * 
+ * Keys are matched exactly, as the database lookups do. Resolved developers
+ * are loaded by primary key in the caller's database session. Entries for 
+ * developers whose creation was rolled back are dropped when first missed.
+ */
+public class DeveloperResolver {
+
+    private static final String qAliases = "select da.email, d.id " +
+            "from DeveloperAlias da, Developer d " +
+            "where da.developer = d and d.storedProject = :project";
+    
+    private static final String qDevelopers = "select d.id, d.name, d.username " +
+            "from Developer d where d.storedProject = :project";
+    
+    private DBService dbs;
+    private StoredProject sp;
+    
+    private ConcurrentMap<String, Long> byEmail;
+    private ConcurrentMap<String, Long> byName;
+    private ConcurrentMap<String, Long> byUsername;
+    
+    public DeveloperResolver(DBService dbs, StoredProject sp) {
+        this.dbs = dbs;
+        this.sp = sp;
+        this.byEmail = new ConcurrentHashMap<String, Long>();
+        this.byName = new ConcurrentHashMap<String, Long>();
+        this.byUsername = new ConcurrentHashMap<String, Long>();
+        
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("project", sp);
+        
+        for (Object row : dbs.doHQL(qAliases, params)) {
+            Object[] r = (Object[]) row;
+            if (r[0] != null)
+                byEmail.putIfAbsent((String) r[0], (Long) r[1]);
+        }
+        
+        for (Object row : dbs.doHQL(qDevelopers, params)) {
+            Object[] r = (Object[]) row;
+            if (r[1] != null)
+                byName.putIfAbsent((String) r[1], (Long) r[0]);
+            if (r[2] != null)
+                byUsername.putIfAbsent((String) r[2], (Long) r[0]);
+        }
+    }
+    
+    /**
+     * @see Developer#getDeveloperByEmail(String, StoredProject, boolean)
+     */
+    public Developer getDeveloperByEmail(String email, boolean create) {
+        Developer d = cached(byEmail, email);
+        if (d != null)
+            return d;
+        
+        synchronized (Developer.lockFor(sp)) {
+            d = cached(byEmail, email);
+            if (d == null) {
+                d = Developer.getDeveloperByEmail(email, sp, create);
+                record(byEmail, email, d);
+            }
+        }
+        return d;
+    }
+    
+    /**
+     * @see Developer#getDeveloperByName(String, StoredProject, boolean)
+     */
+    public Developer getDeveloperByName(String name, boolean create) {
+        Developer d = cached(byName, name);
+        if (d != null)
+            return d;
+        
+        synchronized (Developer.lockFor(sp)) {
+            d = cached(byName, name);
+            if (d == null) {
+                d = Developer.getDeveloperByName(name, sp, create);
+                record(byName, name, d);
+            }
+        }
+        return d;
+    }
+    
+    /**
+     * @see Developer#getDeveloperByUsername(String, StoredProject, boolean)
+     */
+    public Developer getDeveloperByUsername(String username, boolean create) {
+        Developer d = cached(byUsername, username);
+        if (d != null)
+            return d;
+        
+        synchronized (Developer.lockFor(sp)) {
+            d = cached(byUsername, username);
+            if (d == null) {
+                d = Developer.getDeveloperByUsername(username, sp, create);
+                record(byUsername, username, d);
+            }
+        }
+        return d;
+    }
+    
+    public int size() {
+        return byEmail.size() + byName.size() + byUsername.size();
+    }
+    
+    private Developer cached(ConcurrentMap<String, Long> m, String key) {
+        if (key == null)
+            return null;
+        Long id = m.get(key);
+        if (id == null)
+            return null;
+        
+        Developer d = dbs.findObjectById(Developer.class, id);
+        if (d == null)
+            m.remove(key, id);
+        return d;
+    }
+    
+    private void record(ConcurrentMap<String, Long> m, String key, Developer d) {
+        if (key != null && d != null)
+            m.put(key, d.getId());
+    }
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
@@ -5,7 +5,6 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
@@ -26,7 +25,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 public class ExecutionUnitMeasurement extends MetricMeasurement {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = "measurement_id")
     @Column(name = "EXECUTION_UNIT_MEASUREMENT_ID")
     @XmlElement(name = "id")
     private long id; 
@@ -45,18 +44,12 @@ public class ExecutionUnitMeasurement extends MetricMeasurement {
     @JoinColumn(name="METRIC_ID", referencedColumnName="METRIC_ID")
     private Metric metric;
 
-    /**
-     * A representation of the calculation result
-     */
-    @Column(name="RESULT")
-    private String result;
-
     public ExecutionUnitMeasurement() {}
     
     public ExecutionUnitMeasurement(ExecutionUnit eu, Metric m, String result) {
         this.executionUnit = eu;
         this.metric = m;
-        this.result = result;
+        setResult(result);
     }
     
     public long getId() {
@@ -82,12 +75,4 @@ public class ExecutionUnitMeasurement extends MetricMeasurement {
     public void setMetric(Metric metric) {
         this.metric = metric;
     }
-
-    public String getResult() {
-        return result;
-    }
-
-    public void setResult(String result) {
-        this.result = result;
-    }
 }
@@ -38,7 +38,6 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
@@ -56,7 +55,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 public class MailMessageMeasurement extends MetricMeasurement {
 	
 	@Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = "measurement_id")
     @Column(name = "MAILMESSAGE_MEASUREMENT_ID")
     @XmlElement(name = "id")
 	private long id; 
@@ -79,12 +78,6 @@ public class MailMessageMeasurement extends MetricMeasurement {
     @JoinColumn(name="METRIC_ID", referencedColumnName="METRIC_ID")
     private Metric metric;
 
-    /**
-     * A representation of the calculation result
-     */
-    @Column(name="RESULT")
-    private String result;
-
     /**
      * Convenience constructor to avoid having to call three methods
      * to set up sensible values in a measurement.
@@ -123,12 +116,4 @@ public class MailMessageMeasurement extends MetricMeasurement {
     public void setMetric(Metric metric) {
         this.metric = metric;
     }
-
-    public String getResult() {
-        return result;
-    }
-
-    public void setResult(String result) {
-        this.result = result;
-    }
 }
@@ -38,7 +38,6 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
@@ -56,7 +55,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 public class MailingListThreadMeasurement extends MetricMeasurement {
 
 	@Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = "measurement_id")
     @Column(name = "ML_THREAD_MEASUREMENT_ID")
     @XmlElement(name = "id")
 	private long id; 
@@ -79,11 +78,6 @@ public class MailingListThreadMeasurement extends MetricMeasurement {
     @JoinColumn(name="METRIC_ID", referencedColumnName="METRIC_ID")
     private Metric metric;
 
-    /**
-     * A representation of the calculation result
-     */
-    @Column(name="RESULT")
-    private String result;
    
     /**
      * Convenience constructor to avoid having to call three methods
@@ -99,6 +93,20 @@ public class MailingListThreadMeasurement extends MetricMeasurement {
         setThread(mt);
         setResult(value);
     }
+
+    /**
+     * Convenience constructor for integer measurements.
+     * 
+     * @param m Metric this measurement is from
+     * @param mt Thread this measurement is for
+     * @param value The measured value
+     */
+    public MailingListThreadMeasurement(Metric m, MailingListThread mt, long value) {
+        super();
+        setMetric(m);
+        setThread(mt);
+        setResult(value);
+    }
     
     public long getId() {
 		return id;
@@ -123,12 +131,4 @@ public class MailingListThreadMeasurement extends MetricMeasurement {
     public void setMetric(Metric metric) {
         this.metric = metric;
     }
-
-    public String getResult() {
-        return result;
-    }
-
-    public void setResult(String result) {
-        this.result = result;
-    }
 }
@@ -0,0 +1,98 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.db;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * The numeric results of a metric for the artifacts of a project, as
+ * parallel arrays of artifact ids and values. Project version results are
+ * ordered by version sequence, file results by file id.
+ */
+@XmlRootElement(name="series")
+@XmlAccessorType(XmlAccessType.NONE)
+public class MeasurementSeries {
+
+    @XmlElement
+    private long metricId;
+
+    @XmlElement
+    private long projectId;
+
+    @XmlElement(name="artifact")
+    private long[] artifactIds;
+
+    @XmlElement(name="value")
+    private double[] values;
+
+    public MeasurementSeries() {
+        this(0, 0, new long[0], new double[0]);
+    }
+
+    public MeasurementSeries(long metricId, long projectId, long[] artifactIds,
+            double[] values) {
+        if (artifactIds.length != values.length)
+            throw new IllegalArgumentException("Got " + artifactIds.length
+                    + " artifacts for " + values.length + " values");
+        this.metricId = metricId;
+        this.projectId = projectId;
+        this.artifactIds = artifactIds;
+        this.values = values;
+    }
+
+    public long getMetricId() {
+        return metricId;
+    }
+
+    public long getProjectId() {
+        return projectId;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public long[] getArtifactIds() {
+        return artifactIds;
+    }
+
+    public double[] getValues() {
+        return values;
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
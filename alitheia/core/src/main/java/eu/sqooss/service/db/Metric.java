@@ -52,6 +52,9 @@ import javax.persistence.Table;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import eu.sqooss.core.AlitheiaCore;
 
 /**
@@ -70,6 +73,7 @@ import eu.sqooss.core.AlitheiaCore;
  */
 @Entity
 @Table(name="METRIC")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @XmlRootElement(name="metric")
 public class Metric extends DAObject {
 
@@ -348,7 +352,7 @@ public class Metric extends DAObject {
 		Map<String, Object> properties = new HashMap<String, Object>();
 		properties.put("mnemonic", mnem);
 
-		List<Metric> result = dbs.findObjectsByProperties(Metric.class,
+		List<Metric> result = dbs.findObjectsByPropertiesCached(Metric.class,
 				properties);
 
 		if (result.size() <= 0)
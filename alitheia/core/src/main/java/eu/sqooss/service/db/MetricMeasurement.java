@@ -33,15 +33,163 @@
 
 package eu.sqooss.service.db;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.Column;
+import javax.persistence.MappedSuperclass;
+
 /**
  * Instances of this class represent the result of a metric
  * calculation as stored in the database. This class is extended by
  * other DAO to show results related to specific entities: project,
  * files etc.
+ * <p>
+ * Results are stored as strings. Numeric results are also stored in typed
+ * columns, so that they can be read without parsing and aggregated by the
+ * database.
  */
+@MappedSuperclass
 public abstract class MetricMeasurement extends DAObject {
 
-    public abstract String getResult();
+    /** Number of measurements converted per transaction on upgrade */
+    private static final int FILL_BATCH = 1000;
+
+    /** The measurement types whose typed columns are filled on upgrade */
+    private static final String[] MEASUREMENTS = {
+        "StoredProjectMeasurement", "ProjectVersionMeasurement", 
+        "ProjectFileMeasurement", "MailMessageMeasurement", 
+        "MailingListThreadMeasurement", "NameSpaceMeasurement",
+        "ExecutionUnitMeasurement", "EncapsulationUnitMeasurement"
+    };
+
+    /**
+     * A representation of the calculation result
+     */
+    @Column(name="RESULT")
+    private String result;
+
+    /**
+     * The result, if it is an integer
+     */
+    @Column(name="LONG_RESULT")
+    private Long longResult;
+
+    /**
+     * The result, if it is a number
+     */
+    @Column(name="DOUBLE_RESULT")
+    private Double doubleResult;
+
+    public String getResult() {
+        return result;
+    }
+
+    /**
+     * Set the result. Numeric results are also stored in the typed 
+     * result columns.
+     */
+    public void setResult(String result) {
+        this.result = result;
+        this.longResult = toLong(result);
+        this.doubleResult = longResult != null ? 
+                Double.valueOf(longResult) : toDouble(result);
+    }
+
+    /**
+     * Set an integer result.
+     */
+    public void setResult(long result) {
+        this.result = String.valueOf(result);
+        this.longResult = result;
+        this.doubleResult = (double) result;
+    }
+
+    /**
+     * Set a floating point result. 
+     */
+    public void setResult(double result) {
+        this.result = String.valueOf(result);
+        this.longResult = null;
+        this.doubleResult = Double.isNaN(result) || Double.isInfinite(result) ? 
+                null : result;
+    }
+
+    /**
+     * @return The result, or null if it is not an integer
+     */
+    public Long getLongResult() {
+        return longResult;
+    }
+
+    /**
+     * @return The result, or null if it is not a number. Integer results 
+     * are also returned by this method.
+     */
+    public Double getDoubleResult() {
+        return doubleResult;
+    }
+
+    /**
+     * Fill in the typed result columns of measurements stored before they
+     * existed. Each measurement table is read once, in batches of 
+     * {@link #FILL_BATCH} measurements in id order, and each batch is 
+     * committed. This reads all measurements, so the database service runs 
+     * it only once per database, see {@link SchemaMigration}.
+     * 
+     * @param dbs A database service with an active session. The session is
+     *      committed and a new one is started after each batch.
+     * @return The number of updated measurements
+     */
+    @SuppressWarnings("unchecked")
+    public static int fillTypedResults(DBService dbs) {
+        int updated = 0;
+        Map<String, Object> params = new HashMap<String, Object>();
+        for (String type : MEASUREMENTS) {
+            String hql = "from " + type + " m where m.id > :paramLast" 
+                + " and m.doubleResult is null and m.result is not null"
+                + " order by m.id";
+            long last = 0;
+            while (true) {
+                params.put("paramLast", last);
+                List<MetricMeasurement> l = 
+                    (List<MetricMeasurement>) dbs.doHQL(hql, params, FILL_BATCH);
+                if (l.isEmpty())
+                    break;
+                for (MetricMeasurement m : l) {
+                    m.setResult(m.getResult());
+                    if (m.getDoubleResult() != null)
+                        updated++;
+                    last = m.getId();
+                }
+                dbs.commitDBSession();
+                dbs.startDBSession();
+            }
+        }
+        return updated;
+    }
+
+    private static Long toLong(String s) {
+        if (s == null)
+            return null;
+        try {
+            return Long.valueOf(s.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Double toDouble(String s) {
+        if (s == null)
+            return null;
+        try {
+            Double d = Double.valueOf(s.trim());
+            return d.isNaN() || d.isInfinite() ? null : d;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
 }
 
 // vi: ai nosi sw=4 ts=4 expandtab
@@ -48,6 +48,9 @@ import javax.persistence.Table;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import eu.sqooss.core.AlitheiaCore;
 
 /**
@@ -58,6 +61,7 @@ import eu.sqooss.core.AlitheiaCore;
  */
 @Entity
 @Table(name="METRIC_TYPE")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @XmlRootElement(name="metrictype")
 public class MetricType extends DAObject {
 
@@ -172,7 +176,7 @@ public class MetricType extends DAObject {
         DBService db = AlitheiaCore.getInstance().getDBService();
         HashMap<String, Object> s = new HashMap<String, Object>();
         s.put("type", t.toString());
-        List<MetricType> result = db.findObjectsByProperties(MetricType.class, s);
+        List<MetricType> result = db.findObjectsByPropertiesCached(MetricType.class, s);
         if (result.isEmpty()) {
             return null;
         }
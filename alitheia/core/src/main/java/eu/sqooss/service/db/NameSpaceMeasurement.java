@@ -5,7 +5,6 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
@@ -25,7 +24,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 public class NameSpaceMeasurement extends MetricMeasurement {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = "measurement_id")
     @Column(name = "NAMESPACE_MEASUREMENT_ID")
     @XmlElement(name = "id")
     private long id; 
@@ -44,12 +43,6 @@ public class NameSpaceMeasurement extends MetricMeasurement {
     @JoinColumn(name="METRIC_ID", referencedColumnName="METRIC_ID")
     private Metric metric;
 
-    /**
-     * A representation of the calculation result
-     */
-    @Column(name="RESULT")
-    private String result;
-
     public NameSpaceMeasurement() {
         super();
     }
@@ -62,14 +55,6 @@ public class NameSpaceMeasurement extends MetricMeasurement {
         this.id = id;
     }
 
-    public void setResult(String result) {
-        this.result = result;
-    }
-
-    public String getResult() {
-        return result;
-    }
-
     public void setMetric(Metric metric) {
         this.metric = metric;
     }
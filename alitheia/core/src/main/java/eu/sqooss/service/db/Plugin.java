@@ -48,6 +48,9 @@ import javax.persistence.Id;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import eu.sqooss.core.AlitheiaCore;
 
 /**
@@ -59,6 +62,7 @@ import eu.sqooss.core.AlitheiaCore;
  */
 @Entity
 @Table(name="PLUGIN")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Plugin extends DAObject {
 	
 	@Id
@@ -192,7 +196,7 @@ public class Plugin extends DAObject {
         DBService db = AlitheiaCore.getInstance().getDBService();
         HashMap<String, Object> s = new HashMap<String, Object>();
         s.put("name", name);
-        return db.findObjectsByProperties(Plugin.class, s);
+        return db.findObjectsByPropertiesCached(Plugin.class, s);
     }
         
     /**
@@ -210,7 +214,7 @@ public class Plugin extends DAObject {
         DBService db = AlitheiaCore.getInstance().getDBService();
         HashMap<String, Object> s = new HashMap<String, Object>();
         s.put("hashcode", hashcode);
-        List<Plugin> l = db.findObjectsByProperties(Plugin.class, s); 
+        List<Plugin> l = db.findObjectsByPropertiesCached(Plugin.class, s); 
         if (!l.isEmpty())
             return l.get(0);
         
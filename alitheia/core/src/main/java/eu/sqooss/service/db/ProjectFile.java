@@ -34,6 +34,7 @@
 package eu.sqooss.service.db;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -68,12 +69,28 @@ import eu.sqooss.service.util.FileUtils;
  */
 @Entity
 @Table(name="PROJECT_FILE")
+@org.hibernate.annotations.Table(appliesTo = "PROJECT_FILE", indexes = {
+    @Index(name = "IDX_PROJECT_FILE_INTERVAL", columnNames = {
+        "PROJECT_ID", "VALID_FROM_SEQUENCE", "VALID_UNTIL_SEQUENCE"}),
+    @Index(name = "IDX_PROJECT_FILE_LINEAGE", columnNames = {
+        "PROJECT_ID", "DIRECTORY_ID", "FILE_NAME", "VALID_FROM_SEQUENCE"})
+})
 @XmlRootElement(name="file")
 public class ProjectFile extends DAObject{
     
-    private static final String qPrevVersion = "select pf from ProjectVersion pv, ProjectFile pf where pf.projectVersion = pv.id and pv.project.id = :paramProject and pv.sequence < :paramsequence and  pf.name = :paramFile and pf.dir.id = :paramDir order by pv.sequence desc";
-    private static final String qPrevVersionCopy = "select pf from ProjectVersion pv, ProjectFile pf where pf.projectVersion = pv.id and pv.project.id = :paramProject and pv.sequence < :paramsequence and ((pf.name = :paramFile and pf.dir.id = :paramDir) or ( pf.name = :paramCopyFromName and pf.dir.id = :paramCopyFromDir)) order by pv.sequence desc";
+    private static final String qPrevVersion = "select pf from ProjectFile pf where pf.projectId = :paramProject and pf.dir.id = :paramDir and pf.name = :paramFile and pf.validFromSequence < :paramsequence order by pf.validFromSequence desc";
+    private static final String qPrevVersionCopy = "select pf from ProjectFile pf where pf.projectId = :paramProject and ((pf.name = :paramFile and pf.dir.id = :paramDir) or ( pf.name = :paramCopyFromName and pf.dir.id = :paramCopyFromDir)) and pf.validFromSequence < :paramsequence order by pf.validFromSequence desc";
+    private static final String qNextVersion = "select pf from ProjectFile pf where pf.previousFileId = :paramFile order by pf.validFromSequence asc, pf.id asc";
+    private static final String qFileModifications = "select pf from ProjectFile pf where pf.projectId = :paramProject and pf.dir.id = :paramDir and pf.name = :paramFile order by pf.validFromSequence asc";
+    private static final String qLivePredecessors = "select pf.id, old.id from ProjectFile pf, ProjectFile old where pf.projectId = :paramProject and pf.validFromSequence = :paramSequence and pf.state <> :paramAdded and pf.copyFrom is null and old.projectId = pf.projectId and old.dir = pf.dir and old.name = pf.name and old.validFromSequence < pf.validFromSequence and old.validUntilSequence = :paramLive";
+    private static final String qCloseIntervals = "update ProjectFile pf set pf.validUntil = :paramVersion, pf.validUntilSequence = :paramSequence where pf.id in (:paramFiles)";
     private static final String qChangedMethods = "from ExecutionUnit eu where eu.file = :file and eu.changed = true";
+
+    /** Sequence of the validity interval end of files that are still live */
+    public static final long LIVE = Long.MAX_VALUE;
+    
+    /** Maximum number of files whose intervals are closed per update */
+    public static final int CLOSE_BATCH = 500;
     
 	@Id
 	@GeneratedValue(strategy=GenerationType.AUTO)
@@ -135,6 +152,40 @@ public class ProjectFile extends DAObject{
     @JoinColumn(name="VALID_TO_ID")
     private ProjectVersion validUntil;
 
+    /**
+     * Interval index: copies of the project id and of the sequence numbers
+     * of validFrom and validUntil, so that the files live in a version can
+     * be found without joining the version table. Maintained by the 
+     * validity setters, {@link #LIVE} while validUntil is not set.
+     */
+    @Column(name="PROJECT_ID")
+    private Long projectId;
+
+    @Column(name="VALID_FROM_SEQUENCE")
+    private Long validFromSequence;
+
+    @Column(name="VALID_UNTIL_SEQUENCE")
+    private Long validUntilSequence;
+
+    /**
+     * Lineage chain: the id of the previous version of this file, as 
+     * returned by {@link #getPreviousFileVersion()}. Recorded by the updater
+     * when the file is imported, see
+     * {@link #closeValidityIntervals(ProjectVersion, ProjectVersion)}.
+     */
+    @Column(name="PREVIOUS_FILE_ID")
+    @Index(name="IDX_PROJECT_FILE_PREVIOUS")
+    private Long previousFileId;
+
+    /**
+     * An identifier of the file contents as recorded by the updater, if
+     * the repository provides one (the blob id for Git). Files with the
+     * same name and content hash have identical contents.
+     */
+    @Column(name="CONTENT_HASH", length=64)
+    @Index(name="IDX_PROJECT_FILE_CONTENT")
+    private String contentHash;
+
     /**
      * The ProjectFile this file was copied from. Only gets a value 
      * for file copy operations
@@ -202,9 +253,10 @@ public class ProjectFile extends DAObject{
         this.isDirectory = f.getIsDirectory();
         this.measurements = null;
         this.name = f.getName();
+        this.contentHash = f.getContentHash();
         this.projectVersion = v;
-        this.validFrom = v;
-        this.validUntil = null;
+        setValidFrom(v);
+        setValidUntil(null);
         //this.status = f.getStatus();
     }
     
@@ -301,6 +353,13 @@ public class ProjectFile extends DAObject{
 
     public void setValidFrom(ProjectVersion validFrom) {
         this.validFrom = validFrom;
+        if (validFrom != null) {
+            this.validFromSequence = validFrom.getSequence();
+            if (validFrom.getProject() != null)
+                this.projectId = validFrom.getProject().getId();
+        } else {
+            this.validFromSequence = null;
+        }
     }
 
     public ProjectVersion getValidUntil() {
@@ -309,6 +368,7 @@ public class ProjectFile extends DAObject{
 
     public void setValidUntil(ProjectVersion validUntil) {
         this.validUntil = validUntil;
+        this.validUntilSequence = (validUntil == null) ? LIVE : validUntil.getSequence();
     }
     
     public ProjectFile getCopyFrom() {
@@ -319,6 +379,27 @@ public class ProjectFile extends DAObject{
         this.copyFrom = copyFrom;
     }
 
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public Long getPreviousFileId() {
+        return previousFileId;
+    }
+
+    /**
+     * Record the previous version of this file in the lineage chain.
+     * 
+     * @param prev The previous file version, or null to clear the link
+     */
+    public void setPreviousFileVersion(ProjectFile prev) {
+        this.previousFileId = (prev == null) ? null : prev.getId();
+    }
+
     public Set<ProjectFileMeasurement> getMeasurements() {
         return measurements;
     }
@@ -380,7 +461,9 @@ public class ProjectFile extends DAObject{
     }
 
     /**
-     * Get the previous entry for the provided ProjectFile
+     * Get the previous entry for the provided ProjectFile. The lineage chain
+     * recorded by the updater is followed if present, otherwise the previous
+     * entry is looked up by path; the result of the lookup is not recorded.
      * @param pf
      * @return The previous file revision, or null if the file is not found
      * or if the file was added in the provided revision
@@ -393,6 +476,12 @@ public class ProjectFile extends DAObject{
             return null;
         }
         
+        if (previousFileId != null) {
+            ProjectFile prev = dbs.findObjectById(ProjectFile.class, previousFileId);
+            if (prev != null)
+                return prev;
+        }
+        
         String query = null;
         
         if (this.copyFrom == null)
@@ -421,6 +510,35 @@ public class ProjectFile extends DAObject{
         }
     }
 
+    /**
+     * Get the next entry for this file, following the lineage chain
+     * recorded by the updater. A file that was both modified in place and 
+     * copied has several successors; the one at the same path is preferred,
+     * otherwise the earliest copy is returned.
+     * <p>
+     * Entries imported before the lineage chain was recorded are not linked,
+     * for them this method returns null even if there are later revisions.
+     * 
+     * @return The next file revision, or null if this is the latest
+     * revision or the next revision has not been linked
+     */
+    public ProjectFile getNextFileVersion() {
+        DBService dbs = AlitheiaCore.getInstance().getDBService();
+        Map<String,Object> parameters = new HashMap<String,Object>();
+        parameters.put("paramFile", this.getId());
+        List<?> projectFiles = dbs.doHQL(qNextVersion, parameters);
+        
+        if (projectFiles.isEmpty())
+            return null;
+        for (Object o : projectFiles) {
+            ProjectFile next = (ProjectFile) o;
+            if (next.getName().equals(getName()) 
+                    && next.getDir().getId() == getDir().getId())
+                return next;
+        }
+        return (ProjectFile) projectFiles.get(0);
+    }
+
     /**
      * Returns the project version DAO where this file was deleted.
      * 
@@ -547,23 +665,12 @@ public class ProjectFile extends DAObject{
     public static List<ProjectFile> getFileModifications(ProjectFile pf) {
         DBService dbs = AlitheiaCore.getInstance().getDBService();
         
-        String paramFile = "paramFile";
-        String paramDir = "paramDir";
-        String paramProject = "paramProject";
-
-        String query = "select pf"
-            + " from ProjectVersion pv, ProjectFile pf"
-            + " where pf.projectVersion = pv.id "
-            + " and pf.name = :" + paramFile
-            + " and pf.dir = :" + paramDir
-            + " and pv.project = :" + paramProject
-            + " order by pv.sequence asc";
         Map<String, Object> parameters = new HashMap<String, Object>();
-        parameters.put(paramFile, pf.getName());
-        parameters.put(paramDir, pf.getDir());
-        parameters.put(paramProject, pf.getProjectVersion().getProject());
+        parameters.put("paramFile", pf.getName());
+        parameters.put("paramDir", pf.getDir().getId());
+        parameters.put("paramProject", pf.getProjectVersion().getProject().getId());
 
-        return (List<ProjectFile>) dbs.doHQL(query, parameters);
+        return (List<ProjectFile>) dbs.doHQL(qFileModifications, parameters);
     }
     
     /**
@@ -642,6 +749,85 @@ public class ProjectFile extends DAObject{
         return pfs.get(0);
     }
     
+    /**
+     * Fill in the interval index columns of files stored before the index
+     * existed. Files stored since are indexed when their validity is set.
+     * This scans the whole file table, so the database service runs it
+     * only once per database, see {@link SchemaMigration}.
+     * 
+     * @param dbs A database service with an active session
+     * @return The number of updated files
+     */
+    public static int fillIntervalIndex(DBService dbs) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        int updated = dbs.executeUpdate("update ProjectFile pf set"
+                + " pf.validFromSequence = (select v.sequence from ProjectVersion v where v = pf.validFrom),"
+                + " pf.projectId = (select v.project.id from ProjectVersion v where v = pf.validFrom)"
+                + " where pf.validFromSequence is null", params);
+        dbs.executeUpdate("update ProjectFile pf set"
+                + " pf.validUntilSequence = (select v.sequence from ProjectVersion v where v = pf.validUntil)"
+                + " where pf.validUntilSequence is null and pf.validUntil is not null", params);
+        params.put("live", LIVE);
+        dbs.executeUpdate("update ProjectFile pf set pf.validUntilSequence = :live"
+                + " where pf.validUntilSequence is null", params);
+        return updated;
+    }
+
+    /**
+     * Close the validity intervals of the files that were changed in 
+     * version <tt>pv</tt>: the live previous versions of its modified, 
+     * deleted and replaced files become valid until <tt>previous</tt>. The
+     * previous versions are found with one query and updated with one bulk
+     * update per {@link #CLOSE_BATCH} files, instead of looking up and
+     * updating each file. The same query links the changed files to their
+     * previous versions in the lineage chain. Previous versions that are 
+     * attached to the current session are reloaded after the update, so 
+     * that flushing them does not reopen their intervals.
+     * <p>
+     * Changed files that have been copied are not handled, as their previous
+     * version may be at the copy source path; the caller has to close their
+     * previous versions with {@link #getPreviousFileVersion()} and link them
+     * with {@link #setPreviousFileVersion(ProjectFile)}.
+     * 
+     * @param pv A version whose files have been stored
+     * @param previous The version before <tt>pv</tt>
+     * @return The number of files whose validity interval was closed
+     */
+    @SuppressWarnings("unchecked")
+    public static int closeValidityIntervals(ProjectVersion pv, 
+            ProjectVersion previous) {
+        if (previous == null)
+            return 0;
+        
+        DBService dbs = AlitheiaCore.getInstance().getDBService();
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("paramProject", pv.getProject().getId());
+        params.put("paramSequence", pv.getSequence());
+        params.put("paramAdded", ProjectFileState.added());
+        params.put("paramLive", LIVE);
+        List<Object[]> pairs = (List<Object[]>) dbs.doHQL(qLivePredecessors, params);
+        
+        List<Long> ids = new ArrayList<Long>(pairs.size());
+        for (Object[] pair : pairs) {
+            ProjectFile pf = dbs.findObjectById(ProjectFile.class, (Long) pair[0]);
+            pf.previousFileId = (Long) pair[1];
+            ids.add((Long) pair[1]);
+        }
+        
+        params.clear();
+        params.put("paramVersion", previous);
+        params.put("paramSequence", previous.getSequence());
+        Map<String, Collection> lparams = new HashMap<String, Collection>();
+        int updated = 0;
+        for (int i = 0; i < ids.size(); i += CLOSE_BATCH) {
+            lparams.put("paramFiles", 
+                    ids.subList(i, Math.min(ids.size(), i + CLOSE_BATCH)));
+            updated += dbs.executeUpdate(qCloseIntervals, params, lparams);
+        }
+        dbs.refreshDBSessionObjects(ProjectFile.class, ids);
+        return updated;
+    }
+
     public List<ExecutionUnit> getChangedExecutionUnits() {
         DBService dbs = AlitheiaCore.getInstance().getDBService();
         Map<String, Object> params = new HashMap<String, Object>();
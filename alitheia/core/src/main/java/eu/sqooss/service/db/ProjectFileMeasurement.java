@@ -33,12 +33,17 @@
 
 package eu.sqooss.service.db;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
@@ -46,6 +51,8 @@ import javax.persistence.Table;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 
+import eu.sqooss.core.AlitheiaCore;
+
 /**
  * Instances of this class represent a measurement made against a
  * specific file, as stored in the database
@@ -55,8 +62,18 @@ import javax.xml.bind.annotation.XmlRootElement;
 @XmlRootElement(name="file-measurement")
 public class ProjectFileMeasurement extends MetricMeasurement {
     
+    private static final String qMeasuredSameContent = "select pf.id " +
+    		"from ProjectFileMeasurement pfm, ProjectFile pf " +
+    		"where pfm.projectFile = pf and pf.contentHash = :paramHash " +
+    		"and pf.name = :paramName and pf.id <> :paramFile " +
+    		"and pfm.metric.mnemonic in (:paramMetrics)";
+    private static final String qFileMeasurements = "select pfm " +
+    		"from ProjectFileMeasurement pfm " +
+    		"where pfm.projectFile.id = :paramFile " +
+    		"and pfm.metric.mnemonic in (:paramMetrics)";
+    
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = "measurement_id")
     @Column(name = "PROJECT_FILE_MEASUREMENT_ID")
     @XmlElement(name = "id")
     private long id; 
@@ -68,11 +85,6 @@ public class ProjectFileMeasurement extends MetricMeasurement {
     @JoinColumn(name="METRIC_ID", referencedColumnName="METRIC_ID")
     private Metric metric;
 
-    /**
-     * A representation of the calculation result
-     */
-    @Column(name="RESULT")
-    private String result;
     
     /**
      * The file against which the measurement was made
@@ -100,6 +112,20 @@ public class ProjectFileMeasurement extends MetricMeasurement {
         setProjectFile(f);
         setResult(value);
     }
+
+    /**
+     * Convenience constructor for integer measurements.
+     * 
+     * @param m Metric this measurement is from
+     * @param f File this measurement is for
+     * @param value The measured value
+     */
+    public ProjectFileMeasurement(Metric m, ProjectFile f, long value) {
+        super();
+        setMetric(m);
+        setProjectFile(f);
+        setResult(value);
+    }
     
     public long getId() {
         return id;
@@ -126,12 +152,39 @@ public class ProjectFileMeasurement extends MetricMeasurement {
         this.metric = metric;
     }
 
-    public String getResult() {
-        return result;
-    }
-
-    public void setResult(String result) {
-        this.result = result;
+    /**
+     * Get the measurements for the given metrics of another file with the 
+     * same name and contents as <tt>pf</tt>. The measurements of a single 
+     * such file are returned. 
+     * 
+     * @param pf The file whose contents to look for
+     * @param mnemonics The metrics whose measurements to return
+     * @return The measurements, or an empty list if <tt>pf</tt> has no
+     * content hash or no file with identical contents has been measured. 
+     */
+    @SuppressWarnings("unchecked")
+    public static List<ProjectFileMeasurement> getMeasurementsByContent(
+            ProjectFile pf, Collection<String> mnemonics) {
+        if (pf.getContentHash() == null || mnemonics.isEmpty())
+            return Collections.emptyList();
+        
+        DBService dbs = AlitheiaCore.getInstance().getDBService();
+        Map<String, Object> params = new HashMap<String, Object>();
+        Map<String, Collection> lparams = new HashMap<String, Collection>();
+        params.put("paramHash", pf.getContentHash());
+        params.put("paramName", pf.getName());
+        params.put("paramFile", pf.getId());
+        lparams.put("paramMetrics", mnemonics);
+        
+        List<Long> files = (List<Long>) dbs.doHQL(qMeasuredSameContent, 
+                params, lparams, false, 0, 1);
+        if (files.isEmpty())
+            return Collections.emptyList();
+        
+        params.clear();
+        params.put("paramFile", files.get(0));
+        return (List<ProjectFileMeasurement>) dbs.doHQL(qFileMeasurements, 
+                params, lparams);
     }
 }
 
@@ -49,6 +49,9 @@ import javax.persistence.Table;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import eu.sqooss.core.AlitheiaCore;
 import eu.sqooss.service.tds.PathChangeType;
 
@@ -67,6 +70,7 @@ import eu.sqooss.service.tds.PathChangeType;
  */
 @Entity
 @Table(name="PROJECT_FILE_STATE")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @XmlRootElement
 public class ProjectFileState extends DAObject {
     
@@ -126,7 +130,7 @@ public class ProjectFileState extends DAObject {
 
         Map<String, Object> params = new HashMap<String, Object>();
         params.put("status", status);
-        List<ProjectFileState> pfs = dbs.findObjectsByProperties(
+        List<ProjectFileState> pfs = dbs.findObjectsByPropertiesCached(
                 ProjectFileState.class, params);
 
         if (!pfs.isEmpty()) {
@@ -714,61 +714,45 @@ public class ProjectVersion extends DAObject {
 
         String paramDirectory = "paramDirectory";
         String paramIsDirectory = "is_directory";
-        String paramVersionId = "paramVersionId";
+        String paramSequence = "paramSequence";
         String paramProjectId = "paramProjectId";
         String paramState = "paramStatus";
 
+        /* Uses the file validity interval index, see ProjectFile */
         Map<String,Object> params = new HashMap<String,Object>();
-        StringBuffer q = new StringBuffer("select distinct pf ");
-        
-        if (this.sequence == ProjectVersion.getLastProjectVersion(this.project).sequence) {
-            q.append(" from ProjectFile pf, ProjectVersion pv");
-            q.append(" where pv.id = :").append(paramVersionId);
-            q.append(" and pf.validUntil is null ");
-        } else {
-            q.append(" from ProjectVersion pv, ProjectVersion pv2,");
-            q.append(" ProjectVersion pv3, ProjectFile pf ");
-            q.append(" where pv.project.id = :").append(paramProjectId);
-            q.append(" and pv.id = :").append(paramVersionId);
-            q.append(" and pv2.project.id = :").append(paramProjectId);
-            q.append(" and pv3.project.id = :").append(paramProjectId);
-            q.append(" and ((pf.validFrom.id = pv2.id and pf.validUntil.id = pv3.id)");
-            q.append("     or (pf.validFrom.id = pv2.id and pf.validUntil.id is null))");
-            q.append(" and pv2.sequence <= pv.sequence");
-            q.append(" and pv3.sequence >= pv.sequence");
-            
-            params.put(paramProjectId, this.project.getId());
-        }
-        
+        StringBuffer q = new StringBuffer("select pf from ProjectFile pf");
+        q.append(" where pf.projectId = :").append(paramProjectId);
+        q.append(" and pf.validFromSequence <= :").append(paramSequence);
+        q.append(" and pf.validUntilSequence >= :").append(paramSequence);
         q.append(" and pf.state <> :").append(paramState);
-        
+
+        if (d != null) {
+            q.append(" and pf.dir = :").append(paramDirectory);
+        }
+
+        if (mask != ProjectVersion.MASK_ALL) {
+            q.append(" and pf.isDirectory = :").append(paramIsDirectory);
+        }
+
+        params.put(paramProjectId, this.project.getId());
+        params.put(paramSequence, this.sequence);
+        params.put(paramState, ProjectFileState.deleted());
+
         if (d != null) {
- 	    	q.append(" and pf.dir = :").append(paramDirectory);
- 	    }
- 	        
- 	    if (mask != ProjectVersion.MASK_ALL) {
- 	    	q.append(" and pf.isDirectory = :").append(paramIsDirectory);
- 	    }
-    
-     	params.put(paramState, ProjectFileState.deleted());
-     	params.put(paramVersionId, this.getId());
- 	    
-     	if (d != null) {
-     		params.put(paramDirectory, d);
-     	}
-     	
- 	    if (mask != ProjectVersion.MASK_ALL) {
- 	        Boolean isDirectory = ((mask == ProjectVersion.MASK_DIRECTORIES)?true:false);
- 	        params.put(paramIsDirectory, isDirectory);
- 	    }
- 	    
- 	    List<ProjectFile> projectFiles = (List<ProjectFile>) dbs.doHQL(q.toString(), params);
-
- 	    if (projectFiles == null) 
- 	        return Collections.emptyList();
-
- 	    return projectFiles;
+            params.put(paramDirectory, d);
+        }
+
+        if (mask != ProjectVersion.MASK_ALL) {
+            Boolean isDirectory = ((mask == ProjectVersion.MASK_DIRECTORIES)?true:false);
+            params.put(paramIsDirectory, isDirectory);
+        }
+
+        List<ProjectFile> projectFiles = (List<ProjectFile>) dbs.doHQL(q.toString(), params);
+
+        if (projectFiles == null) 
+            return Collections.emptyList();
 
+        return projectFiles;
     }
     
     /**
@@ -38,7 +38,6 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
@@ -56,7 +55,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 public class ProjectVersionMeasurement extends MetricMeasurement {
 	
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = "measurement_id")
     @Column(name = "PROJECT_VERSION_MEASUREMENT_ID")
     @XmlElement(name = "id")
 	private long id; 
@@ -68,12 +67,6 @@ public class ProjectVersionMeasurement extends MetricMeasurement {
     @JoinColumn(name="METRIC_ID", referencedColumnName="METRIC_ID")
     private Metric metric;
 
-    /**
-     * A representation of the calculation result
-     */
-    @Column(name="RESULT")
-    private String result;
-
 	/**
      * The ProjectVersion to which the instance relates
      */
@@ -98,6 +91,19 @@ public class ProjectVersionMeasurement extends MetricMeasurement {
         setProjectVersion(p);
         setResult(v);
     }
+
+    /**
+     * Convenience constructor for integer measurements.
+     * @param m Metric the measurement is for
+     * @param p Project version the metric was applied to
+     * @param v Resulting value
+     */
+    public ProjectVersionMeasurement(Metric m, ProjectVersion p, long v) {
+        this();
+        setMetric(m);
+        setProjectVersion(p);
+        setResult(v);
+    }
     
     public long getId() {
 		return id;
@@ -128,20 +134,6 @@ public class ProjectVersionMeasurement extends MetricMeasurement {
     public void setMetric(Metric metric) {
         this.metric = metric;
     }
-    
-    /**
-     * @return the result
-     */
-    public String getResult() {
-        return result;
-    }
-    
-    /**
-     * @param result the result to set
-     */
-    public void setResult(String result) {
-        this.result = result;
-    }
 }
 
 //vi: ai nosi sw=4 ts=4 expandtab
@@ -0,0 +1,122 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.db;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * A one-off change to the data of existing databases, such as filling in
+ * a column added to a table. Migrations that have been run are recorded,
+ * so that their data is not looked at again on startup.
+ */
+@Entity
+@Table(name="SCHEMA_MIGRATION")
+public class SchemaMigration extends DAObject {
+
+    @Id
+    @GeneratedValue(strategy=GenerationType.AUTO)
+    @Column(name="SCHEMA_MIGRATION_ID")
+    private long id;
+
+    @Column(name="MIGRATION_NAME", unique=true, nullable=false)
+    private String name;
+
+    @Column(name="APPLIED")
+    private Date applied;
+
+    public SchemaMigration() {}
+
+    public SchemaMigration(String name) {
+        this.name = name;
+        this.applied = new Date();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Date getApplied() {
+        return applied;
+    }
+
+    public void setApplied(Date applied) {
+        this.applied = applied;
+    }
+
+    /**
+     * Check whether a migration has been run on this database.
+     * 
+     * @param dbs A database service with an active session
+     */
+    public static boolean isApplied(DBService dbs, String name) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("name", name);
+        List<SchemaMigration> l = 
+            dbs.findObjectsByProperties(SchemaMigration.class, params);
+        return l != null && !l.isEmpty();
+    }
+
+    /**
+     * Record that a migration has been run on this database.
+     * 
+     * @param dbs A database service with an active session
+     */
+    public static void markApplied(DBService dbs, String name) {
+        dbs.addRecord(new SchemaMigration(name));
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
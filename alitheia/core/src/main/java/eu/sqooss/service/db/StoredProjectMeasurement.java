@@ -31,7 +31,6 @@
  *
  */
 
-
 package eu.sqooss.service.db;
 
 import javax.persistence.CascadeType;
@@ -39,7 +38,6 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
@@ -58,7 +56,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 public class StoredProjectMeasurement extends MetricMeasurement {
 
     @Id
-	@GeneratedValue(strategy=GenerationType.AUTO)
+	@GeneratedValue(generator = "measurement_id")
 	@Column(name="STORED_PROJECT_MEASUREMENT_ID")
 	@XmlElement(name="id")
 	private long id; 
@@ -70,11 +68,6 @@ public class StoredProjectMeasurement extends MetricMeasurement {
     @JoinColumn(name="METRIC_ID", referencedColumnName="METRIC_ID")
     private Metric metric;
 
-    /**
-     * A representation of the calculation result
-     */
-    @Column(name="RESULT")
-    private String result;
 	
 	/**
      * The StoredPRoject to which this measurement relates
@@ -113,15 +106,6 @@ public class StoredProjectMeasurement extends MetricMeasurement {
     public void setMetric(Metric metric) {
         this.metric = metric;
     }
-
-    public String getResult() {
-        return result;
-    }
-
-    public void setResult(String result) {
-        this.result = result;
-    }
-
 }
 
 // vi: ai nosi sw=4 ts=4 expandtab
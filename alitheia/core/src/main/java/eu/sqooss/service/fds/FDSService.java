@@ -162,6 +162,15 @@ public interface FDSService extends AlitheiaCoreService {
      * @return the file contents or null if none.
      */
     InputStream getFileContents(ProjectFile pf);
+
+    /**
+     * Set the cache to use for the results of 
+     * {@link #getFileContents(ProjectFile)}. File contents are cached by 
+     * project, revision and path.
+     * 
+     * @param cache The cache to use, or null to disable caching
+     */
+    void setContentCache(FileContentCache cache);
 }
 
 // vi: ai nosi sw=4 ts=4 expandtab
@@ -35,15 +35,19 @@ package eu.sqooss.service.scheduler;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import java.lang.Comparable;
 import java.lang.InterruptedException;
 
 import eu.sqooss.core.AlitheiaCore;
-import eu.sqooss.service.util.Pair;
 
 import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.scheduler.SchedulerException;
@@ -70,19 +74,37 @@ public abstract class Job implements Comparable<Job> {
     }
 
     /**
-     * This list contains the dependencies between the jobs.
-     * Each pair defines that the \a second one's execution depends on
-     * completion of the \a first one.
-     *
-     * As soon as the \a first job is finished, the pair is removed from
-     * the list.
+     * The unfinished jobs this job depends on. As soon as a job is finished,
+     * it is removed from the set of each of its dependees.
      */
-    protected List<Pair<Job,Job>> m_dependencies;
+    private Set<Job> m_dependencies;
     
     /**
-     * List of jobs which depend on this job
+     * Jobs which depend on this job. Guarded by the job's dependency lock.
+     */
+    private Set<Job> m_dependees;
+
+    /**
+     * Number of unfinished jobs this job depends on.
+     */
+    private final AtomicInteger m_pending = new AtomicInteger(0);
+
+    /**
+     * Set when the job has finished, after which no dependees can be added.
+     * Guarded by the job's dependency lock.
+     */
+    private boolean m_done = false;
+
+    /**
+     * Lock for changes to the set of dependees.
      */
-    private List<Job> m_dependees;
+    private final Object m_depLock = new Object();
+
+    /**
+     * Set when the graph of jobs this job depends on has been checked for
+     * cycles and cannot change anymore.
+     */
+    private volatile boolean m_acyclic = false;
 
     /**
      * A list of objects that listen to this job's state changes  
@@ -136,19 +158,29 @@ public abstract class Job implements Comparable<Job> {
         	throw new SchedulerException("Job dependencies cannot be added after the job has been queued.");
         }
 
-        // Don't allow circular dependencies
-        if( other.dependsOn(this) || (this==other) ) {
+        // Don't allow circular dependencies. The full graph is checked
+        // once the job is queued, only yielded jobs need to be checked here.
+        if( (this==other) || 
+                ((state() == State.Yielded) && other.dependsOn(this)) ) {
             throw new SchedulerException("Job dependencies are not allowed to be cyclic.");
         }
 
         if (m_dependencies == null)
-            m_dependencies = new LinkedList<Pair<Job,Job>>();
-        
-        synchronized (m_dependencies) {
-            Pair<Job,Job> newDependency = new Pair<Job,Job>(other, this);
-            m_dependencies.add(newDependency);
-            other.addDependee(this);
+            m_dependencies = Collections.newSetFromMap(
+                    new ConcurrentHashMap<Job, Boolean>());
+
+        synchronized (other.m_depLock) {
+            // Finished jobs cannot block anything
+            if (other.m_done)
+                return;
+            if (other.m_dependees == null)
+                other.m_dependees = new LinkedHashSet<Job>();
+            if (!other.m_dependees.add(this))
+                return;
+            m_dependencies.add(other);
+            m_pending.incrementAndGet();
         }
+        m_acyclic = false;
         callDependenciesChanged();
     }
     
@@ -159,17 +191,13 @@ public abstract class Job implements Comparable<Job> {
     public final void removeDependency(Job other) {
         if (m_dependencies == null)
             return;
-        synchronized(m_dependencies) {
-            List<Pair<Job,Job>> doomed = new LinkedList<Pair<Job,Job>>();
-            for (Pair<Job,Job> p: m_dependencies ) {
-                if ( (p.first == other) && (p.second == this) ) {
-                    doomed.add(p);
-                    removeDependee(other);
-                }
-            }
-            m_dependencies.removeAll(doomed);
+        synchronized (other.m_depLock) {
+            if (other.m_dependees == null || !other.m_dependees.remove(this))
+                return;
+            m_dependencies.remove(other);
         }
-        callDependenciesChanged();
+        if (m_pending.decrementAndGet() == 0)
+            callDependenciesChanged();
     }
 
     /**
@@ -178,36 +206,76 @@ public abstract class Job implements Comparable<Job> {
      * @return true, when the job depends on \a other, otherwise false.
      */
     public final boolean dependsOn(Job other) {
-        if (m_dependencies == null)
-            return false;
-        synchronized(m_dependencies) {
-            for (Pair<Job,Job> p: m_dependencies ) {
-                if ( (p.first == other) && (p.second == this) ) {
-                    return true;
-                } else if ( (p.second == this) && p.first.dependsOn(other)) {
+        Map<Job, Boolean> visited = new IdentityHashMap<Job, Boolean>();
+        LinkedList<Job> toVisit = new LinkedList<Job>();
+        toVisit.add(this);
+
+        while (!toVisit.isEmpty()) {
+            Job j = toVisit.removeFirst();
+            if (j.m_dependencies == null)
+                continue;
+            for (Job dep : j.m_dependencies) {
+                if (dep == other)
                     return true;
-                }
+                if (visited.put(dep, Boolean.TRUE) == null)
+                    toVisit.add(dep);
             }
-            return false;
         }
+        return false;
     }
 
-    private final synchronized void addDependee(Job other) {
-        if (m_dependees == null)
-            m_dependees = new ArrayList<Job>();
-        synchronized (m_dependees) {
-            m_dependees.add(other);
-        }
-    }
-    
-    private final synchronized void removeDependee(Job other) {
-        if (m_dependees == null)
-            return;
-        synchronized (m_dependees) {
-            m_dependees.remove(other);
+    /**
+     * Checks that the graph of jobs this job depends on contains no cycles.
+     * Jobs whose dependency graph has been checked and cannot change anymore
+     * are not visited again, so queueing a large graph job by job is linear
+     * to the number of dependencies.
+     * 
+     * @return true when all jobs reachable from this one have been marked
+     * as checked
+     */
+    private boolean checkAcyclic() throws SchedulerException {
+        Map<Job, Boolean> finished = new IdentityHashMap<Job, Boolean>();
+        Map<Job, Boolean> onPath = new IdentityHashMap<Job, Boolean>();
+        LinkedList<Job> path = new LinkedList<Job>();
+        LinkedList<List<Job>> pending = new LinkedList<List<Job>>();
+
+        path.add(this);
+        onPath.put(this, Boolean.TRUE);
+        pending.add(dependencies());
+        boolean allChecked = true;
+
+        while (!path.isEmpty()) {
+            List<Job> deps = pending.getLast();
+            if (deps.isEmpty()) {
+                Job j = path.removeLast();
+                pending.removeLast();
+                onPath.remove(j);
+                finished.put(j, Boolean.TRUE);
+                if (j == this)
+                    continue;
+                /* Queued jobs cannot get new dependencies */
+                if (allChecked && j.state() != State.Created 
+                        && j.state() != State.Yielded) {
+                    j.m_acyclic = true;
+                } else {
+                    allChecked = false;
+                }
+                continue;
+            }
+
+            Job dep = deps.remove(deps.size() - 1);
+            if (dep.m_acyclic || finished.containsKey(dep))
+                continue;
+            if (onPath.containsKey(dep))
+                throw new SchedulerException("Job dependencies are not allowed to be cyclic.");
+
+            path.add(dep);
+            onPath.put(dep, Boolean.TRUE);
+            pending.add(dep.dependencies());
         }
+        return allChecked;
     }
-    
+
     /**
      * Executes the job. Makes sure that all dependencies are met. 
      * 
@@ -255,9 +323,11 @@ public abstract class Job implements Comparable<Job> {
         if (m_scheduler != null) {
             throw new SchedulerException("This job is already enqueued in a scheduler.");
         }
+        boolean checked = checkAcyclic();
         aboutToBeEnqueued(s);
         m_state = State.Queued;
         m_scheduler = s;
+        m_acyclic = checked;
     }
 
     /**
@@ -290,17 +360,8 @@ public abstract class Job implements Comparable<Job> {
      */
     public final List<Job> dependencies() {
         if (m_dependencies == null)
-            return Collections.EMPTY_LIST;
-        
-        List<Job> result = new LinkedList<Job>();
-        synchronized (m_dependencies) {
-            for (Pair<Job,Job> p: m_dependencies) {
-                if (p.second == this) {
-                    result.add(p.first);
-                }
-            }
-        }
-        return result;
+            return new ArrayList<Job>(0);
+        return new ArrayList<Job>(m_dependencies);
     }
 
     /**
@@ -344,15 +405,7 @@ public abstract class Job implements Comparable<Job> {
      * @return true, when all dependencies are met.
      */
     public boolean canExecute() {
-        final List<Job> deps = dependencies();
-        Iterator<Job> it = deps.iterator();
-        while (it.hasNext()) {
-            Job j = it.next();
-            if (j.state() != State.Finished && j.state() != State.Error) {
-                return false;
-            }
-        }
-        return true;
+        return m_pending.get() == 0;
     }
     
     /**
@@ -391,33 +444,23 @@ public abstract class Job implements Comparable<Job> {
 
         m_state = s;
 
-        if ((m_state == State.Finished || m_state == State.Error) && m_dependencies != null) {
-            // remove the job from the dependency list
-            List<Job> unblockedJobs = new LinkedList<Job>();
-            synchronized (m_dependencies) {
-                List<Pair<Job,Job>> doomed = new LinkedList<Pair<Job,Job>>();
-                for (Pair<Job,Job> p: m_dependencies) {
-                    if (p.first == this) {
-                        doomed.add(p);
-                        unblockedJobs.add(p.second);
-                    }
-                }
-                m_dependencies.removeAll(doomed);
+        if (m_state == State.Finished || m_state == State.Error) {
+            Set<Job> dependees;
+            synchronized (m_depLock) {
+                m_done = true;
+                dependees = m_dependees;
+                m_dependees = null;
             }
-            /* tell all jobs depending on the now finished on to forward that
-             * to the scheduler
+            /* 
+             * Remove the job from the dependencies of all jobs depending on
+             * it and hand the ones that can now run over to the scheduler
              */
-            for (Job j: unblockedJobs) {
-                j.callDependenciesChanged();
-            }
-        }
-        
-        if ((m_state == State.Finished || m_state == State.Error) && m_dependees != null) {
-            synchronized (m_dependees) {
-                for (Job p: m_dependees) {
-                    p.callDependenciesChanged();
+            if (dependees != null) {
+                for (Job j : dependees) {
+                    j.m_dependencies.remove(this);
+                    if (j.m_pending.decrementAndGet() == 0)
+                        j.callDependenciesChanged();
                 }
-                m_dependees.clear();
             }
         }
 
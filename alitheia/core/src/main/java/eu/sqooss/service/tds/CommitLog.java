@@ -42,7 +42,11 @@ package eu.sqooss.service.tds;
  * 
  * Even if its functionality is simple, this interface is provided in order to
  * allow implementations to configure the log retrieval strategy (on-request or
- * one-off) for themselves.
+ * one-off) for themselves. Logs can span the full history of a project, so
+ * implementations should retrieve entries as they are iterated over and 
+ * should not hold on to the entries already returned. The iterator throws a
+ * {@link CommitLogException} if an entry cannot be retrieved; it never 
+ * returns null entries.
  */
 public interface CommitLog extends Iterable<Revision> {
     /**
@@ -63,8 +67,11 @@ public interface CommitLog extends Iterable<Revision> {
     Revision last();
 
     /**
-     * Return the number of entries in the log
-     * @return the number of entries in the log
+     * Return an estimate of the number of entries in the log, suitable for
+     * progress reporting. The estimate does not require the log entries to
+     * be retrieved, so it may be larger than the number of entries actually
+     * returned by the iterator. 
+     * @return the estimated number of entries in the log
      */
     int size();
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.updater;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.db.StoredProject;
+
+/**
+ * An in-memory map from the revision ids of a project to the ids and 
+ * sequence numbers of the corresponding versions, for use by metadata
+ * updaters during an import. The map is filled with a single query when
+ * created and kept up to date by the updater, so that looking up a version
+ * by revision or finding the previous version do not need a query each.
+ * Versions are loaded by primary key when requested.
+ * 
+ * Instances are not thread safe and must be used from a single thread,
+ * with an active database session.
+ */
+public class VersionIndex {
+
+    private static final String qVersions = "select pv.revisionId, pv.id, pv.sequence " +
+            "from ProjectVersion pv where pv.project = :project";
+
+    private DBService dbs;
+    private Map<String, Entry> byRevision;
+    private TreeMap<Long, Entry> bySequence;
+
+    public VersionIndex(DBService dbs, StoredProject sp) {
+        this.dbs = dbs;
+        this.byRevision = new HashMap<String, Entry>();
+        this.bySequence = new TreeMap<Long, Entry>();
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("project", sp);
+        List<?> rows = dbs.doHQL(qVersions, params);
+        for (Object row : rows) {
+            Object[] r = (Object[]) row;
+            put((String) r[0], ((Number) r[1]).longValue(), 
+                    ((Number) r[2]).longValue());
+        }
+    }
+
+    /**
+     * Record a version stored by the updater. The version must have been 
+     * added to the database session and its sequence set.
+     */
+    public void add(ProjectVersion pv) {
+        put(pv.getRevisionId(), pv.getId(), pv.getSequence());
+    }
+
+    /**
+     * Forget a version whose addition was rolled back.
+     */
+    public void remove(ProjectVersion pv) {
+        Entry e = byRevision.remove(pv.getRevisionId());
+        if (e != null)
+            bySequence.remove(e.sequence);
+    }
+
+    public boolean contains(String revisionId) {
+        return byRevision.containsKey(revisionId);
+    }
+
+    /**
+     * @return The version for the provided revision, or null if the 
+     * revision has not been imported
+     */
+    public ProjectVersion getVersion(String revisionId) {
+        return load(byRevision.get(revisionId));
+    }
+
+    /**
+     * @return The version with the highest sequence number, or null if no
+     * versions have been imported
+     */
+    public ProjectVersion getLastVersion() {
+        return load(bySequence.isEmpty() ? null : bySequence.lastEntry().getValue());
+    }
+
+    /**
+     * @return The sequence of the last imported version, or -1 if no
+     * versions have been imported
+     */
+    public long getLastSequence() {
+        return bySequence.isEmpty() ? -1 : bySequence.lastKey();
+    }
+
+    /**
+     * Equivalent to {@link ProjectVersion#getPreviousVersion()}.
+     */
+    public ProjectVersion getPreviousVersion(ProjectVersion pv) {
+        Map.Entry<Long, Entry> e = bySequence.lowerEntry(pv.getSequence());
+        return load(e == null ? null : e.getValue());
+    }
+
+    public int size() {
+        return byRevision.size();
+    }
+
+    private void put(String revisionId, long id, long sequence) {
+        Entry e = new Entry(id, sequence);
+        Entry old = byRevision.put(revisionId, e);
+        if (old != null)
+            bySequence.remove(old.sequence);
+        bySequence.put(sequence, e);
+    }
+
+    private ProjectVersion load(Entry e) {
+        if (e == null)
+            return null;
+        return dbs.findObjectById(ProjectVersion.class, e.id);
+    }
+
+    private static class Entry {
+        final long id;
+        final long sequence;
+
+        Entry(long id, long sequence) {
+            this.id = id;
+            this.sequence = sequence;
+        }
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
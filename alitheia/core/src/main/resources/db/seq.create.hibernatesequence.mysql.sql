@@ -0,0 +1,28 @@
+-- Seeds the pooled sequence that measurement ids are allocated from, when
+-- upgrading a MySQL database whose measurement tables used identity columns.
+-- Run it before starting the upgraded system. Ids are allocated in blocks of
+-- 50: block n holds the ids (n - 1) * 50 + 1 to n * 50, so the next block
+-- starts above the largest measurement id in use.
+
+CREATE TABLE IF NOT EXISTS hibernate_sequence (next_val BIGINT);
+
+DELETE FROM hibernate_sequence;
+
+INSERT INTO hibernate_sequence (next_val)
+SELECT FLOOR(COALESCE(MAX(id), 0) / 50) + 2 FROM (
+    SELECT MAX(STORED_PROJECT_MEASUREMENT_ID) AS id FROM STORED_PROJECT_MEASUREMENT
+    UNION ALL
+    SELECT MAX(PROJECT_VERSION_MEASUREMENT_ID) FROM PROJECT_VERSION_MEASUREMENT
+    UNION ALL
+    SELECT MAX(PROJECT_FILE_MEASUREMENT_ID) FROM PROJECT_FILE_MEASUREMENT
+    UNION ALL
+    SELECT MAX(MAILMESSAGE_MEASUREMENT_ID) FROM MAILMESSAGE_MEASUREMENT
+    UNION ALL
+    SELECT MAX(ML_THREAD_MEASUREMENT_ID) FROM ML_THREAD_MEASUREMENT
+    UNION ALL
+    SELECT MAX(NAMESPACE_MEASUREMENT_ID) FROM NAMESPACE_MEASUREMENT
+    UNION ALL
+    SELECT MAX(EXECUTION_UNIT_MEASUREMENT_ID) FROM EXECUTION_UNIT_MEASUREMENT
+    UNION ALL
+    SELECT MAX(ENCAPSULATION_UNIT_MEASUREMENT_ID) FROM ENCAPSULATION_UNIT_MEASUREMENT
+) ids;
@@ -0,0 +1,128 @@
+package eu.sqooss.test.service.abstractmetric;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.impl.service.logging.LogManagerImpl;
+import eu.sqooss.service.abstractmetric.AbstractMetric;
+import eu.sqooss.service.abstractmetric.AlreadyProcessingException;
+import eu.sqooss.service.abstractmetric.MetricDecl;
+import eu.sqooss.service.abstractmetric.MetricDeclarations;
+import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.db.DAObject;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.db.StoredProject;
+import eu.sqooss.service.metricactivator.MetricActivator;
+
+public class ClaimTest {
+
+    static MetricActivator ma;
+
+    @BeforeClass
+    public static void setUp() {
+        AlitheiaCore core = mock(AlitheiaCore.class);
+        ma = mock(MetricActivator.class);
+        when(core.getLogManager()).thenReturn(new LogManagerImpl(true));
+        when(core.getMetricActivator()).thenReturn(ma);
+        Whitebox.setInternalState(AlitheiaCore.class, "instance", core);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        Whitebox.setInternalState(AlitheiaCore.class, "instance", (AlitheiaCore) null);
+    }
+
+    @Test
+    public void testClaims() throws Exception {
+        Nested n = new Nested();
+        StoredProject sp = new StoredProject();
+        sp.setId(42);
+
+        assertEquals(1, n.getResult(sp, n.metrics()).size());
+        /* The project was claimed, a version with the same id was not */
+        assertTrue(n.nested instanceof AlreadyProcessingException);
+        verify(ma).runMetric(any(DAObject.class), eq(n));
+        assertTrue(n.measured.contains(ProjectVersion.class));
+
+        /* Claims are released, proxies share the claim of their DAO */
+        n.measured.clear();
+        n.nested = null;
+        StoredProject proxy = new StoredProject() {};
+        proxy.setId(42);
+        assertEquals(1, n.getResult(proxy, n.metrics()).size());
+        assertTrue(n.nested instanceof AlreadyProcessingException);
+        verify(ma, times(2)).runMetric(any(DAObject.class), eq(n));
+    }
+
+    @MetricDeclarations(metrics = {
+        @MetricDecl(mnemonic = "NESTED", activators = {StoredProject.class, 
+                ProjectVersion.class}, descr = "")
+    })
+    public static class Nested extends AbstractMetric {
+        Set<Class<?>> measured = new HashSet<Class<?>>();
+        Exception nested;
+
+        public Nested() {
+            super(null);
+        }
+
+        List<Metric> metrics() {
+            Metric m = new Metric();
+            m.setMnemonic("NESTED");
+            List<Metric> l = new ArrayList<Metric>();
+            l.add(m);
+            return l;
+        }
+
+        public List<Result> getResult(StoredProject sp, Metric m) {
+            return result(sp, StoredProject.class, m);
+        }
+
+        public List<Result> getResult(ProjectVersion pv, Metric m) {
+            return result(pv, ProjectVersion.class, m);
+        }
+
+        private List<Result> result(DAObject o, Class<?> type, Metric m) {
+            List<Result> r = new ArrayList<Result>();
+            if (measured.contains(type))
+                r.add(new Result(o, m, 1, Result.ResultType.INTEGER));
+            return r;
+        }
+
+        public void run(StoredProject sp) throws Exception {
+            StoredProject same = new StoredProject();
+            same.setId(sp.getId());
+            try {
+                getResult(same, metrics());
+            } catch (AlreadyProcessingException e) {
+                nested = e;
+            }
+            ProjectVersion pv = new ProjectVersion();
+            pv.setId(sp.getId());
+            getResult(pv, metrics());
+            measured.add(StoredProject.class);
+        }
+
+        public void run(ProjectVersion pv) {
+            measured.add(ProjectVersion.class);
+        }
+    }
+}
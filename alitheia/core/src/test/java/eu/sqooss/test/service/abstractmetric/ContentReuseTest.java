@@ -0,0 +1,161 @@
+package eu.sqooss.test.service.abstractmetric;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import eu.sqooss.service.abstractmetric.AbstractMetric;
+import eu.sqooss.service.abstractmetric.MetricDecl;
+import eu.sqooss.service.abstractmetric.MetricDeclarations;
+import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.db.DAObject;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.Directory;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.MetricType;
+import eu.sqooss.service.db.Plugin;
+import eu.sqooss.service.db.ProjectFile;
+import eu.sqooss.service.db.ProjectFileMeasurement;
+import eu.sqooss.service.db.ProjectFileState;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.db.StoredProject;
+import eu.sqooss.test.service.db.TestDatabase;
+
+public class ContentReuseTest {
+
+    static DBService db;
+    static ProjectVersion pv;
+
+    @BeforeClass
+    public static void setUp() {
+        db = TestDatabase.create("reuse");
+        TestDatabase.mockCore(db);
+
+        db.startDBSession();
+        Plugin plugin = new Plugin();
+        plugin.setName("reuse");
+        plugin.setInstalldate(new Date());
+        plugin.setHashcode("reuse");
+        db.addRecord(plugin);
+        for (String mnemonic : new String[] {"LEN", "CHARS"}) {
+            Metric m = new Metric();
+            m.setPlugin(plugin);
+            m.setMetricType(new MetricType(MetricType.Type.SOURCE_FILE));
+            m.setMnemonic(mnemonic);
+            m.setDescription(mnemonic);
+            db.addRecord(m);
+        }
+        StoredProject sp = new StoredProject("reuse");
+        db.addRecord(sp);
+        pv = new ProjectVersion(sp);
+        pv.setRevisionId("1");
+        pv.setTimestamp(1);
+        pv.setSequence(1);
+        db.addRecord(pv);
+        db.commitDBSession();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        TestDatabase.resetCore();
+    }
+
+    @Test
+    public void testCopyIdenticalContent() throws Exception {
+        db.startDBSession();
+        ProjectFile a = file("/a", "x.c", "h1");
+        ProjectFile moved = file("/b", "x.c", "h1");
+        ProjectFile renamed = file("/a", "y.c", "h1");
+        ProjectFile changed = file("/b", "x.c", "h2");
+        ProjectFile unknown = file("/c", "x.c", null);
+
+        /* Through run(DAObject), as the metric activator does */
+        Length len = new Length();
+        len.run((DAObject) a);
+        assertEquals(1, len.runs);
+        len.run((DAObject) moved);
+        assertEquals(1, len.runs);
+        assertEquals("x.c", result(moved, "LEN"));
+        assertEquals("3", result(moved, "CHARS"));
+
+        len.run((DAObject) renamed);
+        len.run((DAObject) changed);
+        len.run((DAObject) unknown);
+        assertEquals(4, len.runs);
+        db.commitDBSession();
+    }
+
+    @Test
+    public void testOnlyContentMetricsCopied() throws Exception {
+        db.startDBSession();
+        ProjectFile a = file("/a", "z.c", "h3");
+        ProjectFile b = file("/b", "z.c", "h3");
+
+        Path path = new Path();
+        path.run((DAObject) a);
+        path.run((DAObject) b);
+        assertEquals(2, path.runs);
+        db.commitDBSession();
+    }
+
+    private String result(ProjectFile pf, String mnemonic) {
+        for (ProjectFileMeasurement m : measurements(pf))
+            if (m.getMetric().getMnemonic().equals(mnemonic))
+                return m.getResult();
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<ProjectFileMeasurement> measurements(ProjectFile pf) {
+        return (List<ProjectFileMeasurement>) db.doHQL(
+                "from ProjectFileMeasurement pfm where pfm.projectFile.id = "
+                + pf.getId());
+    }
+
+    private ProjectFile file(String dir, String name, String hash) {
+        ProjectFile pf = new ProjectFile(pv);
+        pf.setName(name);
+        pf.setDir(Directory.getDirectory(dir, true));
+        pf.setState(ProjectFileState.added());
+        pf.setContentHash(hash);
+        db.addRecord(pf);
+        return pf;
+    }
+
+    @MetricDeclarations(metrics = {
+        @MetricDecl(mnemonic = "LEN", activators = {ProjectFile.class}, descr = "", contentOnly = true),
+        @MetricDecl(mnemonic = "CHARS", activators = {ProjectFile.class}, descr = "", contentOnly = true)
+    })
+    public static class Length extends AbstractMetric {
+        int runs;
+
+        public Length() {
+            super(null);
+        }
+
+        public List<Result> getResult(ProjectFile pf, Metric m) {
+            return getResult(pf, ProjectFileMeasurement.class, m, Result.ResultType.STRING);
+        }
+
+        public void run(ProjectFile pf) {
+            runs++;
+            db.addRecord(new ProjectFileMeasurement(
+                    Metric.getMetricByMnemonic("LEN"), pf, pf.getName()));
+            db.addRecord(new ProjectFileMeasurement(Metric.getMetricByMnemonic("CHARS"),
+                    pf, String.valueOf(pf.getName().length())));
+        }
+    }
+
+    /* Declares a file metric that depends on more than the contents */
+    @MetricDeclarations(metrics = {
+        @MetricDecl(mnemonic = "LEN", activators = {ProjectFile.class}, descr = "", contentOnly = true),
+        @MetricDecl(mnemonic = "CHARS", activators = {ProjectFile.class}, descr = "")
+    })
+    public static class Path extends Length {
+    }
+}
@@ -0,0 +1,113 @@
+package eu.sqooss.test.service.abstractmetric;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.impl.service.logging.LogManagerImpl;
+import eu.sqooss.service.abstractmetric.AbstractMetric;
+import eu.sqooss.service.abstractmetric.AlreadyProcessingException;
+import eu.sqooss.service.abstractmetric.MetricDecl;
+import eu.sqooss.service.abstractmetric.MetricDeclarations;
+import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.db.DAObject;
+import eu.sqooss.service.db.Developer;
+import eu.sqooss.service.db.MailMessage;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.MetricType;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.db.StoredProject;
+
+public class DispatchTest {
+
+    @BeforeClass
+    public static void setUp() {
+        AlitheiaCore core = mock(AlitheiaCore.class);
+        when(core.getLogManager()).thenReturn(new LogManagerImpl(true));
+        Whitebox.setInternalState(AlitheiaCore.class, "instance", core);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        Whitebox.setInternalState(AlitheiaCore.class, "instance", (AlitheiaCore) null);
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        Counter c = new Counter();
+        c.run((DAObject) new StoredProject());
+        /* Subclasses of activators, such as Hibernate proxies */
+        c.run((DAObject) new StoredProject() {});
+        assertEquals(2, c.runs);
+
+        /* No run(MailMessage), logged and ignored */
+        c.run((DAObject) new MailMessage());
+        assertEquals(2, c.runs);
+
+        try {
+            c.run((DAObject) new ProjectVersion());
+            fail();
+        } catch (AlreadyProcessingException e) {
+        }
+        try {
+            c.run((DAObject) new Developer());
+            fail();
+        } catch (Exception e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testGetResult() throws Exception {
+        Counter c = new Counter();
+        Metric m = new Metric();
+        m.setMnemonic("COUNT");
+        m.setMetricType(new MetricType(MetricType.Type.PROJECT_VERSION));
+        List<Metric> l = Collections.singletonList(m);
+        assertEquals(1, c.getResultIfAlreadyCalculated(new StoredProject(), l).size());
+        assertEquals(1, c.getResultIfAlreadyCalculated(new StoredProject() {}, l).size());
+        assertEquals(0, c.getResultIfAlreadyCalculated(new ProjectVersion(), l).size());
+    }
+
+    @MetricDeclarations(metrics = {
+        @MetricDecl(mnemonic = "COUNT", activators = {StoredProject.class, 
+                ProjectVersion.class, Developer.class}, descr = "")
+    })
+    public static class Counter extends AbstractMetric {
+        int runs;
+
+        public Counter() {
+            super(null);
+        }
+
+        public List<Result> getResult(StoredProject sp, Metric m) {
+            List<Result> r = new ArrayList<Result>();
+            r.add(new Result(sp, m, runs, Result.ResultType.INTEGER));
+            return r;
+        }
+
+        public void run(StoredProject sp) {
+            runs++;
+        }
+
+        public void run(ProjectVersion pv) throws Exception {
+            throw Whitebox.invokeConstructor(AlreadyProcessingException.class);
+        }
+
+        public void run(Developer d) {
+            throw new IllegalStateException();
+        }
+    }
+}
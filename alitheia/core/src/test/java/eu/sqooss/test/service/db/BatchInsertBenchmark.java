@@ -0,0 +1,128 @@
+package eu.sqooss.test.service.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import eu.sqooss.impl.service.db.DBServiceImpl;
+import eu.sqooss.impl.service.db.PooledConnectionProvider;
+import eu.sqooss.impl.service.logging.LogManagerImpl;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.MetricType;
+import eu.sqooss.service.db.Plugin;
+import eu.sqooss.service.db.StoredProject;
+import eu.sqooss.service.db.StoredProjectMeasurement;
+import eu.sqooss.service.logging.Logger;
+
+/**
+ * Compares storing measurements one by one against storing them with
+ * {@link DBService#addRecordsBatched(List, int)} on an in-memory H2
+ * database. Prints the insert rate of both approaches.
+ */
+public class BatchInsertBenchmark {
+
+    static final int ROWS = 2000;
+
+    static Logger l;
+    static URL config;
+
+    @BeforeClass
+    public static void setUp() {
+        l = new LogManagerImpl(true).createLogger("sqooss.database");
+        config = BatchInsertBenchmark.class.getResource("/hibernate.cfg.xml");
+    }
+
+    @Test
+    public void testBatchedInsert() {
+        DBService single = createDB("single", "0");
+        long start = System.nanoTime();
+        Metric m = setUpMetric(single);
+        for (StoredProjectMeasurement spm : measurements(single, m))
+            assertTrue(single.addRecord(spm));
+        single.commitDBSession();
+        long singleTime = System.nanoTime() - start;
+        assertEquals(ROWS, count(single));
+
+        DBService batched = createDB("batched", "50");
+        start = System.nanoTime();
+        m = setUpMetric(batched);
+        assertTrue(batched.addRecordsBatched(measurements(batched, m), 50));
+        batched.commitDBSession();
+        long batchedTime = System.nanoTime() - start;
+        assertEquals(ROWS, count(batched));
+
+        l.info("One by one: " + rate(singleTime) + " rows/sec");
+        l.info("Batched:    " + rate(batchedTime) + " rows/sec");
+        l.info("Connection pool: " + batched.getConnectionPoolStats());
+    }
+
+    private DBService createDB(String name, String batchSize) {
+        Properties p = new Properties();
+        p.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        p.setProperty("hibernate.connection.url", "jdbc:h2:mem:" + name);
+        p.setProperty("hibernate.connection.username", "sa");
+        p.setProperty("hibernate.connection.password", "");
+        p.setProperty("hibernate.connection.dialect", "org.hibernate.dialect.H2Dialect");
+        p.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        p.setProperty("hibernate.connection.provider_class",
+                PooledConnectionProvider.class.getName());
+        p.setProperty("hibernate.jdbc.batch_size", batchSize);
+        return new DBServiceImpl(p, config, l);
+    }
+
+    private Metric setUpMetric(DBService db) {
+        db.startDBSession();
+        Plugin p = new Plugin();
+        p.setName("benchmark");
+        p.setInstalldate(new Date());
+        p.setVersion("1");
+        p.setActive(true);
+        p.setHashcode("benchmark");
+        db.addRecord(p);
+
+        Metric m = new Metric();
+        m.setPlugin(p);
+        m.setMetricType(new MetricType(MetricType.Type.PROJECT));
+        m.setMnemonic("BENCH");
+        m.setDescription("Benchmark metric");
+        db.addRecord(m);
+        return m;
+    }
+
+    private List<StoredProjectMeasurement> measurements(DBService db, Metric m) {
+        StoredProject sp = new StoredProject();
+        sp.setName("benchmark");
+        db.addRecord(sp);
+
+        List<StoredProjectMeasurement> result =
+            new ArrayList<StoredProjectMeasurement>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            StoredProjectMeasurement spm = new StoredProjectMeasurement();
+            spm.setMetric(m);
+            spm.setStoredProject(sp);
+            spm.setResult(String.valueOf(i));
+            result.add(spm);
+        }
+        return result;
+    }
+
+    private long count(DBService db) {
+        db.startDBSession();
+        List<?> r = db.doHQL("select count(*) from StoredProjectMeasurement");
+        db.commitDBSession();
+        return (Long) r.get(0);
+    }
+
+    private long rate(long nanos) {
+        return ROWS * 1000000000L / Math.max(nanos, 1);
+    }
+}
@@ -0,0 +1,56 @@
+package eu.sqooss.test.service.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Properties;
+
+import org.hibernate.cache.Cache;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.UpdateTimestampsCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.sqooss.impl.service.db.BoundedCacheProvider;
+
+public class BoundedCacheProviderTest {
+
+    BoundedCacheProvider cp;
+
+    @Before
+    public void setUp() throws Exception {
+        Properties p = new Properties();
+        p.setProperty(BoundedCacheProvider.MAX_ENTRIES, "2");
+        cp = new BoundedCacheProvider();
+        cp.start(p);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        Cache c = cp.buildCache("eu.sqooss.service.db.Metric", new Properties());
+        c.put(1, "a");
+        c.put(2, "b");
+        assertEquals("a", c.get(1));
+        c.put(3, "c");
+
+        assertEquals(2, c.getElementCountInMemory());
+        assertNull(c.get(2));
+        assertEquals("a", c.get(1));
+        assertEquals("c", c.get(3));
+    }
+
+    @Test
+    public void testTimestampsNotBounded() {
+        Cache c = cp.buildCache(UpdateTimestampsCache.REGION_NAME, new Properties());
+        for (int i = 0; i < 10; i++)
+            c.put(i, Long.valueOf(i));
+        assertEquals(10, c.getElementCountInMemory());
+    }
+
+    @Test(expected = CacheException.class)
+    public void testInvalidSize() {
+        Properties p = new Properties();
+        p.setProperty(BoundedCacheProvider.MAX_ENTRIES, "0");
+        new BoundedCacheProvider().start(p);
+    }
+}
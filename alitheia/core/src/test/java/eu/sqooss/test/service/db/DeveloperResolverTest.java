@@ -0,0 +1,82 @@
+package eu.sqooss.test.service.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.Developer;
+import eu.sqooss.service.db.DeveloperResolver;
+import eu.sqooss.service.db.StoredProject;
+
+public class DeveloperResolverTest {
+
+    static DBService db;
+    static StoredProject sp;
+
+    @BeforeClass
+    public static void setUp() {
+        db = TestDatabase.create("developers");
+        TestDatabase.mockCore(db);
+
+        db.startDBSession();
+        sp = new StoredProject("developers");
+        db.addRecord(sp);
+        Developer.getDeveloperByEmail("smurf@smurfvillage.com", sp, true)
+            .setName("Papa Smurf");
+        Developer.getDeveloperByUsername("gargamel", sp, true);
+        db.commitDBSession();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        TestDatabase.resetCore();
+    }
+
+    @Test
+    public void testResolve() {
+        db.startDBSession();
+        DeveloperResolver r = new DeveloperResolver(db, sp);
+        int size = r.size();
+
+        Developer d = r.getDeveloperByEmail("smurf@smurfvillage.com", false);
+        assertNotNull(d);
+        assertEquals(d, r.getDeveloperByName("Papa Smurf", false));
+        assertNotNull(r.getDeveloperByUsername("gargamel", false));
+        assertNull(r.getDeveloperByUsername("azrael", false));
+
+        /* New developers are recorded when created */
+        Developer azrael = r.getDeveloperByUsername("azrael", true);
+        assertEquals(size + 1, r.size());
+        assertEquals(azrael, r.getDeveloperByUsername("azrael", false));
+        assertEquals(azrael, Developer.getDeveloperByUsername("azrael", sp, false));
+        db.rollbackDBSession();
+
+        /* Rolled back creations are not returned */
+        db.startDBSession();
+        assertNull(r.getDeveloperByUsername("azrael", false));
+        assertEquals(size, r.size());
+        db.rollbackDBSession();
+    }
+
+    @Test
+    public void testCreateByName() {
+        db.startDBSession();
+        DeveloperResolver r = new DeveloperResolver(db, sp);
+        Developer d = r.getDeveloperByName("Brainy Smurf", true);
+        db.commitDBSession();
+
+        db.startDBSession();
+        List<?> l = db.doHQL("from Developer d where d.name = 'Brainy Smurf'");
+        assertEquals(1, l.size());
+        assertEquals(d.getId(), ((Developer) l.get(0)).getId());
+        assertEquals(d.getId(), Developer.getDeveloperByName("Brainy Smurf", sp, false).getId());
+        db.rollbackDBSession();
+    }
+}
@@ -0,0 +1,169 @@
+package eu.sqooss.test.service.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.Directory;
+import eu.sqooss.service.db.ProjectFile;
+import eu.sqooss.service.db.ProjectFileState;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.db.SchemaMigration;
+import eu.sqooss.service.db.StoredProject;
+
+public class FileIntervalIndexTest {
+
+    static final String DB = "interval";
+    static DBService db;
+    static long[] versions = new long[3];
+
+    @BeforeClass
+    public static void setUp() {
+        db = TestDatabase.create(DB);
+        TestDatabase.mockCore(db);
+
+        /*
+         * r1: add a, b
+         * r2: modify a
+         * r3: delete b, add c
+         */
+        db.startDBSession();
+        StoredProject sp = new StoredProject("interval");
+        db.addRecord(sp);
+        ProjectVersion v1 = version(sp, 1);
+        ProjectVersion v2 = version(sp, 2);
+        ProjectVersion v3 = version(sp, 3);
+        Directory d = Directory.getDirectory("/", true);
+
+        ProjectFile a1 = file(v1, d, "a", ProjectFileState.added());
+        ProjectFile b1 = file(v1, d, "b", ProjectFileState.added());
+        file(v2, d, "a", ProjectFileState.modified());
+        a1.setValidUntil(v1);
+        ProjectFile b3 = file(v3, d, "b", ProjectFileState.deleted());
+        b3.setValidUntil(v3);
+        b1.setValidUntil(v2);
+        file(v3, d, "c", ProjectFileState.added());
+        db.commitDBSession();
+
+        versions[0] = v1.getId();
+        versions[1] = v2.getId();
+        versions[2] = v3.getId();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        TestDatabase.resetCore();
+    }
+
+    @Test
+    public void testLiveFiles() {
+        assertFiles();
+    }
+
+    @Test
+    public void testFillIndex() throws Exception {
+        Connection c = TestDatabase.connect(DB);
+        c.createStatement().executeUpdate("update PROJECT_FILE set PROJECT_ID = null,"
+                + " VALID_FROM_SEQUENCE = null, VALID_UNTIL_SEQUENCE = null"
+                + " where PROJECT_VERSION_ID in (" + versions[0] + ", " 
+                + versions[1] + ", " + versions[2] + ")");
+        c.close();
+
+        db.startDBSession();
+        assertEquals(5, ProjectFile.fillIntervalIndex(db));
+        assertEquals(0, ProjectFile.fillIntervalIndex(db));
+        db.commitDBSession();
+
+        db.startDBSession();
+        assertFalse(SchemaMigration.isApplied(db, "interval-test"));
+        SchemaMigration.markApplied(db, "interval-test");
+        assertTrue(SchemaMigration.isApplied(db, "interval-test"));
+        db.commitDBSession();
+
+        assertFiles();
+    }
+
+    @Test
+    public void testCloseIntervals() {
+        /*
+         * r1: add x, y
+         * r2: modify x, delete y
+         */
+        db.startDBSession();
+        StoredProject sp = new StoredProject("close");
+        db.addRecord(sp);
+        ProjectVersion v1 = version(sp, 1);
+        ProjectVersion v2 = version(sp, 2);
+        Directory d = Directory.getDirectory("/", true);
+        ProjectFile x1 = file(v1, d, "x", ProjectFileState.added());
+        file(v1, d, "y", ProjectFileState.added());
+        assertEquals(0, ProjectFile.closeValidityIntervals(v1, null));
+        ProjectFile x2 = file(v2, d, "x", ProjectFileState.modified());
+        file(v2, d, "y", ProjectFileState.deleted()).setValidUntil(v2);
+        assertEquals(2, ProjectFile.closeValidityIntervals(v2, v1));
+        assertEquals(0, ProjectFile.closeValidityIntervals(v2, v1));
+        
+        /* The session copy is updated too; flushing it keeps the interval */
+        assertEquals(v1, x1.getValidUntil());
+        x1.setContentHash("x1");
+        assertEquals(Long.valueOf(x1.getId()), x2.getPreviousFileId());
+        db.commitDBSession();
+
+        db.startDBSession();
+        assertEquals("[x@1, y@1]", names(v1.getId()));
+        assertEquals("[x@2]", names(v2.getId()));
+        db.commitDBSession();
+    }
+
+    private void assertFiles() {
+        db.startDBSession();
+        assertEquals("[a@1, b@1]", names(versions[0]));
+        assertEquals("[a@2, b@1]", names(versions[1]));
+        assertEquals("[a@2, c@3]", names(versions[2]));
+
+        ProjectVersion v3 = db.findObjectById(ProjectVersion.class, versions[2]);
+        assertEquals(2, v3.getFiles(Directory.getDirectory("/", false),
+                ProjectVersion.MASK_FILES).size());
+        assertEquals(0, v3.getFiles(Directory.getDirectory("/", false),
+                ProjectVersion.MASK_DIRECTORIES).size());
+        db.commitDBSession();
+    }
+
+    private String names(long versionId) {
+        ProjectVersion pv = db.findObjectById(ProjectVersion.class, versionId);
+        List<String> names = new ArrayList<String>();
+        for (ProjectFile pf : pv.getFiles())
+            names.add(pf.getName() + "@" + pf.getProjectVersion().getSequence());
+        Collections.sort(names);
+        return names.toString();
+    }
+
+    private static ProjectVersion version(StoredProject sp, int seq) {
+        ProjectVersion pv = new ProjectVersion(sp);
+        pv.setRevisionId(String.valueOf(seq));
+        pv.setTimestamp(seq);
+        pv.setSequence(seq);
+        db.addRecord(pv);
+        return pv;
+    }
+
+    private static ProjectFile file(ProjectVersion pv, Directory d,
+            String name, ProjectFileState state) {
+        ProjectFile pf = new ProjectFile(pv);
+        pf.setName(name);
+        pf.setDir(d);
+        pf.setState(state);
+        db.addRecord(pf);
+        return pf;
+    }
+}
@@ -0,0 +1,164 @@
+package eu.sqooss.test.service.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Connection;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.Directory;
+import eu.sqooss.service.db.ProjectFile;
+import eu.sqooss.service.db.ProjectFileState;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.db.StoredProject;
+
+public class FileLineageTest {
+
+    static final String DB = "lineage";
+    static DBService db;
+    static long[] versions = new long[3];
+
+    @BeforeClass
+    public static void setUp() {
+        db = TestDatabase.create(DB);
+        TestDatabase.mockCore(db);
+
+        /*
+         * r1: add a, b, c
+         * r2: modify a, copy c to d, modify c
+         * r3: delete b
+         */
+        db.startDBSession();
+        StoredProject sp = new StoredProject("lineage");
+        db.addRecord(sp);
+        ProjectVersion v1 = version(sp, 1);
+        ProjectVersion v2 = version(sp, 2);
+        ProjectVersion v3 = version(sp, 3);
+        Directory d = Directory.getDirectory("/", true);
+
+        file(v1, d, "a", ProjectFileState.added());
+        file(v1, d, "b", ProjectFileState.added());
+        ProjectFile c1 = file(v1, d, "c", ProjectFileState.added());
+        file(v2, d, "a", ProjectFileState.modified());
+        ProjectFile d2 = file(v2, d, "d", ProjectFileState.added());
+        d2.setCopyFrom(c1);
+        d2.setPreviousFileVersion(c1);
+        file(v2, d, "c", ProjectFileState.modified());
+        ProjectFile.closeValidityIntervals(v2, v1);
+        file(v3, d, "b", ProjectFileState.deleted());
+        ProjectFile.closeValidityIntervals(v3, v2);
+        db.commitDBSession();
+
+        versions[0] = v1.getId();
+        versions[1] = v2.getId();
+        versions[2] = v3.getId();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        TestDatabase.resetCore();
+    }
+
+    @Test
+    public void testPreviousVersion() throws Exception {
+        db.startDBSession();
+        ProjectFile b3 = file(versions[2], "b");
+        ProjectFile b1 = b3.getPreviousFileVersion();
+        assertEquals(versions[0], b1.getProjectVersion().getId());
+        assertNull(b1.getPreviousFileVersion());
+        db.commitDBSession();
+
+        /* The link is stored, the lookup no longer depends on names */
+        Connection c = TestDatabase.connect(DB);
+        c.createStatement().executeUpdate("update PROJECT_FILE set FILE_NAME = 'x'"
+                + " where PROJECT_FILE_ID = " + b1.getId());
+        c.close();
+
+        db.startDBSession();
+        b3 = db.findObjectById(ProjectFile.class, b3.getId());
+        assertEquals(b1.getId(), b3.getPreviousFileVersion().getId());
+        assertEquals(b3.getId(), db.findObjectById(ProjectFile.class,
+                b1.getId()).getNextFileVersion().getId());
+        assertNull(b3.getNextFileVersion());
+        db.commitDBSession();
+    }
+
+    @Test
+    public void testCopySuccessor() {
+        db.startDBSession();
+        ProjectFile c1 = file(versions[0], "c");
+        ProjectFile c2 = file(versions[1], "c");
+        assertEquals(c2.getId(), c1.getNextFileVersion().getId());
+        assertEquals(c1.getId(), c2.getPreviousFileVersion().getId());
+        assertNull(file(versions[1], "d").getNextFileVersion());
+        db.commitDBSession();
+    }
+
+    @Test
+    public void testUnlinked() throws Exception {
+        db.startDBSession();
+        ProjectFile a2 = file(versions[1], "a");
+        db.commitDBSession();
+        
+        /* Rows imported before the chain was recorded */
+        Connection c = TestDatabase.connect(DB);
+        c.createStatement().executeUpdate("update PROJECT_FILE set PREVIOUS_FILE_ID = null"
+                + " where PROJECT_FILE_ID = " + a2.getId());
+        c.close();
+
+        /* Looking up the previous version does not write the link */
+        db.startDBSession();
+        a2 = file(versions[1], "a");
+        ProjectFile a1 = a2.getPreviousFileVersion();
+        assertEquals(versions[0], a1.getProjectVersion().getId());
+        assertNull(a2.getPreviousFileId());
+        assertNull(a1.getNextFileVersion());
+        db.commitDBSession();
+        
+        db.startDBSession();
+        assertNull(file(versions[1], "a").getPreviousFileId());
+        db.commitDBSession();
+    }
+
+    @Test
+    public void testFileModifications() {
+        db.startDBSession();
+        List<ProjectFile> mods = ProjectFile.getFileModifications(file(versions[1], "a"));
+        assertEquals(2, mods.size());
+        assertEquals(versions[0], mods.get(0).getProjectVersion().getId());
+        assertEquals(versions[1], mods.get(1).getProjectVersion().getId());
+        db.commitDBSession();
+    }
+
+    private ProjectFile file(long versionId, String name) {
+        ProjectVersion pv = db.findObjectById(ProjectVersion.class, versionId);
+        for (ProjectFile pf : pv.getVersionFiles())
+            if (pf.getName().equals(name))
+                return pf;
+        return null;
+    }
+
+    private static ProjectVersion version(StoredProject sp, int seq) {
+        ProjectVersion pv = new ProjectVersion(sp);
+        pv.setRevisionId(String.valueOf(seq));
+        pv.setTimestamp(seq);
+        pv.setSequence(seq);
+        db.addRecord(pv);
+        return pv;
+    }
+
+    private static ProjectFile file(ProjectVersion pv, Directory d,
+            String name, ProjectFileState state) {
+        ProjectFile pf = new ProjectFile(pv);
+        pf.setName(name);
+        pf.setDir(d);
+        pf.setState(state);
+        db.addRecord(pf);
+        return pf;
+    }
+}
@@ -0,0 +1,213 @@
+package eu.sqooss.test.service.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import eu.sqooss.impl.service.db.MeasurementStore;
+import eu.sqooss.impl.service.logging.LogManagerImpl;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.MeasurementSeries;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.MetricType;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.db.ProjectVersionMeasurement;
+import eu.sqooss.service.db.StoredProject;
+import eu.sqooss.service.logging.Logger;
+
+public class MeasurementStoreTest {
+
+    static File dir;
+    static Logger logger;
+    static DBService db;
+    static StoredProject sp;
+    static Metric m;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        dir = File.createTempFile("series", "");
+        dir.delete();
+        logger = new LogManagerImpl(true).createLogger("sqooss.database");
+
+        System.setProperty("eu.sqooss.db.measurementstore", 
+                new File(dir, "db").getPath());
+        try {
+            db = TestDatabase.create("series", logger);
+        } finally {
+            System.clearProperty("eu.sqooss.db.measurementstore");
+        }
+        TestDatabase.mockCore(db);
+
+        db.startDBSession();
+        sp = new StoredProject("series");
+        db.addRecord(sp);
+        MetricType mt = new MetricType(MetricType.Type.PROJECT_VERSION);
+        db.addRecord(mt);
+        m = new Metric();
+        m.setMnemonic("SERIES");
+        m.setMetricType(mt);
+        db.addRecord(m);
+        for (int i = 0; i < 3; i++)
+            addMeasurement(i, String.valueOf(i * 10));
+        db.addRecord(new ProjectVersionMeasurement(m, addVersion(3), "n/a"));
+        db.commitDBSession();
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        TestDatabase.resetCore();
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testSeries() {
+        File series = new File(dir, "db/p" + sp.getId() + "/m" + m.getId());
+
+        db.startDBSession();
+        MeasurementSeries s = db.getMeasurementSeries(m, sp);
+        assertArrayEquals(new double[] {0, 10, 20}, s.getValues(), 0);
+        assertEquals(ProjectVersion.getVersionByRevision(sp, "2").getId(), 
+                s.getArtifactIds()[2]);
+        assertTrue(series.isDirectory());
+
+        addMeasurement(4, "40");
+        db.commitDBSession();
+
+        db.startDBSession();
+        addMeasurement(5, "50");
+        db.rollbackDBSession();
+
+        db.startDBSession();
+        assertArrayEquals(new double[] {0, 10, 20, 40}, 
+                db.getMeasurementSeries(m, sp).getValues(), 0);
+        db.commitDBSession();
+    }
+
+    @Test
+    public void testSegments() throws Exception {
+        MeasurementStore store = new MeasurementStore(new File(dir, "segments"), logger);
+        assertNull(store.read(1, 1));
+        int n = MeasurementStore.SEGMENT_SIZE - 1;
+        long[] ids = new long[n];
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i;
+            values[i] = i / 2.0;
+        }
+        store.append(1, 1, 0, 1, 0);
+        assertNull(store.read(1, 1));
+        store.create(new MeasurementSeries(1, 1, ids, values), n);
+        for (int i = n; i < n + 3; i++)
+            store.append(1, 1, i, i + 1, i / 2.0);
+
+        MeasurementSeries s = store.read(1, 1, n + 3, n + 3);
+        assertEquals(n + 3, s.size());
+        for (int i = 0; i < s.size(); i++) {
+            assertEquals(i, s.getArtifactIds()[i]);
+            assertEquals(i / 2.0, s.getValues()[i], 0);
+        }
+
+        store.beginCreate(1, 2);
+        store.stageAppend(1, 2, 7, 7, 7);
+        store.stageAppend(1, 2, 8, 8, 8);
+        store.commit();
+        store.create(new MeasurementSeries(2, 1, new long[] {7}, new double[] {7}), 7);
+        assertArrayEquals(new long[] {7, 8}, store.read(1, 2, 2, 8).getArtifactIds());
+
+        /* Out of date series are dropped */
+        assertNull(store.read(1, 2, 3, 9));
+        assertNull(store.read(1, 2));
+
+        store.stageDrop(1, 2);
+        store.commit();
+        assertNull(store.read(1, 2));
+
+        store.stageDropMetric(1);
+        store.discard();
+        store.commit();
+        assertEquals(n + 3, store.read(1, 1).size());
+        store.stageDropMetric(1);
+        store.commit();
+        assertNull(store.read(1, 1));
+    }
+
+    @Test
+    public void testOutOfDate() {
+        db.startDBSession();
+        Metric stale = new Metric();
+        stale.setMnemonic("STALE");
+        stale.setMetricType(m.getMetricType());
+        db.addRecord(stale);
+        ProjectVersionMeasurement first = addMeasurement(stale, 10, "1");
+        ProjectVersionMeasurement second = addMeasurement(stale, 11, "2");
+        addMeasurement(stale, 12, "3");
+        db.commitDBSession();
+
+        db.startDBSession();
+        assertArrayEquals(new double[] {1, 2, 3}, 
+                db.getMeasurementSeries(stale, sp).getValues(), 0);
+        
+        /* Bulk updates bypass the session and the series */
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("id", first.getId());
+        assertEquals(1, db.executeUpdate(
+                "delete from ProjectVersionMeasurement m where m.id = :id", params));
+        db.commitDBSession();
+
+        db.startDBSession();
+        assertArrayEquals(new double[] {2, 3}, 
+                db.getMeasurementSeries(stale, sp).getValues(), 0);
+        db.findObjectById(ProjectVersionMeasurement.class, 
+                second.getId()).setResult("20");
+        db.commitDBSession();
+
+        db.startDBSession();
+        assertArrayEquals(new double[] {20, 3}, 
+                db.getMeasurementSeries(stale, sp).getValues(), 0);
+        db.commitDBSession();
+    }
+
+    @Test
+    public void testUncleanShutdown() throws Exception {
+        File root = new File(dir, "unclean");
+        MeasurementStore store = new MeasurementStore(root, logger);
+        store.create(new MeasurementSeries(1, 1, new long[] {1}, new double[] {1}), 1);
+        store.close();
+
+        store = new MeasurementStore(root, logger);
+        assertEquals(1, store.read(1, 1).size());
+
+        store = new MeasurementStore(root, logger);
+        assertNull(store.read(1, 1));
+    }
+
+    private static ProjectVersion addVersion(int sequence) {
+        ProjectVersion pv = new ProjectVersion(sp);
+        pv.setRevisionId(String.valueOf(sequence));
+        pv.setSequence(sequence);
+        db.addRecord(pv);
+        return pv;
+    }
+
+    private static ProjectVersionMeasurement addMeasurement(int sequence, String value) {
+        return addMeasurement(m, sequence, value);
+    }
+
+    private static ProjectVersionMeasurement addMeasurement(Metric metric,
+            int sequence, String value) {
+        ProjectVersionMeasurement pvm = 
+            new ProjectVersionMeasurement(metric, addVersion(sequence), value);
+        db.addRecord(pvm);
+        return pvm;
+    }
+}
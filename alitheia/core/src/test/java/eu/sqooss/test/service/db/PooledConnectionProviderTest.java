@@ -0,0 +1,130 @@
+package eu.sqooss.test.service.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.sqooss.impl.service.db.PooledConnectionProvider;
+import eu.sqooss.service.db.ConnectionPoolStats;
+
+public class PooledConnectionProviderTest {
+
+    PooledConnectionProvider cp;
+
+    @Before
+    public void setUp() throws Exception {
+        Properties p = new Properties();
+        p.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        p.setProperty("hibernate.connection.url", "jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1");
+        p.setProperty("hibernate.connection.username", "sa");
+        p.setProperty("hibernate.connection.password", "");
+        p.setProperty("hibernate.connection.pool_size", "2");
+        p.setProperty(PooledConnectionProvider.POOL_TIMEOUT, "100");
+        cp = new PooledConnectionProvider();
+        cp.configure(p);
+
+        Connection c = cp.getConnection();
+        c.createStatement().execute(
+                "create table if not exists T (ID int, VAL varchar(10))");
+        cp.closeConnection(c);
+    }
+
+    @After
+    public void tearDown() {
+        cp.close();
+    }
+
+    @Test
+    public void testConnectionReuse() throws Exception {
+        Connection c = cp.getConnection();
+        cp.closeConnection(c);
+        assertTrue(c.isClosed());
+
+        Connection c2 = cp.getConnection();
+        ConnectionPoolStats s = cp.getStats();
+        assertEquals(1, s.getActiveConnections());
+        assertEquals(0, s.getIdleConnections());
+        cp.closeConnection(c2);
+
+        s = cp.getStats();
+        assertEquals(0, s.getActiveConnections());
+        assertEquals(1, s.getIdleConnections());
+    }
+
+    @Test
+    public void testStatementCache() throws Exception {
+        Connection c = cp.getConnection();
+        for (int i = 0; i < 10; i++) {
+            PreparedStatement ps = c.prepareStatement("insert into T values (?, ?)");
+            assertSame(c, ps.getConnection());
+            ps.setInt(1, i);
+            ps.setString(2, "v" + i);
+            ps.executeUpdate();
+            ps.close();
+            assertTrue(ps.isClosed());
+        }
+
+        /* Same SQL while the first statement is still open */
+        PreparedStatement ps1 = c.prepareStatement("select VAL from T where ID = ?");
+        PreparedStatement ps2 = c.prepareStatement("select VAL from T where ID = ?");
+        ps1.setInt(1, 3);
+        ps2.setInt(1, 4);
+        ResultSet rs1 = ps1.executeQuery();
+        ResultSet rs2 = ps2.executeQuery();
+        assertTrue(rs1.next());
+        assertTrue(rs2.next());
+        assertEquals("v3", rs1.getString(1));
+        assertEquals("v4", rs2.getString(1));
+        ps1.close();
+        ps2.close();
+        cp.closeConnection(c);
+
+        ConnectionPoolStats s = cp.getStats();
+        assertEquals(9, s.getStatementCacheHits());
+        assertEquals(3, s.getStatementCacheMisses());
+    }
+
+    @Test
+    public void testUncommittedRolledBack() throws Exception {
+        Connection c = cp.getConnection();
+        c.setAutoCommit(false);
+        c.createStatement().executeUpdate("insert into T values (100, 'left')");
+        cp.closeConnection(c);
+
+        c = cp.getConnection();
+        ResultSet rs = c.createStatement().executeQuery(
+                "select count(*) from T where ID = 100");
+        assertTrue(rs.next());
+        assertEquals(0, rs.getInt(1));
+        cp.closeConnection(c);
+    }
+
+    @Test
+    public void testPoolExhausted() throws Exception {
+        Connection c1 = cp.getConnection();
+        Connection c2 = cp.getConnection();
+        try {
+            cp.getConnection();
+            fail("Pool should be exhausted");
+        } catch (SQLException e) {}
+
+        cp.closeConnection(c1);
+        Connection c3 = cp.getConnection();
+        assertFalse(c3.isClosed());
+        cp.closeConnection(c2);
+        cp.closeConnection(c3);
+        assertEquals(4, cp.getStats().getRequests());
+    }
+}
@@ -0,0 +1,76 @@
+package eu.sqooss.test.service.db;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.MetricType;
+import eu.sqooss.service.db.Plugin;
+
+public class SecondLevelCacheTest {
+
+    static final String DB = "cache";
+    static DBService db;
+
+    @BeforeClass
+    public static void setUp() {
+        db = TestDatabase.create(DB);
+
+        db.startDBSession();
+        Plugin plugin = new Plugin();
+        plugin.setName("cached");
+        plugin.setInstalldate(new Date());
+        plugin.setHashcode("cached");
+        db.addRecord(plugin);
+        Metric m = new Metric();
+        m.setPlugin(plugin);
+        m.setMetricType(new MetricType(MetricType.Type.PROJECT));
+        m.setMnemonic("CACHED");
+        m.setDescription("one");
+        db.addRecord(m);
+        db.commitDBSession();
+    }
+
+    @Test
+    public void testCachedLookup() throws Exception {
+        assertEquals("one", lookup().getDescription());
+
+        /* Not seen by Hibernate, the cached result is returned */
+        Connection c = TestDatabase.connect(DB);
+        c.createStatement().executeUpdate(
+                "update METRIC set DESCRIPTION='two' where MNEMONIC='CACHED'");
+        c.close();
+        assertEquals("one", lookup().getDescription());
+
+        db.evictCache();
+        assertEquals("two", lookup().getDescription());
+
+        /* Updates through Hibernate invalidate the cached entries */
+        db.startDBSession();
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put("mnemonic", "CACHED");
+        db.findObjectsByPropertiesCached(Metric.class, props).get(0)
+            .setDescription("three");
+        db.commitDBSession();
+        assertEquals("three", lookup().getDescription());
+    }
+
+    private Metric lookup() {
+        db.startDBSession();
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put("mnemonic", "CACHED");
+        List<Metric> l = db.findObjectsByPropertiesCached(Metric.class, props);
+        db.commitDBSession();
+        assertEquals(1, l.size());
+        return l.get(0);
+    }
+}
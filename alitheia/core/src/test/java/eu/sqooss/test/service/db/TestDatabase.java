@@ -0,0 +1,78 @@
+package eu.sqooss.test.service.db;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.powermock.reflect.Whitebox;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.impl.service.db.DBServiceImpl;
+import eu.sqooss.impl.service.logging.LogManagerImpl;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.logging.Logger;
+
+/**
+ * Named in-memory H2 databases with the full Alitheia schema, and a mocked
+ * {@link AlitheiaCore} that returns them. A database lives until the test
+ * JVM exits, so tests should use a name of their own.
+ */
+public class TestDatabase {
+
+    static LogManagerImpl logManager = new LogManagerImpl(true);
+
+    public static String url(String name) {
+        return "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1";
+    }
+
+    public static Properties properties(String name) {
+        Properties p = new Properties();
+        p.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        p.setProperty("hibernate.connection.url", url(name));
+        p.setProperty("hibernate.connection.username", "sa");
+        p.setProperty("hibernate.connection.password", "");
+        p.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        p.setProperty("hibernate.connection.provider_class",
+                "org.hibernate.connection.DriverManagerConnectionProvider");
+        return p;
+    }
+
+    public static DBService create(String name) {
+        return create(name, logManager.createLogger("sqooss.database"));
+    }
+
+    public static DBService create(String name, Logger logger) {
+        return new DBServiceImpl(properties(name),
+                TestDatabase.class.getResource("/hibernate.cfg.xml"), logger);
+    }
+
+    /**
+     * A plain JDBC connection, for changes Hibernate must not see.
+     */
+    public static Connection connect(String name) throws SQLException {
+        return DriverManager.getConnection(url(name), "sa", "");
+    }
+
+    /**
+     * Install a mocked core returning the given database and a logger
+     * manager. Tests can stub further services on the returned mock.
+     */
+    public static AlitheiaCore mockCore(DBService db) {
+        AlitheiaCore core = mock(AlitheiaCore.class);
+        when(core.getDBService()).thenReturn(db);
+        when(core.getLogManager()).thenReturn(logManager);
+        Whitebox.setInternalState(AlitheiaCore.class, "instance", core);
+        return core;
+    }
+
+    /**
+     * Remove the mocked core, so that it does not leak into other tests.
+     */
+    public static void resetCore() {
+        Whitebox.setInternalState(AlitheiaCore.class, "instance", (AlitheiaCore) null);
+    }
+}
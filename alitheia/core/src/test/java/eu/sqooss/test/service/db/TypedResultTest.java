@@ -0,0 +1,111 @@
+package eu.sqooss.test.service.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.MetricMeasurement;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.db.ProjectVersionMeasurement;
+import eu.sqooss.service.db.StoredProject;
+
+public class TypedResultTest {
+
+    static final String DB = "typed";
+    static DBService db;
+    static long metric;
+
+    @BeforeClass
+    public static void setUp() {
+        db = TestDatabase.create(DB);
+        TestDatabase.mockCore(db);
+
+        db.startDBSession();
+        StoredProject sp = new StoredProject("typed");
+        db.addRecord(sp);
+        Metric m = new Metric();
+        m.setMnemonic("TYPED");
+        db.addRecord(m);
+        String[] values = {"10", "20", "2.5", "n/a", "20"};
+        for (int i = 0; i < values.length; i++) {
+            ProjectVersion pv = new ProjectVersion(sp);
+            pv.setRevisionId(String.valueOf(i));
+            pv.setSequence(i);
+            db.addRecord(pv);
+            db.addRecord(new ProjectVersionMeasurement(m, pv, values[i]));
+        }
+        db.addRecord(new ProjectVersionMeasurement(m, 
+                ProjectVersion.getVersionByRevision(sp, "0"), 5));
+        db.commitDBSession();
+        metric = m.getId();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        TestDatabase.resetCore();
+    }
+
+    @Test
+    public void testSetResult() {
+        ProjectVersionMeasurement pvm = new ProjectVersionMeasurement();
+        pvm.setResult("42");
+        assertEquals(Long.valueOf(42), pvm.getLongResult());
+        assertEquals(Double.valueOf(42), pvm.getDoubleResult());
+        pvm.setResult("0.5");
+        assertNull(pvm.getLongResult());
+        assertEquals(Double.valueOf(0.5), pvm.getDoubleResult());
+        pvm.setResult("n/a");
+        assertNull(pvm.getLongResult());
+        assertNull(pvm.getDoubleResult());
+        pvm.setResult(7);
+        assertEquals("7", pvm.getResult());
+        assertEquals(Long.valueOf(7), pvm.getLongResult());
+
+        assertEquals(Long.valueOf(7), new Result(new ProjectVersion(), new Metric(), 
+                pvm, Result.ResultType.INTEGER).getResult());
+        pvm.setResult("n/a");
+        assertEquals("n/a", new Result(new ProjectVersion(), new Metric(), 
+                pvm, Result.ResultType.INTEGER).getResult());
+    }
+
+    @Test
+    public void testFillTypedResults() throws Exception {
+        Connection c = TestDatabase.connect(DB);
+        c.createStatement().executeUpdate("update PROJECT_VERSION_MEASUREMENT"
+                + " set LONG_RESULT = null, DOUBLE_RESULT = null");
+        c.close();
+
+        db.startDBSession();
+        assertEquals(0L, sum("longResult"));
+        assertEquals(5, MetricMeasurement.fillTypedResults(db));
+        assertEquals(0, MetricMeasurement.fillTypedResults(db));
+        assertEquals(55L, sum("longResult"));
+        assertEquals(57.5, ((Number) aggregate("sum(pvm.doubleResult)")).doubleValue(), 0.001);
+        assertEquals(11.5, ((Number) aggregate("avg(pvm.doubleResult)")).doubleValue(), 0.001);
+        db.commitDBSession();
+    }
+
+    private long sum(String field) {
+        Object sum = aggregate("sum(pvm." + field + ")");
+        return sum == null ? 0 : ((Number) sum).longValue();
+    }
+
+    private Object aggregate(String expr) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("paramMetric", metric);
+        List<?> r = db.doHQL("select " + expr + " from ProjectVersionMeasurement pvm"
+                + " where pvm.metric.id = :paramMetric", params);
+        return r.get(0);
+    }
+}
@@ -0,0 +1,166 @@
+package eu.sqooss.test.service.fds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.framework.BundleContext;
+import org.powermock.reflect.Whitebox;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.impl.service.fds.FDSServiceImpl;
+import eu.sqooss.service.db.ProjectFile;
+import eu.sqooss.service.db.ProjectFileState;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.db.StoredProject;
+import eu.sqooss.service.fds.FileContentCache;
+import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.tds.ProjectAccessor;
+import eu.sqooss.service.tds.Revision;
+import eu.sqooss.service.tds.SCMAccessor;
+import eu.sqooss.service.tds.TDSService;
+
+public class FDSContentCacheTest {
+
+    FDSServiceImpl fds;
+    SCMAccessor scm;
+    MapCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        Revision r = mock(Revision.class);
+        when(r.getUniqueId()).thenReturn("1");
+        scm = mock(SCMAccessor.class);
+        when(scm.newRevision("1")).thenReturn(r);
+        /* The contents of each file is its path */
+        doAnswer(new Answer<Void>() {
+            public Void answer(InvocationOnMock inv) throws Exception {
+                String path = (String) inv.getArguments()[0];
+                ((OutputStream) inv.getArguments()[2]).write(path.getBytes());
+                return null;
+            }
+        }).when(scm).getFile(anyString(), any(Revision.class), any(OutputStream.class));
+        ProjectAccessor pa = mock(ProjectAccessor.class);
+        when(pa.getSCMAccessor()).thenReturn(scm);
+        TDSService tds = mock(TDSService.class);
+        when(tds.getAccessor(1L)).thenReturn(pa);
+
+        AlitheiaCore core = mock(AlitheiaCore.class);
+        when(core.getTDSService()).thenReturn(tds);
+        Whitebox.setInternalState(AlitheiaCore.class, "instance", core);
+
+        BundleContext bc = mock(BundleContext.class);
+        when(bc.getProperty("eu.sqooss.fds.root")).thenReturn("tmp");
+        when(bc.getProperty("eu.sqooss.fds.cache.maxfilesize")).thenReturn("8");
+        fds = new FDSServiceImpl();
+        fds.setInitParams(bc, mock(Logger.class));
+        assertTrue(fds.startUp());
+
+        cache = new MapCache();
+        fds.setContentCache(cache);
+    }
+
+    @After
+    public void tearDown() {
+        Whitebox.setInternalState(AlitheiaCore.class, "instance", (AlitheiaCore) null);
+    }
+
+    @Test
+    public void testHit() throws Exception {
+        ProjectFile pf = file("/a.c");
+        assertEquals("/a.c", read(fds.getFileContents(pf)));
+        assertEquals(1, cache.sets);
+
+        assertEquals("/a.c", read(fds.getFileContents(pf)));
+        verify(scm, times(1)).getFile(eq("/a.c"), any(Revision.class),
+                any(OutputStream.class));
+        assertEquals(2, cache.gets);
+        assertEquals(1, cache.sets);
+    }
+
+    @Test
+    public void testMiss() throws Exception {
+        assertEquals("/a.c", read(fds.getFileContents(file("/a.c"))));
+        assertEquals("/b.c", read(fds.getFileContents(file("/b.c"))));
+        verify(scm, times(2)).getFile(anyString(), any(Revision.class),
+                any(OutputStream.class));
+        assertEquals(2, cache.sets);
+    }
+
+    @Test
+    public void testOversize() throws Exception {
+        /* Longer than eu.sqooss.fds.cache.maxfilesize */
+        ProjectFile pf = file("/src/long.c");
+        assertEquals("/src/long.c", read(fds.getFileContents(pf)));
+        assertEquals("/src/long.c", read(fds.getFileContents(pf)));
+        verify(scm, times(2)).getFile(eq("/src/long.c"), any(Revision.class),
+                any(OutputStream.class));
+        assertEquals(0, cache.sets);
+        assertFalse(cache.values.containsKey("fds:1:1:/src/long.c"));
+    }
+
+    @Test
+    public void testNoCache() throws Exception {
+        fds.setContentCache(null);
+        ProjectFile pf = file("/a.c");
+        assertEquals("/a.c", read(fds.getFileContents(pf)));
+        assertEquals("/a.c", read(fds.getFileContents(pf)));
+        assertEquals(0, cache.gets);
+    }
+
+    private ProjectFile file(String path) {
+        StoredProject sp = mock(StoredProject.class);
+        when(sp.getId()).thenReturn(1L);
+        ProjectVersion pv = mock(ProjectVersion.class);
+        when(pv.getProject()).thenReturn(sp);
+        when(pv.getRevisionId()).thenReturn("1");
+        ProjectFileState state = mock(ProjectFileState.class);
+        when(state.toString()).thenReturn("MODIFIED");
+        ProjectFile pf = mock(ProjectFile.class);
+        when(pf.getProjectVersion()).thenReturn(pv);
+        when(pf.getState()).thenReturn(state);
+        when(pf.getFileName()).thenReturn(path);
+        return pf;
+    }
+
+    private static String read(InputStream in) throws Exception {
+        StringBuilder b = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1)
+            b.append((char) c);
+        return b.toString();
+    }
+
+    static class MapCache implements FileContentCache {
+        Map<String, byte[]> values = new HashMap<String, byte[]>();
+        int gets, sets;
+
+        public byte[] get(String key) {
+            gets++;
+            return values.get(key);
+        }
+
+        public void set(String key, byte[] data) {
+            sets++;
+            values.put(key, data);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package eu.sqooss.test.service.metricactivator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.reflect.Whitebox;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.impl.service.logging.LogManagerImpl;
+import eu.sqooss.impl.service.metricactivator.MetricActivatorBatchJob;
+import eu.sqooss.impl.service.metricactivator.MetricActivatorJob;
+import eu.sqooss.service.abstractmetric.AbstractMetric;
+import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.db.DAObject;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.db.StoredProject;
+import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.scheduler.Scheduler;
+import eu.sqooss.test.service.db.TestDatabase;
+
+public class MetricActivatorBatchJobTest {
+
+    static DBService db;
+    static Logger log;
+    static List<Long> ids = new ArrayList<Long>();
+
+    AbstractMetric metric;
+    Scheduler sched;
+    List<Long> measured;
+    Long failOn;
+
+    @BeforeClass
+    public static void setUp() {
+        LogManagerImpl lm = new LogManagerImpl(true);
+        log = lm.createLogger("sqooss.metricactivator");
+        db = TestDatabase.create("batchjob");
+
+        db.startDBSession();
+        StoredProject sp = new StoredProject("batchjob");
+        db.addRecord(sp);
+        for (int i = 1; i <= 3; i++) {
+            ProjectVersion pv = new ProjectVersion(sp);
+            pv.setRevisionId(String.valueOf(i));
+            pv.setTimestamp(i);
+            pv.setSequence(i);
+            db.addRecord(pv);
+            ids.add(pv.getId());
+        }
+        db.commitDBSession();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        TestDatabase.resetCore();
+    }
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUpMocks() throws Exception {
+        sched = mock(Scheduler.class);
+        AlitheiaCore core = TestDatabase.mockCore(db);
+        when(core.getScheduler()).thenReturn(sched);
+
+        measured = new ArrayList<Long>();
+        failOn = null;
+        metric = mock(AbstractMetric.class);
+        when(metric.getSupportedMetrics(any(Class.class)))
+            .thenReturn(Collections.<Metric>emptyList());
+        when(metric.getResult(any(DAObject.class), anyListOf(Metric.class)))
+            .thenAnswer(new Answer<List<Result>>() {
+                public List<Result> answer(InvocationOnMock inv) {
+                    DAObject o = (DAObject) inv.getArguments()[0];
+                    if (Long.valueOf(o.getId()).equals(failOn))
+                        throw new RuntimeException("Failing on " + failOn);
+                    measured.add(o.getId());
+                    assertTrue(db.isDBSessionActive());
+                    return Collections.<Result>emptyList();
+                }
+            });
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        Job j = batchJob(ids);
+        j.execute();
+
+        assertEquals(Job.State.Finished, j.state());
+        assertEquals(ids, measured);
+        assertFalse(db.isDBSessionActive());
+        verify(sched, never()).enqueueNoDependencies(any(Set.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRetryPerResource() throws Exception {
+        failOn = ids.get(1);
+        Job j = batchJob(ids);
+        j.execute();
+
+        /* The chunk is rolled back and each resource gets its own job */
+        assertEquals(Job.State.Finished, j.state());
+        assertFalse(db.isDBSessionActive());
+        ArgumentCaptor<Set> jobs = ArgumentCaptor.forClass(Set.class);
+        verify(sched).enqueueNoDependencies(jobs.capture());
+        assertEquals(3, jobs.getValue().size());
+        Set<String> retried = new HashSet<String>();
+        for (Object o : jobs.getValue()) {
+            assertTrue(o instanceof MetricActivatorJob);
+            retried.add(o.toString());
+        }
+        for (Long id : ids)
+            assertTrue(retried.contains("MetricActivatorJob: Metric:{null} "
+                    + "Activator:{ProjectVersion} DAO:{" + id + "}"));
+    }
+
+    private Job batchJob(List<Long> chunk) throws Exception {
+        return Whitebox.invokeConstructor(MetricActivatorBatchJob.class,
+                new Class<?>[] {AbstractMetric.class, List.class, Logger.class,
+                    Class.class, long.class, boolean.class},
+                new Object[] {metric, new ArrayList<Long>(chunk), log,
+                    ProjectVersion.class, 1L, false});
+    }
+}
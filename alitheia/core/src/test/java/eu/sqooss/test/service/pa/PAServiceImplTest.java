@@ -0,0 +1,141 @@
+package eu.sqooss.test.service.pa;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.powermock.reflect.Whitebox;
+
+import eu.sqooss.impl.service.pa.PAServiceImpl;
+import eu.sqooss.service.abstractmetric.AlitheiaPlugin;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.Plugin;
+import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.pa.PluginInfo;
+
+/**
+ * Checks that the plug-in indexes follow plug-ins being installed,
+ * uninstalled and replaced.
+ */
+public class PAServiceImplTest {
+
+    BundleContext bc;
+    PAServiceImpl pa;
+
+    @Before
+    public void setUp() {
+        bc = mock(BundleContext.class);
+        pa = new PAServiceImpl();
+        pa.setInitParams(bc, mock(Logger.class));
+    }
+
+    @Test
+    public void testInstall() throws Exception {
+        AlitheiaPlugin wc = plugin("wc");
+        PluginInfo registered = info("h1", wc, false);
+        add(registered, dao());
+        assertSame(registered, pa.getPluginInfo(wc));
+        assertNull(pa.getImplementingPlugin("LOC"));
+
+        PluginInfo installed = info("h1", wc, true);
+        add(installed, dao("LOC", "WORDS"));
+        assertSame(installed, pa.getPluginInfo(wc));
+        assertSame(wc, pa.getImplementingPlugin("LOC"));
+        assertSame(wc, pa.getImplementingPlugin("WORDS"));
+    }
+
+    @Test
+    public void testUninstall() throws Exception {
+        AlitheiaPlugin wc = plugin("wc");
+        add(info("h1", wc, true), dao("LOC"));
+
+        /* Back to registered, as the uninstall job does */
+        PluginInfo registered = info("h1", wc, false);
+        add(registered, dao());
+        assertSame(registered, pa.getPluginInfo(wc));
+        assertNull(pa.getImplementingPlugin("LOC"));
+
+        /* The service goes away */
+        remove("h1");
+        assertNull(pa.getPluginInfo(wc));
+        assertNull(pa.getPluginInfo("h1"));
+    }
+
+    @Test
+    public void testReplace() throws Exception {
+        AlitheiaPlugin wc = plugin("wc");
+        add(info("h1", wc, true), dao("LOC", "OLD"));
+
+        /* A new version of the record, stored under a new hash code */
+        PluginInfo replacement = info("h2", wc, true);
+        add(replacement, dao("LOC"));
+        assertSame(wc, pa.getImplementingPlugin("LOC"));
+        assertSame(replacement, pa.getPluginInfo(wc));
+
+        remove("h1");
+        assertSame(wc, pa.getImplementingPlugin("LOC"));
+        assertNull(pa.getImplementingPlugin("OLD"));
+        assertSame(replacement, pa.getPluginInfo(wc));
+    }
+
+    @Test
+    public void testSharedMnemonic() throws Exception {
+        AlitheiaPlugin a = plugin("a");
+        AlitheiaPlugin b = plugin("b");
+        add(info("hb", b, true), dao("LOC"));
+        add(info("ha", a, true), dao("LOC"));
+
+        /* Removing one plug-in leaves the other implementation indexed */
+        remove("ha");
+        assertSame(b, pa.getImplementingPlugin("LOC"));
+        remove("hb");
+        assertNull(pa.getImplementingPlugin("LOC"));
+    }
+
+    private AlitheiaPlugin plugin(String name) {
+        AlitheiaPlugin p = mock(AlitheiaPlugin.class);
+        when(p.getName()).thenReturn(name);
+        when(p.getVersion()).thenReturn("1.0");
+        return p;
+    }
+
+    private PluginInfo info(String hash, AlitheiaPlugin p, boolean installed) {
+        ServiceReference sref = mock(ServiceReference.class);
+        when(bc.getService(sref)).thenReturn(p);
+        PluginInfo pi = new PluginInfo();
+        pi.setHashcode(hash);
+        pi.setPluginName(p.getName());
+        pi.setPluginVersion(p.getVersion());
+        pi.setServiceRef(sref);
+        pi.installed = installed;
+        return pi;
+    }
+
+    private Plugin dao(String... mnemonics) {
+        Set<Metric> metrics = new HashSet<Metric>();
+        for (String mnemonic : mnemonics) {
+            Metric m = new Metric();
+            m.setMnemonic(mnemonic);
+            metrics.add(m);
+        }
+        Plugin p = new Plugin();
+        p.setSupportedMetrics(metrics);
+        return p;
+    }
+
+    private void add(PluginInfo pi, Plugin dao) throws Exception {
+        Whitebox.invokeMethod(pa, "addPluginInfo", pi, dao);
+    }
+
+    private void remove(String hash) throws Exception {
+        Whitebox.invokeMethod(pa, "removePluginInfo", hash);
+    }
+}
@@ -0,0 +1,148 @@
+package eu.sqooss.test.service.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.impl.service.scheduler.WorkStealingSchedulerImpl;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.scheduler.SchedulerException;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({AlitheiaCore.class})
+public class WorkStealingSchedulerTests {
+
+    WorkStealingSchedulerImpl sched;
+    ConcurrentLinkedQueue<Integer> order;
+
+    @Before
+    public void setUp() {
+        AlitheiaCore core = mock(AlitheiaCore.class);
+        DBService dbs = mock(DBService.class);
+        PowerMockito.mockStatic(AlitheiaCore.class);
+        when(AlitheiaCore.getInstance()).thenReturn(core);
+        when(core.getDBService()).thenReturn(dbs);
+        when(dbs.isDBSessionActive()).thenReturn(false);
+
+        order = new ConcurrentLinkedQueue<Integer>();
+        sched = new WorkStealingSchedulerImpl();
+        sched.startExecute(4);
+    }
+
+    @After
+    public void tearDown() {
+        sched.stopExecute();
+    }
+
+    @Test
+    public void testDependencies() throws SchedulerException {
+        RecordingJob first = new RecordingJob(1, order);
+        RecordingJob second = new RecordingJob(2, order);
+        RecordingJob third = new RecordingJob(3, order);
+        third.addDependency(second);
+        second.addDependency(first);
+
+        //Dependents are enqueued before their dependencies
+        sched.enqueue(third);
+        sched.enqueue(second);
+        sched.enqueue(first);
+        waitFor(third);
+
+        assertEquals(Job.State.Finished, third.state());
+        List<Integer> expected = new ArrayList<Integer>();
+        expected.add(1); expected.add(2); expected.add(3);
+        assertEquals(expected, new ArrayList<Integer>(order));
+    }
+
+    @Test
+    public void testEnqueueBlock() throws SchedulerException {
+        RecordingJob last = new RecordingJob(0, order);
+        List<Job> block = new ArrayList<Job>();
+        for (int i = 1; i <= 100; i++) {
+            RecordingJob j = new RecordingJob(i, order);
+            last.addDependency(j);
+            block.add(j);
+        }
+        block.add(0, last);
+        sched.enqueueBlock(block);
+        waitFor(last);
+
+        assertEquals(101, order.size());
+        assertEquals(Integer.valueOf(0), new ArrayList<Integer>(order).get(100));
+    }
+
+    @Test
+    public void testEnqueueNoDependencies() throws SchedulerException {
+        Set<Job> jobs = new HashSet<Job>();
+        List<RecordingJob> all = new ArrayList<RecordingJob>();
+        for (int i = 0; i < 10000; i++) {
+            RecordingJob j = new RecordingJob(i, order);
+            jobs.add(j);
+            all.add(j);
+        }
+        sched.enqueueNoDependencies(jobs);
+        for (RecordingJob j : all)
+            waitFor(j);
+
+        assertEquals(10000, order.size());
+        assertEquals(10000, new HashSet<Integer>(order).size());
+    }
+
+    @Test(expected = SchedulerException.class)
+    public void testCyclicDependencies() throws SchedulerException {
+        RecordingJob first = new RecordingJob(1, order);
+        RecordingJob second = new RecordingJob(2, order);
+        RecordingJob third = new RecordingJob(3, order);
+        first.addDependency(second);
+        second.addDependency(third);
+        third.addDependency(first);
+
+        sched.enqueue(first);
+    }
+
+    private void waitFor(Job j) {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (j.state() != Job.State.Finished && j.state() != Job.State.Error) {
+            assertTrue("Timeout waiting for " + j, 
+                    System.currentTimeMillis() < deadline);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {}
+        }
+    }
+
+    static class RecordingJob extends Job {
+        int id;
+        ConcurrentLinkedQueue<Integer> order;
+
+        RecordingJob(int id, ConcurrentLinkedQueue<Integer> order) {
+            this.id = id;
+            this.order = order;
+        }
+
+        public long priority() {
+            return id;
+        }
+
+        protected void run() throws Exception {
+            order.add(id);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package eu.sqooss.test.service.updater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.db.StoredProject;
+import eu.sqooss.service.updater.VersionIndex;
+import eu.sqooss.test.service.db.TestDatabase;
+
+public class VersionIndexTest {
+
+    static DBService db;
+    static StoredProject sp;
+
+    @BeforeClass
+    public static void setUp() {
+        db = TestDatabase.create("versionindex");
+        TestDatabase.mockCore(db);
+
+        db.startDBSession();
+        sp = new StoredProject("versionindex");
+        db.addRecord(sp);
+        version("a", 1);
+        version("b", 2);
+        version("c", 4);
+        db.commitDBSession();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        TestDatabase.resetCore();
+    }
+
+    @Test
+    public void testLookups() {
+        db.startDBSession();
+        VersionIndex idx = new VersionIndex(db, sp);
+        assertEquals(3, idx.size());
+        assertTrue(idx.contains("b"));
+        assertFalse(idx.contains("d"));
+        assertEquals(2, idx.getVersion("b").getSequence());
+        assertNull(idx.getVersion("d"));
+        assertEquals("c", idx.getLastVersion().getRevisionId());
+        assertEquals(4, idx.getLastSequence());
+
+        ProjectVersion c = idx.getVersion("c");
+        assertEquals(c.getPreviousVersion(), idx.getPreviousVersion(c));
+        assertNull(idx.getPreviousVersion(idx.getVersion("a")));
+
+        ProjectVersion d = version("d", 5);
+        idx.add(d);
+        assertEquals(d, idx.getLastVersion());
+        assertEquals(c, idx.getPreviousVersion(d));
+        idx.remove(d);
+        assertFalse(idx.contains("d"));
+        assertEquals(4, idx.getLastSequence());
+        db.rollbackDBSession();
+    }
+
+    private static ProjectVersion version(String rev, int seq) {
+        ProjectVersion pv = new ProjectVersion(sp);
+        pv.setRevisionId(rev);
+        pv.setTimestamp(seq);
+        pv.setSequence(seq);
+        db.addRecord(pv);
+        return pv;
+    }
+}
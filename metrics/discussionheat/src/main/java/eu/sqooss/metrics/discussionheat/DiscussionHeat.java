@@ -135,7 +135,7 @@ public class DiscussionHeat extends AbstractMetric {
         Metric hotness = Metric.getMetricByMnemonic("HOTNESS");
         
         MailingListThreadMeasurement mm = new MailingListThreadMeasurement(
-                hotness, m, String.valueOf(score));
+                hotness, m, score);
         
         dbs.addRecord(mm);
         
@@ -153,11 +153,22 @@ public class DiscussionHeat extends AbstractMetric {
         
         Metric hoteffect = Metric.getMetricByMnemonic("HOTEFFECT");
         MailingListThreadMeasurement mltm = new MailingListThreadMeasurement(
-                hoteffect, m, String.valueOf(result));
+                hoteffect, m, result);
         
         dbs.addRecord(mltm);
     }
     
+    /*
+     * Integer results are Long objects, unless they were not stored as
+     * numbers.
+     */
+    private static int intValue(Result r) {
+        Object value = r.getResult();
+        if (value instanceof Number)
+            return ((Number) value).intValue();
+        return Integer.parseInt(value.toString());
+    }
+    
     private int getLocsForVersions(List<ProjectVersion> versions) throws AlreadyProcessingException {
         Metric metric = Metric.getMetricByMnemonic("VERLOC");
         List<Metric> metricList = new ArrayList<Metric>();
@@ -167,7 +178,7 @@ public class DiscussionHeat extends AbstractMetric {
             for (ProjectVersion version : versions) {
                 List<Result> r = getResult(version, metricList);
                 if (r != null && !r.isEmpty()) {
-                    result += (Integer)r.get(0).getResult();
+                    result += intValue(r.get(0));
                 }
             }
         } catch (MetricMismatchException e) {
@@ -281,7 +292,7 @@ public class DiscussionHeat extends AbstractMetric {
         }
 
         ProjectVersionMeasurement pvm = new ProjectVersionMeasurement(m, pv,
-                String.valueOf(linesChanged));
+                linesChanged);
 
         dbs.addRecord(pvm);
     }
@@ -292,7 +303,7 @@ public class DiscussionHeat extends AbstractMetric {
       //Get lines of current version of the file from the wc metric
         List<Result> r = plugin.getResult(pf, locMetric);
         if (r != null && !r.isEmpty()) {
-            return Integer.parseInt(r.get(0).getResult().toString());
+            return intValue(r.get(0));
         }
         else {
             return 0;
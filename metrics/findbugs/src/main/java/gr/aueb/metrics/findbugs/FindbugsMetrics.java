@@ -502,8 +502,8 @@ public class FindbugsMetrics extends AbstractMetric {
                 versionMeasurements.add(new ProjectVersionMeasurement(m, pv, bugTotal.toString()));
             }
         }
-        db.addRecords(fileMeasurements);
-        db.addRecords(versionMeasurements);
+        db.addRecordsBatched(fileMeasurements, 50);
+        db.addRecordsBatched(versionMeasurements, 50);
     }
 
     private boolean pvMeasurementExists(ProjectVersion pv, Metric m) {
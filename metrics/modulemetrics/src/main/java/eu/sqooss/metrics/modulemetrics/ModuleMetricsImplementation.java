@@ -156,31 +156,19 @@ public class ModuleMetricsImplementation extends AbstractMetric {
         String paramIsDirectory = "is_directory";
         String paramMNOL = "paramMNOL";
         String paramISSRCDIR = "paramISSRCDIR";
-        String paramVersionId = "paramVersionId";
+        String paramSequence = "paramSequence";
         String paramProjectId = "paramProjectId";
         String paramState = "paramStatus";
         Map<String,Object> params = new HashMap<String,Object>();
 
         StringBuffer q = new StringBuffer("select pfm ");
-        if (pv.getSequence() == ProjectVersion.getLastProjectVersion(pv.getProject()).getSequence()) {
-            q.append(" from ProjectFile pf, ProjectFileMeasurement pfm");
-            q.append(" where pf.validUntil is null ");
-        } else {
-            q.append(" from ProjectVersion pv, ProjectVersion pv2,");
-            q.append(" ProjectVersion pv3, ProjectFile pf, ");
-            q.append(" ProjectFileMeasurement pfm ");
-            q.append(" where pv.project.id = :").append(paramProjectId);
-            q.append(" and pv.id = :").append(paramVersionId);
-            q.append(" and pv2.project.id = :").append(paramProjectId);
-            q.append(" and pv3.project.id = :").append(paramProjectId);
-            q.append(" and pf.validFrom.id = pv2.id");
-            q.append(" and pf.validUntil.id = pv3.id");
-            q.append(" and pv2.sequence <= pv.sequence");
-            q.append(" and pv3.sequence >= pv.sequence");
-            
-            params.put(paramProjectId, pv.getProject().getId());
-            params.put(paramVersionId, pv.getId());
-        }
+        /* Uses the file validity interval index, see ProjectFile */
+        q.append(" from ProjectFile pf, ProjectFileMeasurement pfm");
+        q.append(" where pf.projectId = :").append(paramProjectId);
+        q.append(" and pf.validFromSequence <= :").append(paramSequence);
+        q.append(" and pf.validUntilSequence >= :").append(paramSequence);
+        params.put(paramProjectId, pv.getProject().getId());
+        params.put(paramSequence, pv.getSequence());
 
         q.append(" and pf.state <> :").append(paramState);
         q.append(" and pf.isDirectory = :").append(paramIsDirectory);
@@ -74,19 +74,19 @@ import eu.sqooss.service.util.FileUtils;
  */ 
 
 @MetricDeclarations( metrics={
-    @MetricDecl(mnemonic="MCC_TOTAL", activators={ProjectFile.class}, descr="Total McCabe Cyclomatic Complexity"),
-    @MetricDecl(mnemonic="MCC_MAX", activators={ProjectFile.class}, descr="Max McCabe Cyclomatic Complexity"),
-    @MetricDecl(mnemonic="EMCC_TOTAL", activators={ProjectFile.class}, descr="Total Extended McCabe Cyclomatic Complexity"),
-    @MetricDecl(mnemonic="EMCC_MAX", activators={ProjectFile.class}, descr="Max Extended McCabe Cyclomatic Complexity"),
-    @MetricDecl(mnemonic="NUMFUN", activators={ProjectFile.class}, descr="Number of functions"),
-    @MetricDecl(mnemonic="HN", activators={ProjectFile.class}, descr="Halstead Length"),
-    @MetricDecl(mnemonic="HVS", activators={ProjectFile.class}, descr="Halstead vocabulary size"),
-    @MetricDecl(mnemonic="HV", activators={ProjectFile.class}, descr="Halstead Volume"),
-    @MetricDecl(mnemonic="HD", activators={ProjectFile.class}, descr="Halstead Difficulty Level"),
-    @MetricDecl(mnemonic="HL", activators={ProjectFile.class}, descr="Halstead Program Level"),
-    @MetricDecl(mnemonic="HE", activators={ProjectFile.class}, descr="Halstead Effort"),
-    @MetricDecl(mnemonic="HT", activators={ProjectFile.class}, descr="Halstead Time"),
-    @MetricDecl(mnemonic="HB", activators={ProjectFile.class}, descr="Halstead Bugs Derived")
+    @MetricDecl(mnemonic="MCC_TOTAL", activators={ProjectFile.class}, descr="Total McCabe Cyclomatic Complexity", contentOnly=true),
+    @MetricDecl(mnemonic="MCC_MAX", activators={ProjectFile.class}, descr="Max McCabe Cyclomatic Complexity", contentOnly=true),
+    @MetricDecl(mnemonic="EMCC_TOTAL", activators={ProjectFile.class}, descr="Total Extended McCabe Cyclomatic Complexity", contentOnly=true),
+    @MetricDecl(mnemonic="EMCC_MAX", activators={ProjectFile.class}, descr="Max Extended McCabe Cyclomatic Complexity", contentOnly=true),
+    @MetricDecl(mnemonic="NUMFUN", activators={ProjectFile.class}, descr="Number of functions", contentOnly=true),
+    @MetricDecl(mnemonic="HN", activators={ProjectFile.class}, descr="Halstead Length", contentOnly=true),
+    @MetricDecl(mnemonic="HVS", activators={ProjectFile.class}, descr="Halstead vocabulary size", contentOnly=true),
+    @MetricDecl(mnemonic="HV", activators={ProjectFile.class}, descr="Halstead Volume", contentOnly=true),
+    @MetricDecl(mnemonic="HD", activators={ProjectFile.class}, descr="Halstead Difficulty Level", contentOnly=true),
+    @MetricDecl(mnemonic="HL", activators={ProjectFile.class}, descr="Halstead Program Level", contentOnly=true),
+    @MetricDecl(mnemonic="HE", activators={ProjectFile.class}, descr="Halstead Effort", contentOnly=true),
+    @MetricDecl(mnemonic="HT", activators={ProjectFile.class}, descr="Halstead Time", contentOnly=true),
+    @MetricDecl(mnemonic="HB", activators={ProjectFile.class}, descr="Halstead Bugs Derived", contentOnly=true)
 })
 public class Structural extends AbstractMetric {
     
@@ -58,7 +58,7 @@ import eu.sqooss.service.fds.FDSService;
 import eu.sqooss.service.fds.FileTypeMatcher;
 
 @MetricDeclarations(metrics = {
-	@MetricDecl(mnemonic="TEST", descr="", activators={ProjectFile.class})
+	@MetricDecl(mnemonic="TEST", descr="", activators={ProjectFile.class}, contentOnly=true)
 })
 public class TestabilityImplementation extends AbstractMetric {
 
@@ -53,6 +53,7 @@ import eu.sqooss.service.abstractmetric.AlreadyProcessingException;
 import eu.sqooss.service.abstractmetric.MetricDecl;
 import eu.sqooss.service.abstractmetric.MetricDeclarations;
 import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.abstractmetric.SchedulerHints;
 import eu.sqooss.service.db.Metric;
 import eu.sqooss.service.db.ProjectFile;
 import eu.sqooss.service.db.ProjectFileMeasurement;
@@ -63,10 +64,10 @@ import eu.sqooss.service.fds.FDSService;
 import eu.sqooss.service.fds.FileTypeMatcher;
 
 @MetricDeclarations(metrics= {
-	@MetricDecl(mnemonic="Wc.loc", activators={ProjectFile.class}, descr="Total lines"),
-	@MetricDecl(mnemonic="Wc.locom", activators={ProjectFile.class}, descr="Comment lines"),
-	@MetricDecl(mnemonic="Wc.lonb", activators={ProjectFile.class}, descr="Non-blank lines"),
-	@MetricDecl(mnemonic="Wc.words", activators={ProjectFile.class}, descr="Total words"),
+	@MetricDecl(mnemonic="Wc.loc", activators={ProjectFile.class}, descr="Total lines", contentOnly=true),
+	@MetricDecl(mnemonic="Wc.locom", activators={ProjectFile.class}, descr="Comment lines", contentOnly=true),
+	@MetricDecl(mnemonic="Wc.lonb", activators={ProjectFile.class}, descr="Non-blank lines", contentOnly=true),
+	@MetricDecl(mnemonic="Wc.words", activators={ProjectFile.class}, descr="Total words", contentOnly=true),
 	@MetricDecl(mnemonic="NOF", activators={ProjectVersion.class}, descr="Number of Files"),
 	@MetricDecl(mnemonic="NOSF", activators={ProjectVersion.class}, descr="Number of Source Code Files"),
 	@MetricDecl(mnemonic="NODF", activators={ProjectVersion.class}, descr="Number of Documentation Files"),
@@ -75,6 +76,9 @@ import eu.sqooss.service.fds.FileTypeMatcher;
 	@MetricDecl(mnemonic="TLOCOM", activators={ProjectVersion.class}, descr="Total Lines of Comments"),
 	@MetricDecl(mnemonic="TLDOC", activators={ProjectVersion.class}, descr="Total Number of Documentation Lines")
 })
+/* Files and versions are cheap to measure, so they are processed in batches
+ * to save a job and a transaction per resource */
+@SchedulerHints(activationBatchSize = 50)
 public class WcImplementation extends AbstractMetric {
     
     private FDSService fds;
@@ -123,7 +127,7 @@ public class WcImplementation extends AbstractMetric {
             db.findObjectsByProperties(ProjectFileMeasurement.class, filter);
         
         for (ProjectFileMeasurement pfm : measurement) 
-            results.add(new Result(a, m, pfm.getResult(), Result.ResultType.INTEGER));
+            results.add(new Result(a, m, pfm, Result.ResultType.INTEGER));
         
     	return results;
     }
@@ -248,13 +252,13 @@ public class WcImplementation extends AbstractMetric {
         
 
         // Store the results
-        storeMetricResult(MNEMONIC_WC_LOC,pf, String.valueOf(results[0]));
-        storeMetricResult(MNEMONIC_WC_LOCOM,pf, String.valueOf(results[1]));
-        storeMetricResult(MNEMONIC_WC_LONB,pf, String.valueOf(results[2]));
-        storeMetricResult(MNEMONIC_WC_WORDS,pf, String.valueOf(results[3]));
+        storeMetricResult(MNEMONIC_WC_LOC,pf, results[0]);
+        storeMetricResult(MNEMONIC_WC_LOCOM,pf, results[1]);
+        storeMetricResult(MNEMONIC_WC_LONB,pf, results[2]);
+        storeMetricResult(MNEMONIC_WC_WORDS,pf, results[3]);
     }
     
-    private void storeMetricResult(String metricType, ProjectFile pf, String value)
+    private void storeMetricResult(String metricType, ProjectFile pf, long value)
     {
     	Metric metric = Metric.getMetricByMnemonic(metricType);
         ProjectFileMeasurement locm = new ProjectFileMeasurement(
@@ -381,7 +385,7 @@ public class WcImplementation extends AbstractMetric {
             db.findObjectsByProperties(ProjectVersionMeasurement.class, filter);
         
         for (ProjectVersionMeasurement pfm : measurement) 
-            results.add(new Result(p, m, pfm.getResult(), Result.ResultType.INTEGER));
+            results.add(new Result(p, m, pfm, Result.ResultType.INTEGER));
         
         return results;
     }
@@ -396,8 +400,11 @@ public class WcImplementation extends AbstractMetric {
         String paramState = "paramState";
         Map<String, Object> params = new HashMap<String, Object>();
        
-        /* Get all measurements for live version files for metrics LoC and LoCom*/ 
-        StringBuffer q = new StringBuffer("select pfm ");
+        /* 
+         * Sum the LoC and LoCom measurements of live version files, per file
+         * name as the file type depends on it 
+         */ 
+        StringBuffer q = new StringBuffer("select pf.name, pfm.metric.id, count(pfm), sum(pfm.longResult) ");
         if (v.getSequence() == ProjectVersion.getLastProjectVersion(v.getProject()).getSequence()) {
             q.append(" from ProjectFile pf, ProjectFileMeasurement pfm");
             q.append(" where pf.validUntil is null ");
@@ -421,14 +428,15 @@ public class WcImplementation extends AbstractMetric {
         q.append(" and pf.isDirectory = :").append(paramIsDirectory);
         q.append(" and (pfm.metric.id = :").append(paramMetricLoC);
         q.append(" or pfm.metric.id = :").append(paramMetricLoCom).append(")");
+        q.append(" group by pf.name, pfm.metric.id");
 
-        params.put(paramMetricLoC, Metric.getMetricByMnemonic(MNEMONIC_WC_LOC).getId());
+        long locId = Metric.getMetricByMnemonic(MNEMONIC_WC_LOC).getId();
+        params.put(paramMetricLoC, locId);
         params.put(paramMetricLoCom, Metric.getMetricByMnemonic(MNEMONIC_WC_LOCOM).getId());
         params.put(paramIsDirectory, Boolean.FALSE);
         params.put(paramState, ProjectFileState.deleted());
         
-        List<ProjectFileMeasurement> results = 
-            (List<ProjectFileMeasurement>) db.doHQL(q.toString(), params);
+        List<Object[]> results = (List<Object[]>) db.doHQL(q.toString(), params);
         
         long nof = 0;            //Number of files
         int nosf = 0;           //Number of source code files
@@ -441,13 +449,15 @@ public class WcImplementation extends AbstractMetric {
         params.remove(paramMetricLoC);
         nof = v.getLiveFilesCount();
         
-        for (ProjectFileMeasurement pfm : results) {
-            String fname = pfm.getProjectFile().getName();
-            int result = Integer.parseInt(pfm.getResult());
+        for (Object[] row : results) {
+            String fname = (String) row[0];
+            long metric = ((Number) row[1]).longValue();
+            int count = ((Number) row[2]).intValue();
+            int result = row[3] == null ? 0 : ((Number) row[3]).intValue();
             if (ftm.getFileType(fname).equals(
                             FileTypeMatcher.FileType.SRC)) {
-                nosf ++;
-                if (pfm.getMetric().getMnemonic().equals(MNEMONIC_WC_LOC)) {
+                nosf += count;
+                if (metric == locId) {
                     totalLoC += result;
                 } else {
                     totalLoComm += result;
@@ -456,7 +466,7 @@ public class WcImplementation extends AbstractMetric {
             
             if (ftm.getFileType(fname).equals(
                             FileTypeMatcher.FileType.DOC)) {
-                nodf ++;
+                nodf += count;
                 totalLocDoc += result;
             }
         }
@@ -473,7 +483,7 @@ public class WcImplementation extends AbstractMetric {
     private void addPVMeasurement(String s, ProjectVersion pv, int value) {
         Metric m = Metric.getMetricByMnemonic(s); 
         ProjectVersionMeasurement pvm = new ProjectVersionMeasurement(m , pv, 
-                String.valueOf(value));
+                value);
         db.addRecord(pvm);
     }
 }
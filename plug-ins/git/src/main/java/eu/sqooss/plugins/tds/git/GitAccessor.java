@@ -33,11 +33,11 @@ package eu.sqooss.plugins.tds.git;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -46,11 +46,13 @@ import java.util.List;
 import java.util.Map;
 
 import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.diff.DiffFormatter;
 import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.RepositoryBuilder;
@@ -60,6 +62,7 @@ import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.revwalk.filter.CommitTimeRevFilter;
 import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
 import org.eclipse.jgit.treewalk.filter.PathFilter;
@@ -95,6 +98,10 @@ import eu.sqooss.service.tds.SCMNodeType;
  */
 public class GitAccessor implements SCMAccessor {
     public static String ACCESSOR_NAME = "GitAccessor";
+    
+    /** Number of threads that write files during checkouts */
+    public static final String CHECKOUT_THREADS_PROPERTY = "eu.sqooss.tds.git.checkout.threads";
+    
     private static List<URI> supportedSchemes;
     
     private URI uri;
@@ -102,7 +109,10 @@ public class GitAccessor implements SCMAccessor {
     private Repository git = null;
     private Logger logger = null;
     
-    private Map<String, List<String>> childrenOf;
+    private GitCommitGraph commitGraph;
+    
+    private Map<String, String> tags;
+    private String tagsStamp;
     
     static {
         supportedSchemes = new ArrayList<URI>();
@@ -295,26 +305,127 @@ public class GitAccessor implements SCMAccessor {
         return ((GitRevision)r).isResolved();
     }
     
+    /** {@inheritDoc} */
     public void getCheckout(String repoPath, Revision revision, File localPath)
         throws InvalidProjectRevisionException,
                InvalidRepositoryException,
-               FileNotFoundException {return;}
+               FileNotFoundException {
+        updateCheckout(repoPath, null, revision, localPath);
+    }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * Only the files that differ between the two revisions are written
+     * or deleted. 
+     */
     public void updateCheckout(String repoPath, Revision src,
         Revision dst, File localPath)
         throws InvalidProjectRevisionException,
                InvalidRepositoryException,
-               FileNotFoundException {return;}
+               FileNotFoundException {
+        if (!localPath.isDirectory())
+            throw new FileNotFoundException(localPath + " is not a directory");
+        
+        long start = System.currentTimeMillis();
+        RevCommit from = (src == null) ? null : resolveCommit(src);
+        RevCommit to = resolveCommit(dst);
+        String path = toGitPath(repoPath);
+        
+        ObjectReader reader = git.newObjectReader();
+        GitTreeWriter out = new GitTreeWriter(localPath);
+        int deleted = 0;
+        try {
+            TreeEntry node = forPath(reader, path, to);
+            if (node == null)
+                throw new FileNotFoundException(repoPath);
+            
+            if (!FileMode.TREE.equals(node.mode)) {
+                /* A single file, named after its basename */
+                out.add(path.substring(path.lastIndexOf('/') + 1),
+                        node.id, node.mode);
+            } else {
+                TreeWalk tw = new TreeWalk(reader);
+                tw.setRecursive(true);
+                TreeEntry old = (from == null) ? null : forPath(reader, path, from);
+                if (old != null && FileMode.TREE.equals(old.mode)) {
+                    tw.addTree(old.id);
+                    tw.setFilter(TreeFilter.ANY_DIFF);
+                } else {
+                    tw.addTree(new EmptyTreeIterator());
+                }
+                tw.addTree(node.id);
+                
+                while (tw.next()) {
+                    if (FileMode.MISSING.equals(tw.getFileMode(1))) {
+                        out.delete(tw.getPathString());
+                        deleted++;
+                    } else {
+                        out.add(tw.getPathString(), tw.getObjectId(1), 
+                                tw.getFileMode(1));
+                    }
+                }
+            }
+            out.write(reader, Integer.getInteger(CHECKOUT_THREADS_PROPERTY, 
+                    Runtime.getRuntime().availableProcessors()));
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new InvalidRepositoryException(uri.toString(), 
+                    "Cannot check out " + repoPath + "@" + dst.getUniqueId() 
+                    + ": " + e.getMessage());
+        } finally {
+            reader.release();
+        }
+        debug("updateCheckout(): " + repoPath + "@" + dst.getUniqueId() 
+                + ": " + out.size() + " files written, " + deleted 
+                + " deleted, " + (System.currentTimeMillis() - start) + " msec");
+    }
 
+    /** {@inheritDoc} */
     public void getFile(String repoPath, Revision revision, File localPath)
         throws InvalidProjectRevisionException,
                InvalidRepositoryException,
-               FileNotFoundException {return;}
+               FileNotFoundException {
+        getFile(repoPath, revision, new FileOutputStream(localPath));
+        // Stream was closed by other getFile()
+    }
 
+    /** 
+     * {@inheritDoc} 
+     * 
+     * The file contents are streamed from the object database and the 
+     * stream is closed afterwards.
+     */
     public void getFile(String repoPath, Revision revision, OutputStream stream)
         throws InvalidProjectRevisionException,
                InvalidRepositoryException,
-               FileNotFoundException {return;}
+               FileNotFoundException {
+        ObjectReader reader = git.newObjectReader();
+        try {
+            TreeEntry node = forPath(reader, toGitPath(repoPath), 
+                    resolveCommit(revision));
+            if (node == null) 
+                throw new FileNotFoundException(repoPath);
+            if (FileMode.TREE.equals(node.mode) || FileMode.GITLINK.equals(node.mode))
+                throw new FileNotFoundException(repoPath + " (dir)");
+            
+            reader.open(node.id, Constants.OBJ_BLOB).copyTo(stream);
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new InvalidRepositoryException(uri.toString(), 
+                    "Cannot read " + repoPath + "@" + revision.getUniqueId() 
+                    + ": " + e.getMessage());
+        } finally {
+            reader.release();
+            try {
+                stream.close();
+            } catch (IOException e) {
+                warn("Failed to close output stream: " + e.getMessage());
+            }
+        }
+    }
     
     public CommitLog getCommitLog(String repoPath, Revision r1, Revision r2)
     throws InvalidProjectRevisionException, InvalidRepositoryException  {
@@ -352,19 +463,19 @@ public class GitAccessor implements SCMAccessor {
                 rw.markStart(rw.parseCommit(git.resolve(getNextRevision(r2).getUniqueId())));
             }
             
+            //Only the ids are kept, revisions are read when the log is iterated
+            rw.setRetainBody(false);
             Iterator<RevCommit> i = rw.iterator();
-
-            GitCommitLog log = new GitCommitLog();
+            List<ObjectId> ids = new ArrayList<ObjectId>();
 
             while (i.hasNext()) {
-                Revision r = getRevision(i.next(), false);
-                log.entries().add(r);
+                ids.add(i.next().copy());
                 if (r2 == null)
                     break;
             }
 
-            Collections.reverse(log.entries());
-            return log;
+            Collections.reverse(ids);
+            return new GitCommitLog(this, ids);
 
         } catch (IOException ew) {
             throw new InvalidRepositoryException(this.uri.toString(),
@@ -442,9 +553,14 @@ public class GitAccessor implements SCMAccessor {
     
     /**
      * Get a Map <code>{revisionId -> tagname}</code> for all revisions that 
-     * are marked with a tag 
+     * are marked with a tag. The map is cached until tags are added, 
+     * removed or packed in the repository.
      */
-    public Map<String, String> allTags() {
+    public synchronized Map<String, String> allTags() {
+        String stamp = tagsStamp();
+        if (tags != null && stamp.equals(tagsStamp))
+            return tags;
+        
     	Map<String, Ref> all = git.getAllRefs();
 		Map<String, String> result = new HashMap<String, String>();
 		
@@ -455,7 +571,9 @@ public class GitAccessor implements SCMAccessor {
 			result.put(all.get(ref).getObjectId().getName(), tagname);
 		}
 		
-		return result;
+		tags = Collections.unmodifiableMap(result);
+		tagsStamp = stamp;
+		return tags;
     }
     
     /**
@@ -464,62 +582,58 @@ public class GitAccessor implements SCMAccessor {
      * first entry corresponds to the first commit that is the immediate
      * child of the provided commit.
      * 
-     * <b>Warning:</b> This method can cause the accessor to use a lot 
-     * of memory in very large repositories, as it calculates and 
-     * caches all parent-childrelationships beforehand. 
+     * The children are looked up in an index of the commit graph, which 
+     * is saved in the repository directory and extended with new commits
+     * when the repository head moves.
      * 
      * @throws AccessorException When an error occurs during 
      */
-    public String[] getCommitChidren(String revisionId) throws AccessorException {
-    	if (childrenOf == null) {
-            childrenOf = new HashMap<String, List<String>>();
-    		resolveChildren();
-    	}
-    	
-    	Revision[] children = new Revision[childrenOf.get(revisionId).size()];
-    	int i = 0;
-    	for (String childid : childrenOf.get(revisionId)) {
-    		children[i] = getRevision(resolveGitRev(childid), false);
-    		i++;
-    	}
-    	
-    	Arrays.sort(children, children[0]);
-    	
-    	String[] chIds = new String[children.length];
-    	i = 0;
-    	for (Revision r : children) {
-    		chIds[i] = r.getUniqueId();
-    		i++;
-    	}
-    	
-    	return chIds;
+    public synchronized String[] getCommitChidren(String revisionId) throws AccessorException {
+        return commitGraph().getChildren(ObjectId.fromString(revisionId));
     }
     
-    private void resolveChildren() throws AccessorException {
-    	Long start = System.currentTimeMillis();
-    	RevWalk rw = new RevWalk(git);
+    private GitCommitGraph commitGraph() throws AccessorException {
+    	long start = System.currentTimeMillis();
     	try {
-    		ObjectId revId = git.resolve(Constants.HEAD);
-            rw.sort(RevSort.COMMIT_TIME_DESC); //Doesn't really do anything
-            rw.markStart(rw.parseCommit(revId));
-            RevCommit c;
-            
-            while((c = rw.next()) != null) {
-            	for (RevCommit parent : c.getParents()) {
-            		if (!childrenOf.containsKey(parent.getName())) {
-            			childrenOf.put(parent.getName(), new ArrayList<String>());
-            		}
-            		childrenOf.get(parent.getName()).add(c.getName());
-            	}
-            }
-    	} catch (Exception e) {
+    		ObjectId headId = git.resolve(Constants.HEAD);
+    		if (commitGraph != null && commitGraph.getHead().equals(headId))
+    			return commitGraph;
+    		
+    		File f = new File(git.getDirectory(), GitCommitGraph.FILE_NAME);
+    		if (commitGraph == null) {
+    			try {
+    				commitGraph = GitCommitGraph.load(f);
+    			} catch (IOException e) {
+    				warn("Cannot read commit graph " + f + ": " + e.getMessage());
+    			}
+    			if (commitGraph != null && commitGraph.getHead().equals(headId))
+    				return commitGraph;
+    		}
+    		
+    		commitGraph = GitCommitGraph.build(git, headId, commitGraph);
+    		try {
+    			commitGraph.save(f);
+    		} catch (IOException e) {
+    			warn("Cannot save commit graph " + f + ": " + e.getMessage());
+    		}
+    	} catch (IOException e) {
     		throw new AccessorException(this.getClass(), "Error getting " +
     				"commit children: " + e.getMessage());
-		} finally {
-    		rw.release();
     	}
-    	Long msec = System.currentTimeMillis() - start;
-    	debug("resolveChildren(): " + msec + " msec");
+    	debug("commitGraph(): " + commitGraph.size() + " commits, " 
+    			+ (System.currentTimeMillis() - start) + " msec");
+    	return commitGraph;
+    }
+    
+    /*
+     * Changes whenever a loose tag is written or deleted (JGit and git 
+     * write refs through a rename in the refs directory) or refs are packed.
+     */
+    private String tagsStamp() {
+    	File packed = new File(git.getDirectory(), Constants.PACKED_REFS);
+    	File loose = new File(git.getDirectory(), Constants.R_TAGS);
+    	return packed.lastModified() + ":" + packed.length() + ":" 
+    		+ loose.lastModified();
     }
     
     /* Accessor internal methods*/
@@ -563,6 +677,7 @@ public class GitAccessor implements SCMAccessor {
     	    
         Map<String, PathChangeType> events = new HashMap<String, PathChangeType>();
         List<CommitCopyEntry> copies = new ArrayList<CommitCopyEntry>();
+        Map<String, String> contents = new HashMap<String, String>();
         
         //Special case for first revision, use a tree walk and mark all files
         //as added. 
@@ -576,6 +691,7 @@ public class GitAccessor implements SCMAccessor {
                 while (tw.next()) {
                     //Paths in Alitheia Core are not relative to root
                     events.put("/" + tw.getPathString(), PathChangeType.ADDED);
+                    contents.put("/" + tw.getPathString(), tw.getObjectId(0).name());
                 }
                 events.put("/" + tw.getPathString(), PathChangeType.ADDED);
             } catch (Exception e) {
@@ -583,7 +699,7 @@ public class GitAccessor implements SCMAccessor {
             } finally {
                 tw.release();
             }
-            return new GitRevision(commit, events, copies);
+            return new GitRevision(commit, events, copies, contents);
         } 
         
         //General case, get the revision files by constructing a diff between 
@@ -611,7 +727,7 @@ public class GitAccessor implements SCMAccessor {
         CommitCopyEntry cce = null;
         boolean isCopy = false;
         
-        GitRevision gitrev = new GitRevision(commit, events, copies);
+        GitRevision gitrev = new GitRevision(commit, events, copies, contents);
         
         for (DiffEntry ent : entries) {
             switch (ent.getChangeType()) {
@@ -651,6 +767,10 @@ public class GitAccessor implements SCMAccessor {
                 events.put("/" + path, pct); 
             else 
                 copies.add(cce);
+            
+            if (ent.getChangeType() != ChangeType.DELETE 
+                    && ent.getNewId().isComplete())
+                contents.put("/" + ent.getNewPath(), ent.getNewId().name());
         }
 
         return gitrev;
@@ -671,6 +791,52 @@ public class GitAccessor implements SCMAccessor {
         }
     }
     
+    /*
+     * Read an unresolved revision for a commit id. Throws IOException if the
+     * commit cannot be read.
+     */
+    GitRevision getRevision(AnyObjectId id) throws IOException {
+        RevWalk rw = new RevWalk(git);
+        try {
+            return getRevision(rw.parseCommit(id), false);
+        } finally {
+            rw.release();
+        }
+    }
+    
+    private RevCommit resolveCommit(Revision r) 
+        throws InvalidProjectRevisionException {
+        RevCommit c = resolveGitRev(r.getUniqueId());
+        if (c == null)
+            throw new InvalidProjectRevisionException("Cannot resolve " +
+                    "revision " + r.getUniqueId(), getClass());
+        return c;
+    }
+    
+    /*
+     * Find the tree or blob at path in the commit's tree. The empty path 
+     * is the root tree. Returns null if the path does not exist.
+     */
+    private TreeEntry forPath(ObjectReader reader, String path, RevCommit c) 
+        throws IOException {
+        if (path.isEmpty())
+            return new TreeEntry(c.getTree(), FileMode.TREE);
+        TreeWalk tw = TreeWalk.forPath(reader, path, c.getTree());
+        if (tw == null)
+            return null;
+        return new TreeEntry(tw.getObjectId(0), tw.getFileMode(0));
+    }
+    
+    private static class TreeEntry {
+        final ObjectId id;
+        final FileMode mode;
+        
+        TreeEntry(ObjectId id, FileMode mode) {
+            this.id = id;
+            this.mode = mode;
+        }
+    }
+    
     private String toGitPath(String path) {
         
         if (path == null)
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.plugins.tds.git;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdSubclassMap;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * A compact index of the commits reachable from a head commit. Commits are
+ * numbered in walk order and stored in primitive arrays: their ids, their
+ * author times and their parents. Lookups by id use a binary search on
+ * the ordinals sorted by id, children are derived from the parents.
+ * 
+ * The index can be saved next to the repository and extended with the
+ * commits added since, so that it only needs to be built once.
+ */
+class GitCommitGraph {
+
+    static final String FILE_NAME = "sqooss-commit-graph";
+
+    private static final int MAGIC = 0x53514347; 
+    private static final int VERSION = 1;
+    private static final int ID_LENGTH = Constants.OBJECT_ID_LENGTH;
+
+    private ObjectId head;
+    private int size;
+    private byte[] ids;
+    private int[] times;
+    private int[] parentStart;
+    private int[] parentList;
+    private int[] childStart;
+    private int[] childList;
+    private int[] byId;
+
+    private GitCommitGraph() {}
+
+    /**
+     * Index the commits reachable from head. If a previous index is given
+     * and its head is an ancestor of head, only the commits not reachable
+     * from its head are walked. Otherwise, the history was rewritten or
+     * reset and the index is built from scratch.
+     */
+    static GitCommitGraph build(Repository repo, AnyObjectId head,
+            GitCommitGraph base) throws IOException {
+        RevWalk rw = new RevWalk(repo);
+        List<RevCommit> walked = new ArrayList<RevCommit>();
+        try {
+            RevCommit start = rw.parseCommit(head);
+            RevCommit baseHead = null;
+            if (base != null) {
+                try {
+                    baseHead = rw.parseCommit(base.head);
+                    if (!rw.isMergedInto(baseHead, start))
+                        baseHead = null; //Not a fast forward, start over
+                } catch (MissingObjectException e) {
+                    baseHead = null; //Rewritten history, start over
+                }
+                if (baseHead == null)
+                    base = null;
+                rw.reset();
+            }
+            rw.sort(RevSort.COMMIT_TIME_DESC);
+            rw.markStart(start);
+            if (baseHead != null)
+                rw.markUninteresting(baseHead);
+            RevCommit c;
+            while ((c = rw.next()) != null)
+                walked.add(c);
+        } finally {
+            rw.release();
+        }
+
+        GitCommitGraph g = new GitCommitGraph();
+        int old = (base == null) ? 0 : base.size;
+        g.head = head.copy();
+        g.size = old + walked.size();
+        g.ids = new byte[g.size * ID_LENGTH];
+        g.times = new int[g.size];
+        g.parentStart = new int[g.size + 1];
+
+        ObjectIdSubclassMap<Ordinal> added = new ObjectIdSubclassMap<Ordinal>();
+        int edges = 0;
+        if (base != null) {
+            System.arraycopy(base.ids, 0, g.ids, 0, old * ID_LENGTH);
+            System.arraycopy(base.times, 0, g.times, 0, old);
+            System.arraycopy(base.parentStart, 0, g.parentStart, 0, old + 1);
+            edges = base.parentStart[old];
+        }
+        for (int i = 0; i < walked.size(); i++) {
+            RevCommit c = walked.get(i);
+            c.copyRawTo(g.ids, (old + i) * ID_LENGTH);
+            g.times[old + i] = (int) (c.getAuthorIdent().getWhen().getTime() / 1000);
+            added.add(new Ordinal(c, old + i));
+            edges += c.getParentCount();
+        }
+
+        g.parentList = new int[edges];
+        int e = 0;
+        if (base != null) {
+            e = base.parentStart[old];
+            System.arraycopy(base.parentList, 0, g.parentList, 0, e);
+        }
+        for (int i = 0; i < walked.size(); i++) {
+            for (RevCommit p : walked.get(i).getParents()) {
+                Ordinal o = added.get(p);
+                int ordinal = (o != null) ? o.value : 
+                    (base != null ? base.ordinal(p) : -1);
+                if (ordinal >= 0)
+                    g.parentList[e++] = ordinal;
+            }
+            g.parentStart[old + i + 1] = e;
+        }
+        if (e < edges)
+            g.parentList = Arrays.copyOf(g.parentList, e);
+
+        g.sortById();
+        g.linkChildren();
+        return g;
+    }
+
+    /**
+     * Read a saved index.
+     * 
+     * @return The index or null if the file does not exist or is not
+     * a valid index
+     */
+    static GitCommitGraph load(File f) throws IOException {
+        if (!f.exists())
+            return null;
+
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(f)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+            GitCommitGraph g = new GitCommitGraph();
+            byte[] raw = new byte[ID_LENGTH];
+            in.readFully(raw);
+            g.head = ObjectId.fromRaw(raw);
+            g.size = in.readInt();
+            g.ids = new byte[g.size * ID_LENGTH];
+            in.readFully(g.ids);
+            g.times = readInts(in, g.size);
+            g.byId = readInts(in, g.size);
+            g.parentStart = readInts(in, g.size + 1);
+            g.parentList = readInts(in, g.parentStart[g.size]);
+            g.linkChildren();
+            return g;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Save the index, replacing the file atomically.
+     */
+    void save(File f) throws IOException {
+        File tmp = new File(f.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            byte[] raw = new byte[ID_LENGTH];
+            head.copyRawTo(raw, 0);
+            out.write(raw);
+            out.writeInt(size);
+            out.write(ids, 0, size * ID_LENGTH);
+            writeInts(out, times, size);
+            writeInts(out, byId, size);
+            writeInts(out, parentStart, size + 1);
+            writeInts(out, parentList, parentStart[size]);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(f)) {
+            f.delete();
+            if (!tmp.renameTo(f))
+                throw new IOException("Cannot rename " + tmp + " to " + f);
+        }
+    }
+
+    ObjectId getHead() {
+        return head;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The ordinal of the commit or -1 if it is not indexed
+     */
+    int ordinal(AnyObjectId id) {
+        byte[] raw = new byte[ID_LENGTH];
+        id.copyRawTo(raw, 0);
+        int lo = 0, hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(byId[mid], raw);
+            if (cmp < 0)
+                lo = mid + 1;
+            else if (cmp > 0)
+                hi = mid - 1;
+            else
+                return byId[mid];
+        }
+        return -1;
+    }
+
+    /**
+     * The ids of the children of a commit, by author time.
+     */
+    String[] getChildren(AnyObjectId id) {
+        int o = ordinal(id);
+        if (o < 0)
+            return new String[0];
+        String[] result = new String[childStart[o + 1] - childStart[o]];
+        for (int i = 0; i < result.length; i++)
+            result[i] = ObjectId.fromRaw(ids, childList[childStart[o] + i] * ID_LENGTH).name();
+        return result;
+    }
+
+    /*
+     * Children ordered by author time, ties in walk order.
+     */
+    private void linkChildren() {
+        childStart = new int[size + 1];
+        int edges = parentStart[size];
+        for (int i = 0; i < edges; i++)
+            childStart[parentList[i] + 1]++;
+        for (int i = 0; i < size; i++)
+            childStart[i + 1] += childStart[i];
+
+        childList = new int[edges];
+        int[] fill = Arrays.copyOf(childStart, size);
+        for (int c = 0; c < size; c++)
+            for (int p = parentStart[c]; p < parentStart[c + 1]; p++)
+                childList[fill[parentList[p]]++] = c;
+
+        for (int o = 0; o < size; o++) {
+            for (int i = childStart[o] + 1; i < childStart[o + 1]; i++) {
+                int c = childList[i], j = i - 1;
+                while (j >= childStart[o] && times[childList[j]] > times[c]) {
+                    childList[j + 1] = childList[j];
+                    j--;
+                }
+                childList[j + 1] = c;
+            }
+        }
+    }
+
+    private void sortById() {
+        Integer[] sorted = new Integer[size];
+        for (int i = 0; i < size; i++)
+            sorted[i] = i;
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return compareIds(a, b);
+            }
+        });
+        byId = new int[size];
+        for (int i = 0; i < size; i++)
+            byId[i] = sorted[i];
+    }
+
+    private int compareIds(int a, int b) {
+        for (int i = 0; i < ID_LENGTH; i++) {
+            int x = ids[a * ID_LENGTH + i] & 0xff, y = ids[b * ID_LENGTH + i] & 0xff;
+            if (x != y)
+                return x - y;
+        }
+        return 0;
+    }
+
+    private int compare(int ordinal, byte[] raw) {
+        for (int i = 0; i < ID_LENGTH; i++) {
+            int x = ids[ordinal * ID_LENGTH + i] & 0xff, y = raw[i] & 0xff;
+            if (x != y)
+                return x - y;
+        }
+        return 0;
+    }
+
+    private static int[] readInts(DataInputStream in, int n) throws IOException {
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++)
+            a[i] = in.readInt();
+        return a;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] a, int n)
+            throws IOException {
+        for (int i = 0; i < n; i++)
+            out.writeInt(a[i]);
+    }
+
+    private static class Ordinal extends ObjectId {
+        final int value;
+
+        Ordinal(AnyObjectId id, int value) {
+            super(id);
+            this.value = value;
+        }
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
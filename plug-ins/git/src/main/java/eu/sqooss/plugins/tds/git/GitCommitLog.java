@@ -30,48 +30,90 @@
 
 package eu.sqooss.plugins.tds.git;
 
+import java.io.IOException;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.eclipse.jgit.lib.ObjectId;
 
 import eu.sqooss.service.tds.CommitLog;
+import eu.sqooss.service.tds.CommitLogException;
 import eu.sqooss.service.tds.Revision;
 
 /**
- * The Git implementation of the CommitLog interface.
+ * The Git implementation of the CommitLog interface. The log only keeps
+ * the ids of its commits; the revision for each commit is read when the 
+ * iterator reaches it and is not retained by the log. Commits that cannot
+ * be read make the iterator throw a {@link CommitLogException}.
  * 
  * @author Georgios Gousios <gousiosg@gmail.com>
  *
  */
 public class GitCommitLog implements CommitLog {
 
-    private LinkedList<Revision> entries;
-    
-    public GitCommitLog() {
-        entries = new LinkedList<Revision>();
-    }
+    private GitAccessor git;
+    private List<ObjectId> entries;
     
-    public List<Revision> entries() {
-        return entries;
+    /**
+     * @param git The accessor to read revisions with
+     * @param entries The commit ids in the log, in date order
+     */
+    GitCommitLog(GitAccessor git, List<ObjectId> entries) {
+        this.git = git;
+        this.entries = entries;
     }
 
     @Override
     public Iterator<Revision> iterator() {
-        return entries.iterator();
+        return new Iterator<Revision>() {
+            private int next = 0;
+
+            public boolean hasNext() {
+                return next < entries.size();
+            }
+
+            public Revision next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return revision(next++);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
 
     @Override
     public Revision first() {
-        return entries.getFirst();
+        if (entries.isEmpty())
+            return null;
+        return revision(0);
     }
 
     @Override
     public Revision last() {
-        return entries.getLast();
+        if (entries.isEmpty())
+            return null;
+        return revision(entries.size() - 1);
     }
 
+    /**
+     * The number of commits in the log, which is exact for Git logs.
+     */
     @Override
     public int size() {
         return entries.size();
     }
+
+    private Revision revision(int i) {
+        ObjectId id = entries.get(i);
+        try {
+            return git.getRevision(id);
+        } catch (IOException e) {
+            throw new CommitLogException("Cannot read commit " + id.name() 
+                    + ": " + e.getMessage(), e);
+        }
+    }
 }
@@ -30,6 +30,7 @@
 
 package eu.sqooss.plugins.tds.git;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -55,6 +56,7 @@ public class GitRevision implements Revision {
     private String msg;
     private Map<String, PathChangeType> changedPaths;
     private List<CommitCopyEntry> copyOps;
+    private Map<String, String> contentIds;
     private Set<String> parents;
 
     private boolean isResolved = false;
@@ -79,6 +81,11 @@ public class GitRevision implements Revision {
 
     public GitRevision(RevCommit obj, Map<String, PathChangeType> paths,
             List<CommitCopyEntry> copies) {
+        this(obj, paths, copies, Collections.<String, String>emptyMap());
+    }
+    
+    public GitRevision(RevCommit obj, Map<String, PathChangeType> paths,
+            List<CommitCopyEntry> copies, Map<String, String> contentIds) {
         this.id = obj.getId().name();
         this.date = obj.getAuthorIdent().getWhen();
         this.author = obj.getAuthorIdent().getName() + " <"
@@ -86,6 +93,7 @@ public class GitRevision implements Revision {
         this.msg = obj.getFullMessage();
         this.changedPaths = paths;
         this.copyOps = copies;
+        this.contentIds = contentIds;
         this.parents = new HashSet<String>();
 
         for (RevCommit s : obj.getParents()) {
@@ -153,6 +161,16 @@ public class GitRevision implements Revision {
         return copyOps;
     }
 
+    /**
+     * Get the id of the blob stored at a path added or modified in this
+     * revision, or null if the path was not added or modified. Paths are 
+     * in the same format as those returned by {@link #getChangedPaths()}.
+     */
+    public String getContentId(String path) {
+        resolve();
+        return contentIds.get(path);
+    }
+
     @Override
     public String toString() {
         return getUniqueId() + " - " + date + " - " + author;
@@ -173,6 +191,7 @@ public class GitRevision implements Revision {
             GitRevision r = git.getRevision(commit, true);
             this.changedPaths = r.changedPaths;
             this.copyOps = r.copyOps;
+            this.contentIds = r.contentIds;
             // We don't need these now that the commit is resolved.
             // Let the GC grab them.
             git = null;
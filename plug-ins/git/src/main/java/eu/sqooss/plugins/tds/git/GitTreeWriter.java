@@ -0,0 +1,168 @@
+/*
+ * Copyright 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.plugins.tds.git;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+
+/**
+ * Materialises blobs of a tree under a local directory. Entries are
+ * collected while walking the tree, then written by a number of threads.
+ * Blob contents are streamed from the object database to the target files,
+ * so large blobs are never held in memory as a whole.
+ */
+class GitTreeWriter {
+
+    /* Below this number of files, writing in parallel does not pay off */
+    private static final int MIN_PARALLEL_FILES = 64;
+
+    private final File root;
+    private final List<String> paths = new ArrayList<String>();
+    private final List<ObjectId> ids = new ArrayList<ObjectId>();
+    private final List<FileMode> modes = new ArrayList<FileMode>();
+
+    GitTreeWriter(File root) {
+        this.root = root;
+    }
+
+    /** Schedule the blob <tt>id</tt> to be written at <tt>path</tt>. */
+    void add(String path, ObjectId id, FileMode mode) {
+        paths.add(path);
+        ids.add(id.copy());
+        modes.add(mode);
+    }
+
+    int size() {
+        return paths.size();
+    }
+
+    /**
+     * Write all scheduled entries. ObjectReaders are not thread safe, so
+     * each writer thread reads through its own reader derived from 
+     * <tt>reader</tt>. The calling thread uses <tt>reader</tt> directly 
+     * when writing serially.
+     */
+    void write(final ObjectReader reader, int threads) throws IOException {
+        threads = Math.min(threads, paths.size() / MIN_PARALLEL_FILES);
+        if (threads <= 1) {
+            for (int i = 0; i < paths.size(); i++)
+                writeEntry(reader, i);
+            return;
+        }
+
+        final AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> workers = new ArrayList<Future<Void>>(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                workers.add(pool.submit(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        ObjectReader own = reader.newReader();
+                        try {
+                            int i;
+                            while ((i = next.getAndIncrement()) < paths.size())
+                                writeEntry(own, i);
+                        } finally {
+                            own.release();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> f : workers) 
+                f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing " + root);
+        } catch (ExecutionException e) {
+            /* Stop the remaining writers */
+            next.set(paths.size());
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause().toString());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void writeEntry(ObjectReader reader, int i) throws IOException {
+        File f = new File(root, paths.get(i));
+        FileMode mode = modes.get(i);
+
+        if (FileMode.GITLINK.equals(mode)) {
+            /* Submodules are checked out as empty directories */
+            mkdirs(f);
+            return;
+        }
+        mkdirs(f.getParentFile());
+
+        /* Symbolic links are written as files containing the link target */
+        OutputStream out = new FileOutputStream(f);
+        try {
+            reader.open(ids.get(i), Constants.OBJ_BLOB).copyTo(out);
+        } finally {
+            out.close();
+        }
+        f.setExecutable(FileMode.EXECUTABLE_FILE.equals(mode));
+    }
+
+    /**
+     * Delete the file at <tt>path</tt> and the directories left empty by
+     * its removal, up to the root of the checkout.
+     */
+    void delete(String path) {
+        File f = new File(root, path);
+        if (!f.delete())
+            return;
+        File dir = f.getParentFile();
+        while (dir != null && !dir.equals(root) && dir.delete())
+            dir = dir.getParentFile();
+    }
+
+    private static void mkdirs(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory())
+            throw new IOException("Cannot create directory " + dir);
+    }
+}
@@ -33,18 +33,29 @@ package eu.sqooss.plugins.updater.git;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
 
 import eu.sqooss.core.AlitheiaCore;
 import eu.sqooss.plugins.tds.git.GitAccessor;
+import eu.sqooss.plugins.tds.git.GitRevision;
 import eu.sqooss.service.db.Branch;
 import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.db.Developer;
+import eu.sqooss.service.db.DeveloperResolver;
 import eu.sqooss.service.db.Directory;
 import eu.sqooss.service.db.ProjectFile;
 import eu.sqooss.service.db.ProjectFileState;
@@ -56,6 +67,7 @@ import eu.sqooss.service.logging.Logger;
 import eu.sqooss.service.tds.AccessorException;
 import eu.sqooss.service.tds.CommitCopyEntry;
 import eu.sqooss.service.tds.CommitLog;
+import eu.sqooss.service.tds.CommitLogException;
 import eu.sqooss.service.tds.InvalidAccessorException;
 import eu.sqooss.service.tds.InvalidProjectRevisionException;
 import eu.sqooss.service.tds.InvalidRepositoryException;
@@ -65,6 +77,7 @@ import eu.sqooss.service.tds.SCMNodeType;
 import eu.sqooss.service.updater.MetadataUpdater;
 import eu.sqooss.service.updater.Updater;
 import eu.sqooss.service.updater.UpdaterService.UpdaterStage;
+import eu.sqooss.service.updater.VersionIndex;
 import eu.sqooss.service.util.FileUtils;
 import eu.sqooss.service.util.Pair;
 
@@ -77,12 +90,32 @@ import eu.sqooss.service.util.Pair;
         stage = UpdaterStage.IMPORT)
 public class GitUpdater implements MetadataUpdater {
     
+    /** 
+     * Number of threads that diff revisions ahead of the database writer.
+     * Set to 0 to diff each revision just before it is stored. 
+     */
+    public static final String IMPORT_THREADS_PROPERTY = "eu.sqooss.updater.git.threads";
+    
+    /** Number of revisions stored per database transaction */
+    public static final String COMMIT_BATCH_PROPERTY = "eu.sqooss.updater.git.commitbatch";
+    
+    private static final int DEFAULT_COMMIT_BATCH = 20;
+    
+    /* How many revisions each import thread may resolve ahead of the writer */
+    private static final int READ_AHEAD = 8;
+    
     private StoredProject project;
     private Logger log;
     private GitAccessor git;
     private DBService dbs;
     private float progress;
     
+    /* Revision to version map of the project, valid during updateFromTo */
+    private VersionIndex versions;
+    
+    /* Developer identities of the project, valid during updateFromTo */
+    private DeveloperResolver developers;
+    
     /*
      * Possible set of valid file state transitions
      */
@@ -181,44 +214,163 @@ public class GitUpdater implements MetadataUpdater {
         updateFromTo(next, git.getHeadRevision());  
     } 
 
+    /**
+     * Import the revisions between from and to. Revisions are diffed 
+     * against their first parent by a pool of threads ahead of time, 
+     * while the calling thread stores them in commit order. 
+     */
     public void updateFromTo(Revision from, Revision to)
             throws InvalidProjectRevisionException, InvalidRepositoryException, AccessorException {
         if (from.compareTo(to) > 1)
             return;
         int numRevisions = 0;
+        int threads = getIntProperty(IMPORT_THREADS_PROPERTY, 
+                Runtime.getRuntime().availableProcessors());
+        int batch = Math.max(1, getIntProperty(COMMIT_BATCH_PROPERTY, 
+                DEFAULT_COMMIT_BATCH));
 
         CommitLog commitLog = git.getCommitLog("", from, to);
         if(!dbs.isDBSessionActive()) dbs.startDBSession();
+        versions = new VersionIndex(dbs, project);
+        developers = new DeveloperResolver(dbs, project);
 
-        for (Revision entry : commitLog) {
-        	if (ProjectVersion.getVersionByRevision(project, entry.getUniqueId()) != null) {
-        		info("Skipping processed revision: " + entry.getUniqueId());
-        		continue;
-        	}
-        	
-            ProjectVersion pv = processOneRevision(entry);
-            
-            processCopiedFiles(git, entry, pv, pv.getPreviousVersion());
-            
-            processRevisionFiles(git, entry, pv);
-            
-            replayLog(pv);
-            
-            updateValidUntil(pv, pv.getVersionFiles());
+        ExecutorService pool = null;
+        if (threads > 0)
+            pool = Executors.newFixedThreadPool(threads, new ImportThreadFactory());
+        
+        Iterator<Revision> log = commitLog.iterator();
+        LinkedList<Future<ResolvedRevision>> pending = 
+            new LinkedList<Future<ResolvedRevision>>();
+        int readAhead = Math.max(1, threads * READ_AHEAD);
+        
+        try {
+            while (pending.size() < readAhead && log.hasNext())
+                pending.add(resolve(pool, log.next()));
+
+            while (!pending.isEmpty()) {
+                ResolvedRevision rr = waitFor(pending.removeFirst());
+                if (log.hasNext())
+                    pending.add(resolve(pool, log.next()));
+                
+                Revision entry = rr.entry;
+                if (versions.contains(entry.getUniqueId())) {
+                    info("Skipping processed revision: " + entry.getUniqueId());
+                    continue;
+                }
+                
+                ProjectVersion pv = processOneRevision(entry, rr.author);
+
+                processCopiedFiles(git, entry, pv, getPreviousVersion(pv));
 
-            if (!dbs.commitDBSession()) {
-                warn("Intermediate commit failed, failing update");
-                return;
+                processRevisionFiles(git, entry, pv);
+
+                replayLog(pv);
+
+                updateValidUntil(pv, pv.getVersionFiles());
+
+                numRevisions++;
+                progress = (float) (((double)numRevisions / (double)commitLog.size()) * 100);
+                
+                if (numRevisions % batch == 0 && !commit())
+                    return;
             }
             
-            dbs.startDBSession();
-            progress = (float) (((double)numRevisions / (double)commitLog.size()) * 100);
-            
-            numRevisions++;
+            if (numRevisions % batch != 0)
+                commit();
+        } catch (CommitLogException e) {
+            throw new InvalidRepositoryException(project.getName(), 
+                    e.getMessage());
+        } finally {
+            if (pool != null)
+                pool.shutdownNow();
+            versions = null;
+            developers = null;
+        }
+    }
+    
+    private boolean commit() {
+        if (!dbs.commitDBSession()) {
+            warn("Intermediate commit failed, failing update");
+            return false;
+        }
+        dbs.startDBSession();
+        return true;
+    }
+    
+    /*
+     * Schedules the diff and author parsing of a revision. Without an import
+     * pool, the work is done right away by the calling thread.
+     */
+    private Future<ResolvedRevision> resolve(ExecutorService pool, 
+            final Revision entry) {
+        Callable<ResolvedRevision> c = new Callable<ResolvedRevision>() {
+            public ResolvedRevision call() {
+                //Forces the diff against the first parent
+                entry.getChangedPathsStatus();
+                entry.getCopyOperations();
+                return new ResolvedRevision(entry, parseAuthor(entry.getAuthor()));
+            }
+        };
+        
+        if (pool != null)
+            return pool.submit(c);
+        
+        FutureTask<ResolvedRevision> t = new FutureTask<ResolvedRevision>(c);
+        t.run();
+        return t;
+    }
+    
+    private ResolvedRevision waitFor(Future<ResolvedRevision> f) 
+        throws InvalidRepositoryException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InvalidRepositoryException(project.getName(), 
+                    "Interrupted while importing revisions");
+        } catch (ExecutionException e) {
+            throw new InvalidRepositoryException(project.getName(), 
+                    "Cannot read revision: " + e.getCause());
+        }
+    }
+    
+    private static int getIntProperty(String name, int def) {
+        String value = System.getProperty(name);
+        if (value == null)
+            return def;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+    
+    /**
+     * A revision whose changed paths have been resolved and whose author
+     * line has been parsed, ready to be stored.
+     */
+    private static class ResolvedRevision {
+        final Revision entry;
+        final String[] author;
+        
+        ResolvedRevision(Revision entry, String[] author) {
+            this.entry = entry;
+            this.author = author;
+        }
+    }
+    
+    private class ImportThreadFactory implements ThreadFactory {
+        private int count = 0;
+        
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Git import " + project.getName() 
+                    + " #" + (++count));
+            t.setDaemon(true);
+            return t;
         }
     }
 
-    private ProjectVersion processOneRevision(Revision entry) 
+    private ProjectVersion processOneRevision(Revision entry, String[] author) 
     	throws AccessorException, InvalidProjectRevisionException {
         
         //Basic stuff
@@ -226,7 +378,7 @@ public class GitUpdater implements MetadataUpdater {
         pv.setRevisionId(entry.getUniqueId());
         pv.setTimestamp(entry.getDate().getTime());
 
-        Developer d = getAuthor(project, entry.getAuthor());
+        Developer d = getAuthor(project, author[0], author[1]);
         pv.setCommitter(d);
         
         String commitMsg = entry.getMessage();
@@ -235,8 +387,11 @@ public class GitUpdater implements MetadataUpdater {
         }
 
         pv.setCommitMsg(commitMsg);
-        pv.setSequence(Integer.MAX_VALUE);
+        
+        //Sequencing
+        pv.setSequence(Math.max(versions.getLastSequence() + 1, 1));
         dbs.addRecord(pv);
+        versions.add(pv);
         
         //Tags
         String tag = git.allTags().get(entry.getUniqueId());
@@ -247,16 +402,9 @@ public class GitUpdater implements MetadataUpdater {
             pv.getTags().add(t);
         }
         
-        //Sequencing
-        ProjectVersion prev = pv.getPreviousVersion();
-        if (prev != null)
-            pv.setSequence(prev.getSequence() + 1);
-        else 
-            pv.setSequence(1);
-              
         //Branches and parent-child relationships
         for (String parentId : entry.getParentIds()) {
-            ProjectVersion parent = ProjectVersion.getVersionByRevision(project, parentId);
+            ProjectVersion parent = getVersion(parentId);
             ProjectVersionParent pvp = new ProjectVersionParent(pv, parent);
             pv.getParents().add(pvp);
             
@@ -296,6 +444,15 @@ public class GitUpdater implements MetadataUpdater {
      * Do our best to fill in the Developer object with good information.
      */
     public Developer getAuthor(StoredProject sp, String entryAuthor) {
+        String[] author = parseAuthor(entryAuthor);
+        return getAuthor(sp, author[0], author[1]);
+    }
+    
+    /**
+     * Split a Git author line to a name and an email address, either of
+     * which may be null.
+     */
+    static String[] parseAuthor(String entryAuthor) {
         InternetAddress ia = null;
         String name = null, email = null;
         try {
@@ -320,11 +477,17 @@ public class GitUpdater implements MetadataUpdater {
                 name = entryAuthor;
             }
         }
-
+        return new String[] {name, email};
+    }
+    
+    private Developer getAuthor(StoredProject sp, String name, String email) {
         Developer d = null;
         
         if (email != null) {
-            d = Developer.getDeveloperByEmail(email, sp, true);
+            if (developers != null)
+                d = developers.getDeveloperByEmail(email, true);
+            else
+                d = Developer.getDeveloperByEmail(email, sp, true);
             
             if (name != null) {
                 if (name.contains(" ")) {
@@ -334,7 +497,12 @@ public class GitUpdater implements MetadataUpdater {
                 }
             }
         } else {
-            if (name.contains(" ")) {
+            if (developers != null) {
+                if (name.contains(" "))
+                    d = developers.getDeveloperByName(name, true);
+                else
+                    d = developers.getDeveloperByUsername(name, true);
+            } else if (name.contains(" ")) {
                 d = Developer.getDeveloperByName(name, sp, true); 
             } else {
                 d = Developer.getDeveloperByUsername(name, sp, true);
@@ -410,15 +578,15 @@ public class GitUpdater implements MetadataUpdater {
                  * and directories as added
                  */
                 handleDirCopy(curVersion, 
-                        ProjectVersion.getVersionByRevision(curVersion.getProject(),
-                        cce.fromRev().getUniqueId()), from, to, copyFrom);
+                        getVersion(cce.fromRev().getUniqueId()), from, to, copyFrom);
             } else {
                 /*
                  * Create a new entry at the new location and mark the new 
                  * entry as ADDED
                  */
-                addFile(curVersion, cce.toPath(), ProjectFileState.added(), 
-                		SCMNodeType.FILE, copyFrom);
+                ProjectFile copy = addFile(curVersion, cce.toPath(), 
+                        ProjectFileState.added(), SCMNodeType.FILE, copyFrom);
+                setContentHash(copy, entry, cce.toPath());
             }
             
             if (cce.isMove()) {
@@ -450,6 +618,7 @@ public class GitUpdater implements MetadataUpdater {
             ProjectFile file = addFile(curVersion, chPath,
                     ProjectFileState.fromPathChangeType(entry.getChangedPathsStatus().get(chPath)), 
                     t, null);
+            setContentHash(file, entry, chPath);
             /*
              * Before entering the next block, examine whether the deleted
              * file was a directory or not. If there is no path entry in the
@@ -658,6 +827,16 @@ public class GitUpdater implements MetadataUpdater {
         return pf;
     }
     
+    /**
+     * Record the id of the blob a file was added or modified with.
+     */
+    private void setContentHash(ProjectFile pf, Revision entry, String path) {
+        if (pf.getIsDirectory() || pf.isDeleted() 
+                || !(entry instanceof GitRevision))
+            return;
+        pf.setContentHash(((GitRevision) entry).getContentId(path));
+    }
+    
     /**
      * Adds or updates directories leading to path. Similar to 
      * mkdir -p cmd line command.
@@ -667,7 +846,7 @@ public class GitUpdater implements MetadataUpdater {
     	String pathname = FileUtils.dirname(path);
     	String filename = FileUtils.basename(path);
     	
-    	ProjectVersion previous = pv.getPreviousVersion();
+    	ProjectVersion previous = getPreviousVersion(pv);
 
         if (previous == null) { // Special case for first version
             previous = pv;
@@ -700,21 +879,25 @@ public class GitUpdater implements MetadataUpdater {
     
     /**
      * Update the validUntil field after all files have been processed.
+     * The previous versions of changed files are updated in bulk, except 
+     * for copies which may continue a file from another path.
      */
     private void updateValidUntil(ProjectVersion pv, Set<ProjectFile> versionFiles) {
 
-        ProjectVersion previous = pv.getPreviousVersion();
+        ProjectVersion previous = getPreviousVersion(pv);
 
         for (ProjectFile pf : versionFiles) {
-            if (!pf.isAdded()) {
+            if (!pf.isAdded() && pf.getCopyFrom() != null) {
                 ProjectFile old = pf.getPreviousFileVersion();
                 old.setValidUntil(previous);
+                pf.setPreviousFileVersion(old);
             }
 
             if (pf.isDeleted()) {
                 pf.setValidUntil(pv);
             }
         }
+        ProjectFile.closeValidityIntervals(pv, previous);
     }
     
     /**
@@ -744,7 +927,7 @@ public class GitUpdater implements MetadataUpdater {
             return files;
         }
 
-        ProjectVersion prev = pv.getPreviousVersion();
+        ProjectVersion prev = getPreviousVersion(pv);
         
         List<ProjectFile> dirFiles = prev.getFiles(d);
         
@@ -759,6 +942,21 @@ public class GitUpdater implements MetadataUpdater {
         return files;
     }
     
+    /*
+     * Version lookups go through the version index while importing.
+     */
+    private ProjectVersion getPreviousVersion(ProjectVersion pv) {
+        if (versions == null)
+            return pv.getPreviousVersion();
+        return versions.getPreviousVersion(pv);
+    }
+    
+    private ProjectVersion getVersion(String revisionId) {
+        if (versions == null)
+            return ProjectVersion.getVersionByRevision(project, revisionId);
+        return versions.getVersion(revisionId);
+    }
+    
     /**
      * Checks whether file state transitions are valid, at least for what 
      * Alitheia Core expects.
@@ -0,0 +1,188 @@
+package eu.sqooss.plugins.git.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.TimeZone;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.impl.service.db.DBServiceImpl;
+import eu.sqooss.impl.service.logging.LogManagerImpl;
+import eu.sqooss.plugins.tds.git.GitAccessor;
+import eu.sqooss.plugins.updater.git.GitUpdater;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.ProjectFileState;
+import eu.sqooss.service.db.StoredProject;
+import eu.sqooss.service.logging.Logger;
+
+/**
+ * Compares the serial Git import (no read ahead, one transaction per
+ * revision) against the pipelined import. The imported repository is
+ * generated, unless the path to a working copy is given with the
+ * <code>eu.sqooss.benchmark.gitrepo</code> system property. The size of
+ * the generated history is set with <code>eu.sqooss.benchmark.gitcommits</code>.
+ * Logs the import rate of both approaches.
+ */
+public class GitImportBenchmark {
+
+    static final int COMMITS = 300;
+    static final int FILES = 40;
+
+    static AlitheiaCore core;
+    static Logger l;
+    static File repo;
+    static boolean generated;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        l = new LogManagerImpl(true).createLogger("sqooss.updater");
+        core = mock(AlitheiaCore.class);
+        Whitebox.setInternalState(AlitheiaCore.class, "instance", core);
+
+        String path = System.getProperty("eu.sqooss.benchmark.gitrepo");
+        if (path != null) {
+            repo = new File(path);
+        } else {
+            repo = new File(System.getProperty("java.io.tmpdir"),
+                    "gitbench-" + System.nanoTime());
+            generated = true;
+            generate(repo, Integer.getInteger("eu.sqooss.benchmark.gitcommits",
+                    COMMITS));
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() throws IOException {
+        Whitebox.setInternalState(AlitheiaCore.class, "instance", (AlitheiaCore) null);
+        System.clearProperty(GitUpdater.IMPORT_THREADS_PROPERTY);
+        System.clearProperty(GitUpdater.COMMIT_BATCH_PROPERTY);
+        if (generated)
+            FileUtils.deleteDirectory(repo);
+    }
+
+    @Test
+    public void testPipelinedImport() throws Exception {
+        DBService serial = createDB("serial");
+        long start = System.nanoTime();
+        importRepo(serial, "0", "1");
+        long serialTime = System.nanoTime() - start;
+
+        DBService pipelined = createDB("pipelined");
+        start = System.nanoTime();
+        importRepo(pipelined,
+                String.valueOf(Runtime.getRuntime().availableProcessors()), "20");
+        long pipelinedTime = System.nanoTime() - start;
+
+        long versions = count(serial, "ProjectVersion");
+        assertTrue(versions > 0);
+        assertEquals(versions, count(pipelined, "ProjectVersion"));
+        assertEquals(count(serial, "ProjectFile"), count(pipelined, "ProjectFile"));
+        assertEquals(count(serial, "Developer"), count(pipelined, "Developer"));
+        assertEquals(0, count(pipelined, "ProjectFile pf where pf.isDirectory = false"
+                + " and pf.contentHash is null and pf.state.status in ("
+                + ProjectFileState.STATE_ADDED + ", " 
+                + ProjectFileState.STATE_MODIFIED + ")"));
+        /* Versions of a path do not overlap */
+        assertEquals(0, count(pipelined, "ProjectFile pf, ProjectFile old"
+                + " where old.projectId = pf.projectId and old.dir = pf.dir"
+                + " and old.name = pf.name"
+                + " and old.validFromSequence < pf.validFromSequence"
+                + " and old.validUntilSequence >= pf.validFromSequence"));
+
+        l.info("Serial:    " + rate(versions, serialTime) + " revisions/sec");
+        l.info("Pipelined: " + rate(versions, pipelinedTime) + " revisions/sec");
+    }
+
+    private DBService createDB(String name) {
+        Properties p = new Properties();
+        p.setProperty("hibernate.connection.driver_class", "org.hsqldb.jdbcDriver");
+        p.setProperty("hibernate.connection.url", "jdbc:hsqldb:mem:" + name);
+        p.setProperty("hibernate.connection.username", "sa");
+        p.setProperty("hibernate.connection.password", "");
+        p.setProperty("hibernate.connection.dialect", "org.hibernate.dialect.HSQLDialect");
+        p.setProperty("hibernate.dialect", "org.hibernate.dialect.HSQLDialect");
+        p.setProperty("hibernate.connection.provider_class",
+                "org.hibernate.connection.DriverManagerConnectionProvider");
+        DBService db = new DBServiceImpl(p,
+                GitImportBenchmark.class.getResource("/hibernate.cfg.xml"), l);
+        when(core.getDBService()).thenReturn(db);
+        return db;
+    }
+
+    private void importRepo(DBService db, String threads, String batch)
+            throws Exception {
+        System.setProperty(GitUpdater.IMPORT_THREADS_PROPERTY, threads);
+        System.setProperty(GitUpdater.COMMIT_BATCH_PROPERTY, batch);
+
+        db.startDBSession();
+        StoredProject sp = new StoredProject("benchmark");
+        db.addRecord(sp);
+        db.commitDBSession();
+
+        GitAccessor git = new GitAccessor();
+        git.testInit(new URI("git-file://" + repo.getAbsolutePath()), "benchmark");
+        GitUpdater updater = new GitUpdater(db, git, l, sp);
+        updater.update();
+        if (db.isDBSessionActive())
+            db.commitDBSession();
+    }
+
+    private long count(DBService db, String entity) {
+        db.startDBSession();
+        List<?> r = db.doHQL("select count(*) from " + entity);
+        db.commitDBSession();
+        return (Long) r.get(0);
+    }
+
+    private long rate(long revisions, long nanos) {
+        return revisions * 1000000000L / Math.max(nanos, 1);
+    }
+
+    /*
+     * A linear history over a few directories, with additions,
+     * modifications, deletions and renames.
+     */
+    private static void generate(File dir, int commits) throws Exception {
+        Git g = Git.init().setDirectory(dir).call();
+        long time = 1262304000000L;
+        for (int i = 0; i < commits; i++) {
+            File f = new File(dir, "d" + (i % 5) + "/f" + (i % FILES) + ".txt");
+            f.getParentFile().mkdirs();
+            FileWriter w = new FileWriter(f, true);
+            w.write("line " + i + "\n");
+            w.close();
+
+            if (i % 17 == 16)
+                new File(dir, "d" + ((i + 1) % 5) + "/f" + ((i + 1) % FILES) + ".txt").delete();
+            if (i % 23 == 22) {
+                File moved = new File(dir, "moved/f" + i + ".txt");
+                moved.getParentFile().mkdirs();
+                f.renameTo(moved);
+            }
+
+            g.add().addFilepattern(".").call();
+            PersonIdent who = new PersonIdent("Dev " + (i % 7),
+                    "dev" + (i % 7) + "@example.com",
+                    new Date(time + i * 60000L), TimeZone.getDefault());
+            g.commit().setAll(true).setMessage("Commit " + i)
+                .setAuthor(who).setCommitter(who).call();
+        }
+    }
+}
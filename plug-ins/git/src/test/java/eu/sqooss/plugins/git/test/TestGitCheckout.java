@@ -0,0 +1,163 @@
+package eu.sqooss.plugins.git.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.sqooss.plugins.tds.git.GitAccessor;
+import eu.sqooss.service.tds.Revision;
+
+public class TestGitCheckout {
+
+    static final int FILES = 150;
+
+    File repo;
+    File out;
+    Git g;
+    GitAccessor git;
+    long time = 1262304000000L;
+
+    @Before
+    public void setUp() throws Exception {
+        long id = System.nanoTime();
+        File tmp = new File(System.getProperty("java.io.tmpdir"));
+        repo = new File(tmp, "gitrepo-" + id);
+        out = new File(tmp, "gitcheckout-" + id);
+        out.mkdirs();
+        g = Git.init().setDirectory(repo).call();
+        git = new GitAccessor();
+        git.testInit(new URI("git-file://" + repo.getAbsolutePath()), "checkout");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        System.clearProperty(GitAccessor.CHECKOUT_THREADS_PROPERTY);
+        FileUtils.deleteDirectory(repo);
+        FileUtils.deleteDirectory(out);
+    }
+
+    @Test
+    public void testGetFile() throws Exception {
+        write("src/a.txt", "one\n");
+        Revision r1 = revision(commit());
+        write("src/a.txt", "two\n");
+        Revision r2 = revision(commit());
+
+        assertEquals("one\n", contents("/src/a.txt", r1));
+        assertEquals("two\n", contents("/src/a.txt", r2));
+
+        File f = new File(out, "a.txt");
+        git.getFile("/src/a.txt", r1, f);
+        assertEquals("one\n", FileUtils.readFileToString(f));
+
+        try {
+            contents("/src", r1);
+            fail("Directories cannot be read as files");
+        } catch (FileNotFoundException e) {}
+        try {
+            contents("/src/b.txt", r1);
+            fail("Missing file read");
+        } catch (FileNotFoundException e) {}
+    }
+
+    @Test
+    public void testCheckout() throws Exception {
+        System.setProperty(GitAccessor.CHECKOUT_THREADS_PROPERTY, "4");
+        for (int i = 0; i < FILES; i++)
+            write("d" + (i % 7) + "/f" + i + ".txt", "file " + i + "\n");
+        write("top.txt", "top\n");
+        Revision r = revision(commit());
+
+        git.getCheckout("/", r, out);
+        assertEquals("top\n", read("top.txt"));
+        for (int i = 0; i < FILES; i++)
+            assertEquals("file " + i + "\n", read("d" + (i % 7) + "/f" + i + ".txt"));
+
+        File sub = new File(out, "sub");
+        sub.mkdir();
+        git.getCheckout("/d3", r, sub);
+        assertEquals("file 3\n", read("sub/f3.txt"));
+        assertEquals(FILES / 7, sub.list().length);
+
+        git.getCheckout("/d3/f10.txt", r, sub);
+        assertEquals("file 10\n", read("sub/f10.txt"));
+    }
+
+    @Test
+    public void testUpdateCheckout() throws Exception {
+        write("a/keep.txt", "keep\n");
+        write("a/change.txt", "old\n");
+        write("b/gone.txt", "gone\n");
+        Revision r1 = revision(commit());
+
+        write("a/change.txt", "new\n");
+        new File(repo, "b/gone.txt").delete();
+        write("c/added.txt", "added\n");
+        g.rm().addFilepattern("b/gone.txt").call();
+        Revision r2 = revision(commit());
+
+        git.getCheckout("/", r1, out);
+        File keep = new File(out, "a/keep.txt");
+        long modified = keep.lastModified() - 10000;
+        keep.setLastModified(modified);
+
+        git.updateCheckout("/", r1, r2, out);
+        assertEquals("new\n", read("a/change.txt"));
+        assertEquals("added\n", read("c/added.txt"));
+        assertFalse(new File(out, "b").exists());
+        /* Unchanged files are not rewritten */
+        assertEquals(modified, keep.lastModified());
+
+        git.updateCheckout("/", r2, r1, out);
+        assertEquals("old\n", read("a/change.txt"));
+        assertEquals("gone\n", read("b/gone.txt"));
+        assertFalse(new File(out, "c").exists());
+        assertTrue(keep.exists());
+    }
+
+    private String contents(String path, Revision r) throws Exception {
+        ByteArrayOutputStream buff = new ByteArrayOutputStream();
+        git.getFile(path, r, buff);
+        return buff.toString();
+    }
+
+    private String read(String path) throws IOException {
+        return FileUtils.readFileToString(new File(out, path));
+    }
+
+    private Revision revision(RevCommit c) throws Exception {
+        return git.newRevision(c.getName());
+    }
+
+    private void write(String path, String contents) throws IOException {
+        File f = new File(repo, path);
+        f.getParentFile().mkdirs();
+        FileUtils.writeStringToFile(f, contents);
+    }
+
+    private RevCommit commit() throws Exception {
+        g.add().addFilepattern(".").call();
+        time += 60000L;
+        PersonIdent who = new PersonIdent("Dev", "dev@example.com",
+                new Date(time), TimeZone.getDefault());
+        return g.commit().setMessage("commit").setAuthor(who)
+            .setCommitter(who).call();
+    }
+}
@@ -0,0 +1,167 @@
+package eu.sqooss.plugins.git.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Date;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeResult;
+import org.eclipse.jgit.api.ResetCommand.ResetType;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.sqooss.plugins.tds.git.GitAccessor;
+
+public class TestGitCommitGraph {
+
+    static final String GRAPH = "sqooss-commit-graph";
+
+    File repo;
+    Git g;
+    long time = 1262304000000L;
+
+    @Before
+    public void setUp() throws Exception {
+        repo = new File(System.getProperty("java.io.tmpdir"),
+                "gitgraph-" + System.nanoTime());
+        g = Git.init().setDirectory(repo).call();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(repo);
+    }
+
+    @Test
+    public void testChildren() throws Exception {
+        /*
+         * a - b - d - m
+         *   \   /
+         *     c
+         */
+        RevCommit a = commit("a");
+        g.branchCreate().setName("side").call();
+        RevCommit b = commit("b");
+        g.checkout().setName("side").call();
+        RevCommit c = commit("c");
+        g.checkout().setName("master").call();
+        RevCommit d = commit("d");
+        MergeResult r = g.merge().include(c).call();
+        assertTrue(r.getMergeStatus().isSuccessful());
+        RevCommit m = g.log().call().iterator().next();
+
+        GitAccessor git = accessor();
+        assertArrayEquals(new String[] {b.getName(), c.getName()},
+                git.getCommitChidren(a.getName()));
+        assertArrayEquals(new String[] {d.getName()},
+                git.getCommitChidren(b.getName()));
+        assertArrayEquals(new String[] {m.getName()},
+                git.getCommitChidren(c.getName()));
+        assertArrayEquals(new String[] {m.getName()},
+                git.getCommitChidren(d.getName()));
+        assertEquals(0, git.getCommitChidren(m.getName()).length);
+        assertTrue(new File(repo, ".git/" + GRAPH).isFile());
+
+        /* A new accessor reads the saved graph */
+        assertArrayEquals(new String[] {b.getName(), c.getName()},
+                accessor().getCommitChidren(a.getName()));
+    }
+
+    @Test
+    public void testIncrementalUpdate() throws Exception {
+        RevCommit a = commit("a");
+        RevCommit b = commit("b");
+        GitAccessor git = accessor();
+        assertArrayEquals(new String[] {b.getName()},
+                git.getCommitChidren(a.getName()));
+        assertEquals(0, git.getCommitChidren(b.getName()).length);
+
+        RevCommit c = commit("c");
+        assertArrayEquals(new String[] {c.getName()},
+                git.getCommitChidren(b.getName()));
+        assertArrayEquals(new String[] {b.getName()},
+                git.getCommitChidren(a.getName()));
+
+        /* History rewritten under the saved graph */
+        File saved = new File(repo.getParentFile(), repo.getName() + ".graph");
+        FileUtils.copyFile(new File(repo, ".git/" + GRAPH), saved);
+        FileUtils.deleteDirectory(repo);
+        g = Git.init().setDirectory(repo).call();
+        RevCommit x = commit("x");
+        RevCommit y = commit("y");
+        FileUtils.copyFile(saved, new File(repo, ".git/" + GRAPH));
+        saved.delete();
+        assertArrayEquals(new String[] {y.getName()},
+                accessor().getCommitChidren(x.getName()));
+    }
+
+    @Test
+    public void testNonFastForward() throws Exception {
+        RevCommit a = commit("a");
+        RevCommit b = commit("b");
+        GitAccessor git = accessor();
+        assertArrayEquals(new String[] {b.getName()},
+                git.getCommitChidren(a.getName()));
+
+        /* Reset to a and commit again, b is no longer reachable */
+        g.reset().setMode(ResetType.HARD).setRef(a.getName()).call();
+        RevCommit c = commit("c");
+        assertArrayEquals(new String[] {c.getName()},
+                git.getCommitChidren(a.getName()));
+        assertEquals(0, git.getCommitChidren(b.getName()).length);
+
+        /* Also when starting from the saved graph */
+        assertArrayEquals(new String[] {c.getName()},
+                accessor().getCommitChidren(a.getName()));
+    }
+
+    @Test
+    public void testTags() throws Exception {
+        RevCommit a = commit("a");
+        g.tag().setName("v1").setObjectId(a).call();
+        GitAccessor git = accessor();
+        Map<String, String> tags = git.allTags();
+        assertEquals(1, tags.size());
+        assertSame(tags, git.allTags());
+
+        /* Directory modification times have a coarse resolution */
+        Thread.sleep(1100);
+        RevCommit b = commit("b");
+        g.tag().setName("v2").setObjectId(b).call();
+        tags = git.allTags();
+        assertEquals(2, tags.size());
+        assertTrue(tags.containsValue("v2"));
+    }
+
+    private GitAccessor accessor() throws Exception {
+        GitAccessor git = new GitAccessor();
+        git.testInit(new URI("git-file://" + repo.getAbsolutePath()), "graph");
+        return git;
+    }
+
+    private RevCommit commit(String name) throws Exception {
+        File f = new File(repo, name + ".txt");
+        FileWriter w = new FileWriter(f);
+        w.write(name + "\n");
+        w.close();
+        g.add().addFilepattern(".").call();
+        time += 60000L;
+        PersonIdent who = new PersonIdent("Dev", "dev@example.com",
+                new Date(time), TimeZone.getDefault());
+        return g.commit().setMessage(name).setAuthor(who)
+            .setCommitter(who).call();
+    }
+}
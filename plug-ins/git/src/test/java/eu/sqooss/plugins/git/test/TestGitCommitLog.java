@@ -0,0 +1,130 @@
+package eu.sqooss.plugins.git.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.sqooss.plugins.tds.git.GitAccessor;
+import eu.sqooss.service.tds.CommitLog;
+import eu.sqooss.service.tds.CommitLogException;
+import eu.sqooss.service.tds.Revision;
+
+public class TestGitCommitLog {
+
+    File repo;
+    Git g;
+    GitAccessor git;
+    long time = 1262304000000L;
+    List<RevCommit> commits = new ArrayList<RevCommit>();
+
+    @Before
+    public void setUp() throws Exception {
+        repo = new File(System.getProperty("java.io.tmpdir"),
+                "gitlog-" + System.nanoTime());
+        g = Git.init().setDirectory(repo).call();
+        for (int i = 0; i < 5; i++)
+            commits.add(commit((i % 2 == 0 ? "even/" : "odd/") + i + ".txt"));
+        git = new GitAccessor();
+        git.testInit(new URI("git-file://" + repo.getAbsolutePath()), "log");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(repo);
+    }
+
+    @Test
+    public void testIteration() throws Exception {
+        CommitLog l = git.getCommitLog("", revision(0), revision(4));
+        assertEquals(5, l.size());
+        assertEquals(commits.get(0).getName(), l.first().getUniqueId());
+        assertEquals(commits.get(4).getName(), l.last().getUniqueId());
+
+        Iterator<Revision> i = l.iterator();
+        for (RevCommit c : commits) {
+            assertTrue(i.hasNext());
+            Revision r = i.next();
+            assertEquals(c.getName(), r.getUniqueId());
+            assertEquals(c.getFullMessage(), r.getMessage());
+        }
+        assertFalse(i.hasNext());
+
+        /* Revisions are read again for each iteration */
+        assertNotSame(l.iterator().next(), l.iterator().next());
+        assertTrue(l.iterator().next().getChangedPaths().contains("/even/0.txt"));
+    }
+
+    @Test
+    public void testPathFilter() throws Exception {
+        CommitLog l = git.getCommitLog("/odd", revision(0), revision(4));
+        List<String> ids = new ArrayList<String>();
+        for (Revision r : l)
+            ids.add(r.getUniqueId());
+        assertEquals(2, ids.size());
+        assertEquals(commits.get(1).getName(), ids.get(0));
+        assertEquals(commits.get(3).getName(), ids.get(1));
+
+        l = git.getCommitLog("", revision(2), null);
+        assertEquals(1, l.size());
+        assertEquals(commits.get(2).getName(), l.first().getUniqueId());
+
+        l = git.getCommitLog("/none", revision(0), revision(4));
+        assertEquals(0, l.size());
+        assertNull(l.first());
+        assertFalse(l.iterator().hasNext());
+    }
+
+    @Test
+    public void testUnreadableCommit() throws Exception {
+        CommitLog l = git.getCommitLog("", revision(0), revision(4));
+        String id = commits.get(2).getName();
+        assertTrue(new File(repo, ".git/objects/" + id.substring(0, 2) 
+                + "/" + id.substring(2)).delete());
+
+        Iterator<Revision> i = l.iterator();
+        assertEquals(commits.get(0).getName(), i.next().getUniqueId());
+        assertEquals(commits.get(1).getName(), i.next().getUniqueId());
+        try {
+            i.next();
+            fail("Unreadable commit returned");
+        } catch (CommitLogException e) {
+            assertTrue(e.getMessage().contains(id));
+        }
+    }
+
+    private Revision revision(int i) throws Exception {
+        return git.newRevision(commits.get(i).getName());
+    }
+
+    private RevCommit commit(String path) throws Exception {
+        File f = new File(repo, path);
+        f.getParentFile().mkdirs();
+        FileUtils.writeStringToFile(f, path + "\n");
+        g.add().addFilepattern(".").call();
+        time += 60000L;
+        PersonIdent who = new PersonIdent("Dev", "dev@example.com",
+                new Date(time), TimeZone.getDefault());
+        return g.commit().setMessage("Add " + path).setAuthor(who)
+            .setCommitter(who).call();
+    }
+}
@@ -223,6 +223,34 @@ public class TestGitUpdater extends TestGitSetup {
             foundFiles.clear();
             to = git.getNextRevision(to);
         }
+        
+        db.startDBSession();
+        assertNoOverlappingVersions();
+        db.commitDBSession();
+    }
+
+    /*
+     * Versions of a path are ordered by their validity interval start; each
+     * one must have been closed before the next one starts.
+     */
+    @SuppressWarnings("unchecked")
+    public void assertNoOverlappingVersions() {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("project", sp.getId());
+        List<Object[]> versions = (List<Object[]>) db.doHQL("select pf.dir.id, pf.name, "
+                + "pf.validFromSequence, pf.validUntilSequence from ProjectFile pf "
+                + "where pf.projectId = :project "
+                + "order by pf.dir.id, pf.name, pf.validFromSequence", params);
+        assertFalse(versions.isEmpty());
+        
+        Object[] prev = null;
+        for (Object[] cur : versions) {
+            if (prev != null && prev[0].equals(cur[0]) && prev[1].equals(cur[1])) {
+                assertTrue("Overlapping versions of " + cur[1] + " at " + cur[2],
+                        (Long) prev[3] < (Long) cur[2]);
+            }
+            prev = cur;
+        }
     }
 
     //From this point forward, all methods assume an open db session
@@ -243,9 +271,12 @@ public class TestGitUpdater extends TestGitSetup {
     	}
     	
     	//Check that old and new versions of a file point to the same path
+    	//and are linked in the lineage chain during the import
+    	assertNotNull(pf.getPreviousFileId());
 		ProjectFile old = pf.getPreviousFileVersion();
 		assertNotNull(old);
 		assertEquals(old.getFileName(), pf.getFileName());
+		assertEquals(old.getId(), pf.getPreviousFileId().longValue());
 		if (old.getIsDirectory() != pf.getIsDirectory()) {
 			assertEquals(false, true);
 		}
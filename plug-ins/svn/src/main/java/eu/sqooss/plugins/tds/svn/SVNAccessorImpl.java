@@ -50,6 +50,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
 
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
 import org.tmatesoft.svn.core.SVNDirEntry;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNLogEntry;
@@ -331,10 +332,22 @@ public class SVNAccessorImpl implements SCMAccessor {
 
     private List<SVNLogEntry> getSVNLog(String repoPath, long revstart,
             long revend) throws InvalidRepositoryException {
-        ArrayList<SVNLogEntry> l = new ArrayList<SVNLogEntry>();
+        return getSVNLog(repoPath, revstart, revend, 0);
+    }
+    
+    /*
+     * Get at most limit log entries, or all entries if limit is 0.
+     */
+    List<SVNLogEntry> getSVNLog(String repoPath, long revstart,
+            long revend, long limit) throws InvalidRepositoryException {
+        final ArrayList<SVNLogEntry> l = new ArrayList<SVNLogEntry>();
         try {
-            svnRepository.log(new String[] { repoPath }, l, revstart, revend,
-                    true, true);
+            svnRepository.log(new String[] { repoPath }, revstart, revend,
+                    true, true, limit, new ISVNLogEntryHandler() {
+                        public void handleLogEntry(SVNLogEntry entry) {
+                            l.add(entry);
+                        }
+                    });
         } catch (SVNException e) {
             throw new InvalidRepositoryException(url, e.getMessage());
         }
@@ -656,17 +669,8 @@ public class SVNAccessorImpl implements SCMAccessor {
             logger.debug("End revision for log " + r2);
         }
 
-        List<SVNLogEntry> l = getSVNLog(repoPath, revstart.getSVNRevision(), 
+        return new SVNCommitLogImpl(this, repoPath, revstart.getSVNRevision(), 
                 revend.getSVNRevision());
-        
-        Iterator<SVNLogEntry> i = l.iterator();
-        SVNCommitLogImpl result = new SVNCommitLogImpl();
-        while (i.hasNext()) {
-            SVNLogEntry entry = i.next();
-            result.getEntries().add(new SVNProjectRevision(entry, ""));
-        }
-        
-        return result;
     }
 
     /**{@inheritDoc}*/
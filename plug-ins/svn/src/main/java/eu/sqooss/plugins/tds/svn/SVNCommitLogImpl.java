@@ -36,53 +36,98 @@ package eu.sqooss.plugins.tds.svn;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.tmatesoft.svn.core.SVNLogEntry;
 
 import eu.sqooss.service.tds.CommitLog;
+import eu.sqooss.service.tds.CommitLogException;
+import eu.sqooss.service.tds.InvalidRepositoryException;
 import eu.sqooss.service.tds.Revision;
 
 /**
- * A simplistic implementation of the CommitLog interface.
+ * A CommitLog that retrieves the log of a revision range from the
+ * repository in windows of {@link #WINDOW} entries, as it is iterated over.
  */
 public class SVNCommitLogImpl implements CommitLog {
-    private LinkedList<Revision> entries;
-
-    public SVNCommitLogImpl() {
-        entries = new LinkedList<Revision>();
-    }
+    
+    /** Number of log entries retrieved from the repository at once */
+    public static final int WINDOW = 500;
+    
+    private SVNAccessorImpl svn;
+    private String repoPath;
+    private long start;
+    private long end;
 
-    public List<Revision> getEntries() {
-        return entries;
+    SVNCommitLogImpl(SVNAccessorImpl svn, String repoPath, long start, long end) {
+        this.svn = svn;
+        this.repoPath = repoPath;
+        this.start = start;
+        this.end = end;
     }
 
     // Interface methods
     /**{@inheritDoc}}*/
     public Revision first() {
-        if (entries.size() < 1) {
-            return null;
-        }
-        
-        return entries.getFirst();
+        List<Revision> l = log(start, end, 1);
+        return l.isEmpty() ? null : l.get(0);
     }
     
     /**{@inheritDoc}}*/
     public Revision last() {
-        if (entries.size() < 1) {
-            return null;
-        }
-        
-        return entries.getLast();
+        List<Revision> l = log(end, start, 1);
+        return l.isEmpty() ? null : l.get(0);
     }
     
-    /**{@inheritDoc}}*/
+    /**
+     * The number of revisions in the range of the log. Revisions that do
+     * not affect the log path are not returned, so the actual number of 
+     * entries may be smaller.
+     */
     public int size() {
-        return entries.size();
+        return (int) Math.max(0, end - start + 1);
     }
 
     /**{@inheritDoc}}*/
     public Iterator<Revision> iterator() {
-        return entries.iterator();
+        return new Iterator<Revision>() {
+            private LinkedList<Revision> window = new LinkedList<Revision>();
+            private long next = start;
+            private boolean done = start > end;
+
+            public boolean hasNext() {
+                if (window.isEmpty() && !done) {
+                    window.addAll(log(next, end, WINDOW));
+                    if (!window.isEmpty())
+                        next = ((SVNProjectRevision) window.getLast()).getSVNRevision() + 1;
+                    done = window.size() < WINDOW || next > end;
+                }
+                return !window.isEmpty();
+            }
+
+            public Revision next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return window.removeFirst();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+    
+    private List<Revision> log(long from, long to, long limit) {
+        List<Revision> result = new LinkedList<Revision>();
+        try {
+            for (SVNLogEntry entry : svn.getSVNLog(repoPath, from, to, limit))
+                result.add(new SVNProjectRevision(entry, ""));
+        } catch (InvalidRepositoryException e) {
+            throw new CommitLogException("Cannot read log of " + repoPath 
+                    + " from r" + from + ": " + e.getMessage(), e);
+        }
+        return result;
     }
 }
 
 // vi: ai nosi sw=4 ts=4 expandtab
-
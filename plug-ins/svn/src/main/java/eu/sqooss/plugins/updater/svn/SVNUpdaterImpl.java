@@ -45,6 +45,7 @@ import eu.sqooss.core.AlitheiaCore;
 import eu.sqooss.service.db.Branch;
 import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.db.Developer;
+import eu.sqooss.service.db.DeveloperResolver;
 import eu.sqooss.service.db.Directory;
 import eu.sqooss.service.db.ProjectFile;
 import eu.sqooss.service.db.ProjectFileState;
@@ -56,6 +57,7 @@ import eu.sqooss.service.db.Tag;
 import eu.sqooss.service.logging.Logger;
 import eu.sqooss.service.tds.CommitCopyEntry;
 import eu.sqooss.service.tds.CommitLog;
+import eu.sqooss.service.tds.CommitLogException;
 import eu.sqooss.service.tds.InvalidProjectRevisionException;
 import eu.sqooss.service.tds.InvalidRepositoryException;
 import eu.sqooss.service.tds.PathChangeType;
@@ -67,6 +69,7 @@ import eu.sqooss.service.tds.TDSService;
 import eu.sqooss.service.updater.MetadataUpdater;
 import eu.sqooss.service.updater.Updater;
 import eu.sqooss.service.updater.UpdaterService.UpdaterStage;
+import eu.sqooss.service.updater.VersionIndex;
 import eu.sqooss.service.util.FileUtils;
 
 /**
@@ -124,6 +127,12 @@ public class SVNUpdaterImpl implements MetadataUpdater {
     /* Currently processed commit log entry*/
     private Revision commitLogEntry;
     
+    /* Revision to version map of the project, valid during update */
+    private VersionIndex versions;
+    
+    /* Developer identities of the project, valid during update */
+    private DeveloperResolver developers;
+    
     /* 
      * State weights to use when evaluating duplicate project file entries
      * in a single revision
@@ -222,7 +231,9 @@ public class SVNUpdaterImpl implements MetadataUpdater {
             commitLog = scm.getCommitLog("", scm.getNextRevision(
                     scm.newRevision(latestVersion.getRevisionId())), 
                     scm.getHeadRevision());
-            info("New revisions: " + commitLog.size());
+            info("New revisions (estimate): " + commitLog.size());
+            versions = new VersionIndex(dbs, project);
+            developers = new DeveloperResolver(dbs, project);
             
             for (Revision entry : commitLog) {
                 versionFiles.clear();
@@ -240,7 +251,7 @@ public class SVNUpdaterImpl implements MetadataUpdater {
                  * modifies the files in the copied path. For non copied paths,
                  * this has no effect in any case.
                  */
-                processCopyOps(scm, entry, curVersion, curVersion.getPreviousVersion());
+                processCopyOps(scm, entry, curVersion, getPreviousVersion(curVersion));
 
                 /*
                  * Now process normal operations.
@@ -275,6 +286,7 @@ public class SVNUpdaterImpl implements MetadataUpdater {
                 		debug(msg + ". Removing");
                 		//dbs.deleteRecord(curVersion);
                 		dbs.rollbackDBSession();
+                		versions.remove(curVersion);
                         dbs.startDBSession();
                         continue;
                 	}
@@ -302,10 +314,17 @@ public class SVNUpdaterImpl implements MetadataUpdater {
         } catch (InvalidRepositoryException e) {
             err("Not such repository:" + e.getMessage());
             throw e;
+        } catch (CommitLogException e) {
+            err("Cannot read repository log:" + e.getMessage());
+            throw new InvalidRepositoryException(project.getName(), 
+                    e.getMessage());
         } catch (InvalidProjectRevisionException e) {
             err("Not such repository revision:" + e.getMessage());
             throw e;
-        } 
+        } finally {
+            versions = null;
+            developers = null;
+        }
         dbs.commitDBSession();
     }
 
@@ -376,7 +395,7 @@ public class SVNUpdaterImpl implements MetadataUpdater {
         curVersion.setRevisionId(entry.getUniqueId());
         curVersion.setTimestamp(entry.getDate().getTime());
 
-        Developer d  = Developer.getDeveloperByUsername(entry.getAuthor(), project);
+        Developer d  = developers.getDeveloperByUsername(entry.getAuthor(), true);
        
         curVersion.setCommitter(d);
 
@@ -386,11 +405,11 @@ public class SVNUpdaterImpl implements MetadataUpdater {
         }
 
         curVersion.setCommitMsg(commitMsg);
-        curVersion.setSequence(Integer.MAX_VALUE);
-        dbs.addRecord(curVersion);
 
-        ProjectVersion prev = curVersion.getPreviousVersion();
+        ProjectVersion prev = versions.getLastVersion();
         curVersion.setSequence(prev.getSequence() + 1);
+        dbs.addRecord(curVersion);
+        versions.add(curVersion);
         ProjectVersionParent pvp = new ProjectVersionParent(curVersion, prev);
         dbs.addRecord(pvp);
         
@@ -509,8 +528,7 @@ public class SVNUpdaterImpl implements MetadataUpdater {
                         + " (from r" + cce.fromRev().getUniqueId()
                         + ") to " + to.getPath());
                 handleDirCopy(curVersion, 
-                        ProjectVersion.getVersionByRevision(curVersion.getProject(),
-                        cce.fromRev().getUniqueId()), from, to, copyFrom);
+                        getVersion(cce.fromRev().getUniqueId()), from, to, copyFrom);
             } else {
                 /*
                  * Create a new entry at the new location and mark the new 
@@ -783,7 +801,7 @@ public class SVNUpdaterImpl implements MetadataUpdater {
             return;
         }
 
-        ProjectVersion prev = pv.getPreviousVersion();
+        ProjectVersion prev = getPreviousVersion(pv);
         
         List<ProjectFile> files = prev.getFiles(d);
         
@@ -911,18 +929,20 @@ public class SVNUpdaterImpl implements MetadataUpdater {
      */
     private void updateValidUntil(ProjectVersion pv) {
 
-        ProjectVersion previous = pv.getPreviousVersion();
+        ProjectVersion previous = getPreviousVersion(pv);
 
         for (ProjectFile pf : versionFiles) {
-            if (!pf.isAdded()) {
+            if (!pf.isAdded() && pf.getCopyFrom() != null) {
                 ProjectFile old = pf.getPreviousFileVersion();
                 old.setValidUntil(previous);
+                pf.setPreviousFileVersion(old);
             }
 
             if (pf.isDeleted()) {
                 pf.setValidUntil(pv);
             }
         }
+        ProjectFile.closeValidityIntervals(pv, previous);
     }
 
 	/*
@@ -989,6 +1009,21 @@ public class SVNUpdaterImpl implements MetadataUpdater {
     	return canProcess && cannotProcess;
     }
     
+    /*
+     * Version lookups go through the version index while importing.
+     */
+    private ProjectVersion getPreviousVersion(ProjectVersion pv) {
+        if (versions == null)
+            return pv.getPreviousVersion();
+        return versions.getPreviousVersion(pv);
+    }
+    
+    private ProjectVersion getVersion(String revisionId) {
+        if (versions == null)
+            return ProjectVersion.getVersionByRevision(project, revisionId);
+        return versions.getVersion(revisionId);
+    }
+    
     /**
      * Uses the SCM to get the previous version to avoid timestamp 
      * inconsistencies 
@@ -1007,7 +1042,7 @@ public class SVNUpdaterImpl implements MetadataUpdater {
         ProjectVersion prev = null;
         
         if (p != null) {
-            prev = ProjectVersion.getVersionByRevision(pv.getProject(), p.getUniqueId());
+            prev = getVersion(p.getUniqueId());
            
         } 
         